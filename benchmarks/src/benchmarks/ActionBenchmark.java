@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import agents.actions.ActionsBFS;
+import agents.actions.ActionsBFSPacked;
+import agents.heuristics.LevelAnalysis;
+import game.actions.compact.CPush;
+import game.actions.compact.CWalkPush;
+import game.board.compact.BoardCompact;
+import game.board.packed.StatePacked;
+
+/**
+ * Action checks and generation: {@link CPush} on {@link BoardCompact}, push on {@link StatePacked} (which replaced MyAgent's BoardCompactExt),
+ * {@link ActionsBFS} vs. {@link ActionsBFSPacked} and the {@link LevelAnalysis} of the level (dead squares among others).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionBenchmark {
+
+	@State(Scope.Thread)
+	public static class Generators {
+
+		public BoardCompact board;
+
+		public ActionsBFS actionsBFS;
+
+		public ActionsBFSPacked actionsBFSPacked;
+
+		@Setup
+		public void create(LevelState level) {
+			board = level.compact.clone();
+			actionsBFS = new ActionsBFS();
+			actionsBFSPacked = new ActionsBFSPacked(level.packed);
+		}
+
+	}
+
+	// =====
+	// CPUSH
+	// =====
+
+	@Benchmark
+	public void pushIsPossible(LevelState level, Blackhole blackhole) {
+		for (CPush push : CPush.getActions()) {
+			blackhole.consume(push.isPossible(level.pushingCompact));
+		}
+	}
+
+	@Benchmark
+	public BoardCompact pushPerformReverse(LevelState level) {
+		level.push.perform(level.pushingCompact);
+		level.push.reverse(level.pushingCompact);
+		return level.pushingCompact;
+	}
+
+	@Benchmark
+	public StatePacked packedPush(LevelState level) {
+		return level.pushingState.perform(level.push, level.zobrist);
+	}
+
+	// ==================
+	// ACTIONS GENERATION
+	// ==================
+
+	@Benchmark
+	public List<CWalkPush> actionsBFS(Generators generators) {
+		return generators.actionsBFS.findActions(generators.board);
+	}
+
+	@Benchmark
+	public int actionsBFSPacked(LevelState level, Generators generators) {
+		return generators.actionsBFSPacked.findPushes(level.state, level.state.player());
+	}
+
+	// ==============
+	// LEVEL ANALYSIS
+	// ==============
+
+	/**
+	 * Push distances, dead squares, tunnels, rooms and articulations computed from scratch (no cache).
+	 */
+	@Benchmark
+	public LevelAnalysis levelAnalysis(LevelState level) {
+		return LevelAnalysis.forLevel(level.compact, level.packed, null);
+	}
+
+}
@@ -0,0 +1,126 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import game.board.compact.BoardCompact;
+import game.board.compressed.BoardCompressed;
+import game.board.slim.BoardSlim;
+
+/**
+ * clone() / hashCode() / equals() of {@link BoardCompact}, {@link BoardSlim} and {@link BoardCompressed}.
+ *
+ * Boards cache their hash; hashCode() benchmarks therefore get a board with the hash reset before every invocation,
+ * equals() benchmarks compare two distinct but equal boards (the worst case, all tiles are compared).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	@State(Scope.Thread)
+	public static class Copies {
+
+		public BoardCompact compact;
+		public BoardSlim slim;
+		public BoardCompressed compressed;
+
+		@Setup(Level.Trial)
+		public void copy(LevelState level) {
+			compact = level.compact.clone();
+			slim = level.slim.clone();
+			compressed = level.compressed.clone();
+		}
+
+	}
+
+	@State(Scope.Thread)
+	public static class Unhashed {
+
+		public BoardCompact compact;
+		public BoardSlim slim;
+		public BoardCompressed compressed;
+
+		@Setup(Level.Invocation)
+		public void reset(LevelState level) {
+			// BoardCompact.clone() does not copy the hash
+			compact = level.compact.clone();
+			slim = level.slim;
+			slim.nullHash();
+			compressed = level.compressed;
+			compressed.nullHash();
+		}
+
+	}
+
+	// =====
+	// CLONE
+	// =====
+
+	@Benchmark
+	public BoardCompact compactClone(LevelState level) {
+		return level.compact.clone();
+	}
+
+	@Benchmark
+	public BoardSlim slimClone(LevelState level) {
+		return level.slim.clone();
+	}
+
+	@Benchmark
+	public BoardCompressed compressedClone(LevelState level) {
+		return level.compressed.clone();
+	}
+
+	// ========
+	// HASHCODE
+	// ========
+
+	@Benchmark
+	public int compactHashCode(Unhashed boards) {
+		return boards.compact.hashCode();
+	}
+
+	@Benchmark
+	public int slimHashCode(Unhashed boards) {
+		return boards.slim.hashCode();
+	}
+
+	@Benchmark
+	public int compressedHashCode(Unhashed boards) {
+		return boards.compressed.hashCode();
+	}
+
+	// ======
+	// EQUALS
+	// ======
+
+	@Benchmark
+	public boolean compactEquals(LevelState level, Copies copies) {
+		return level.compact.equals(copies.compact);
+	}
+
+	@Benchmark
+	public boolean slimEquals(LevelState level, Copies copies) {
+		return level.slim.equals(copies.slim);
+	}
+
+	@Benchmark
+	public boolean compressedEquals(LevelState level, Copies copies) {
+		return level.compressed.equals(copies.compressed);
+	}
+
+}
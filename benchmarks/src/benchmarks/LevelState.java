@@ -0,0 +1,90 @@
+package benchmarks;
+
+import java.io.File;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import agents.actions.ActionsBFS;
+import game.actions.compact.CPush;
+import game.actions.compact.CWalkPush;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.compressed.BoardCompressed;
+import game.board.oop.Board;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+import game.board.slim.BoardSlim;
+
+/**
+ * Level loaded from 'levels/{@link #levelFile}' in every representation the benchmarks need.
+ *
+ * Run benchmarks from the repository root or point -Dsokoban.levels to the directory with *.sok files;
+ * other levels can be chosen via JMH parameters, e.g., "-p levelFile=Aymeric_Hard.sok -p level=1,5".
+ *
+ * Besides the initial board, a "pushing" board is prepared where the player has already walked next to a box
+ * so that {@link #push} is possible on it.
+ */
+@State(Scope.Thread)
+public class LevelState {
+
+	@Param({ "Aymeric_Medium.sok" })
+	public String levelFile;
+
+	@Param({ "1", "3" })
+	public int level;
+
+	public BoardCompact compact;
+
+	public BoardSlim slim;
+
+	public BoardCompressed compressed;
+
+	public BoardPacked packed;
+
+	public ZobristTable zobrist;
+
+	public StatePacked state;
+
+	// PUSHING POSITION
+
+	public BoardCompact pushingCompact;
+
+	public StatePacked pushingState;
+
+	public CPush push;
+
+	@Setup
+	public void load() {
+		File file = new File(System.getProperty("sokoban.levels", "levels"), levelFile);
+		if (!file.canRead()) {
+			throw new RuntimeException("Cannot read level file: " + file.getAbsolutePath());
+		}
+		Board board = Board.fromFileSok(file, level);
+		if (board == null) {
+			throw new RuntimeException("Level " + level + " not found in " + file.getAbsolutePath());
+		}
+
+		compact = board.makeBoardCompact();
+		slim = compact.makeBoardSlim();
+		compressed = compact.makeBoardCompressed();
+
+		packed = new BoardPacked(compact);
+		zobrist = new ZobristTable(packed);
+		state = StatePacked.create(packed.cell(compact.playerX, compact.playerY), packed.findBoxes(compact), zobrist);
+
+		List<CWalkPush> pushes = new ActionsBFS().findActions(compact);
+		if (pushes.isEmpty()) {
+			throw new RuntimeException("No push possible at the start of level " + level + " of " + levelFile);
+		}
+		CWalkPush walkPush = pushes.get(0);
+		pushingCompact = compact.clone();
+		walkPush.getWalk().perform(pushingCompact);
+		push = walkPush.getPush();
+		pushingState = state.walk(packed.cell(pushingCompact.playerX, pushingCompact.playerY), zobrist);
+	}
+
+}
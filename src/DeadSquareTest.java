@@ -1,10 +1,9 @@
 import java.io.File;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
 
+import agents.heuristics.LevelAnalysis;
 import game.board.compact.*;
 import game.board.oop.*;
+import game.board.packed.BoardPacked;
 
 public class DeadSquareTest {
     static void printLevelWithTargets(Board board) {
@@ -44,7 +43,7 @@ public class DeadSquareTest {
 
             BoardCompact bc = board.makeBoardCompact();
 
-            boolean[][] dead = DeadSquareDetector.detect(bc);
+            boolean[][] dead = LevelAnalysis.forLevel(bc, new BoardPacked(bc), null).deadSquares();
             
             System.out.println("dead squares: \n");
             for (int y = 0 ; y < bc.height() ; ++y) {
@@ -1,80 +1,204 @@
 import static java.lang.System.out;
 
+import java.io.File;
 import java.util.*;
 
 import agents.ArtificialAgent;
+import agents.actions.ActionsBFSPacked;
+import agents.actions.CorralPruning;
+import agents.actions.PushMacros;
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.LevelAnalysis;
+import agents.heuristics.MatchingHeuristic;
+import agents.heuristics.PatternDatabase;
+import agents.heuristics.PushDistances;
+import agents.search.BucketOpenList;
+import agents.search.IOpenList;
+import agents.search.IStateSet;
+import agents.search.MappedStateSet;
+import agents.search.NodePool;
+import agents.search.TranspositionTable;
+import game.CancellationToken;
+import game.IAgentStatistics;
 import game.actions.EDirection;
 import game.actions.compact.*;
+import game.actions.oop.EActionType;
 import game.board.compact.BoardCompact;
-import game.board.compact.CTile;
+import game.board.ZobristTable;
+import game.board.packed.BoardPacked;
+import game.board.packed.Reachability;
+import game.board.packed.StatePacked;
 
 
-public class MyAgent extends ArtificialAgent {
+public class MyAgent extends ArtificialAgent implements IAgentStatistics {
 	// result
 	protected int searchedNodes;
 	protected List<EDirection> result;
 
 	// level consistent values
 	protected BoardCompact board;
-	private HashSet<Pair> targets;
+	protected BoardPacked packed;
+	private int[] targets;
 	private boolean[][] deadSquares;
-	private int[][] hashValues;
+	private MatchingHeuristic matching;
+	private PatternDatabase patterns;
+	private FreezeDeadlockDetector deadlocks;
+	private ZobristTable zobrist;
+
+	// push-level search
+	private ActionsBFSPacked actionsBFS;
+	private Reachability reachability;
+	private PushMacros macros;
+	private CorralPruning corrals;
+	protected long corralPruned;
+
+	// search configuration
+	/**
+	 * Whether to search over pushes with the player normalized to the top-left cell of his reachable region ({@link #searchPushes(StatePacked)}),
+	 * or over single moves and pushes ({@link #searchMoves(StatePacked)}).
+	 */
+	protected boolean pushLevel = true;
+	/**
+	 * Whether the push-level search continues pushes into tunnels / goal rooms by macros ({@link PushMacros});
+	 * goal-room macros are off by default as they may lose push-optimality.
+	 */
+	protected boolean tunnelMacros = true;
+	protected boolean goalRoomMacros = false;
+	/**
+	 * Whether the push-level search generates only pushes of the barrier boxes of a PI-corral, if there is one ({@link CorralPruning}).
+	 */
+	protected boolean corralPruning = true;
+	protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+	protected int visitedCapacity = TranspositionTable.DEFAULT_CAPACITY;
+	/**
+	 * Whether visited states are kept off-heap within a memory-mapped file ({@link MappedStateSet}) instead of the {@link TranspositionTable},
+	 * for searches that would outgrow the heap.
+	 */
+	protected boolean offHeapVisited = false;
+	/**
+	 * Where the off-heap closed set creates its temp directory; null for java.io.tmpdir.
+	 */
+	protected File offHeapDirectory = null;
+	/**
+	 * Boxes per pattern of the additive {@link PatternDatabase} combined with the matching heuristic; 0 not to use it.
+	 */
+	protected int patternSize = 3;
+	/**
+	 * Share of the remaining time the {@link PatternDatabase} may take to build; if it does not make it, the matching heuristic is used alone.
+	 */
+	protected double patternTimeShare = 0.25;
+	/**
+	 * Where pattern databases are cached between runs; null not to cache them.
+	 */
+	protected File patternCacheDirectory = PatternDatabase.DEFAULT_CACHE_DIRECTORY;
+	/**
+	 * Where the static analysis of levels ({@link LevelAnalysis}: targets, dead squares, push distances) is cached between runs;
+	 * null not to cache it.
+	 */
+	protected File analysisCacheDirectory = LevelAnalysis.DEFAULT_CACHE_DIRECTORY;
+	protected IStateSet visited;
+
+	// open list holding indices of nodes stored within the pool
+	protected IOpenList queue;
+	protected NodePool nodes;
+
+	// polled every expansion, the search gives up once the level is stopped or its deadline passes
+	protected CancellationToken cancellation;
 	
 	@Override
 	protected List<EDirection> think(BoardCompact board) {
 		// initialize everything
 		this.board = board;
+		this.packed = new BoardPacked(board);
 		searchedNodes = 0;
 		this.result = new ArrayList<>();
-		this.targets = new HashSet<>();
-		HashSet<Pair> boxes = new HashSet<>();
-		findBoxes(boxes);
-		this.deadSquares = DeadSquareDetector.detect(board);
-
-		// Construct the hash values for different states
-		// first column: the hash values of having a box at a certain square (row ind)
-		// second column: the hash value of having a person at a certain square (row ind)
-		// take a look at https://en.wikipedia.org/wiki/Zobrist_hashing
-		this.hashValues = new int[(board.width() - 1) * (board.height() - 1)][2];
-		for(int i = 0; i < hashValues.length; i++) {
-			hashValues[i][0] = new Random().nextInt();
-			hashValues[i][1] = new Random().nextInt();
+		this.cancellation = cancellation();
+		long analysisStartMillis = System.currentTimeMillis();
+		LevelAnalysis analysis = LevelAnalysis.forLevel(board, packed, analysisCacheDirectory);
+		if (verbose) out.printf("Level analysis: %s in %d ms\n", analysis.isFromCache() ? "loaded" : "computed", System.currentTimeMillis() - analysisStartMillis);
+		this.targets = analysis.goals();
+		this.deadSquares = analysis.deadSquares();
+		PushDistances distances = analysis.distances();
+		this.matching = new MatchingHeuristic(distances, board.boxCount);
+		this.patterns = null;
+		if (patternSize > 0) {
+			long patternStartMillis = System.currentTimeMillis();
+			long remainingMillis = cancellation.remainingMillis();
+			CancellationToken patternCancellation = remainingMillis == Long.MAX_VALUE ? cancellation
+				: cancellation.limitedTo(patternStartMillis + (long)(remainingMillis * patternTimeShare));
+			patterns = PatternDatabase.forLevel(packed, distances, patternSize, patternCacheDirectory, patternCancellation);
+			if (verbose && patterns == null) out.printf("Pattern database: gave up in %d ms, matching only\n", System.currentTimeMillis() - patternStartMillis);
+			else if (verbose) out.printf("Pattern database: %d boxes, %d entries, %s in %d ms\n", patterns.size(), patterns.entries(),
+			                             patterns.isFromCache() ? "loaded" : "built", System.currentTimeMillis() - patternStartMillis);
 		}
+		this.deadlocks = new FreezeDeadlockDetector(packed, analysis.deadCells());
+
+		// Zobrist keys of the level, seeded so that hashes are the same for every run
+		this.zobrist = new ZobristTable(packed, zobristSeed);
 
 		// actually search
 		long searchStartMillis = System.currentTimeMillis();
-		search(boxes);
+		StatePacked init = StatePacked.create(packed.cell(board.playerX, board.playerY), packed.findBoxes(board), zobrist);
+		if (pushLevel) searchPushes(init);
+		else searchMoves(init);
 		long searchTime = System.currentTimeMillis() - searchStartMillis;
 
         if (verbose) {
             out.println("Nodes visited: " + searchedNodes);
             out.printf("Performance: %.1f nodes/sec\n",
                         ((double)searchedNodes / (double)searchTime * 1000));
+            out.printf("Visited states: %d (load factor %.2f)\n", visited.size(), visited.loadFactor());
+            out.printf("Generated nodes: %d (%d bytes per node)\n", nodes.size(), nodes.bytesPerNode());
+            if (corrals != null) out.println("Pushes pruned by PI-corrals: " + corralPruned);
+            if (result.isEmpty() && cancellation.isCancelled()) out.println("Search cancelled.");
         }
 
+		// do not hold the search memory till the next level
+		queue = null;
+		nodes = null;
+		if (visited != null) visited.close();
+		visited = null;
+
 		return result.isEmpty() ? null : result;
 	}
 
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes;
+	}
+
+	/**
+	 * Closed set for states of 'stateLength' according to {@link #offHeapVisited}.
+	 * @param stateLength
+	 * @return
+	 */
+	protected IStateSet createVisited(int stateLength) {
+		if (offHeapVisited) return new MappedStateSet(visitedCapacity, stateLength, offHeapDirectory);
+		return new TranspositionTable(visitedCapacity, stateLength, true);
+	}
+
 
 	/**
-	 * Standard A* algorithm.
+	 * Standard A* algorithm over single moves and pushes.
 	 *
-	 * @param boxes the initial placement of boxes on the board
+	 * @param init the initial placement of the player and the boxes on the board
 	 */
-	private void search(HashSet<Pair> boxes) {
-		PriorityQueue<Node> queue = new PriorityQueue<>();
-		HashSet<BoardCompactExt> visited = new HashSet<>(150);
+	private void searchMoves(StatePacked init) {
+		initQueue(init);
+		visited = createVisited(init.length());
 
-		Node init = new Node(board, null, estimate(boxes), 0.0, null, boxes, hashValues);
-		queue.add(init);
+		enqueue(init, NodePool.NONE, NodePool.NONE, 0, init.player(), estimate(init));
 
-		while (!queue.isEmpty()) {
-			Node currentState = queue.poll();
-			visited.add(currentState.boardState);
+		while (!queue.isEmpty() && !cancellation.isCancelled(searchedNodes)) {
+			int current = queue.poll();
+			StatePacked currentState = nodes.state(current, zobrist);
+			++searchedNodes;
+			visited.add(currentState);
+			matching.rebase(currentState);
 
 			// if we found a solution, construct the list of actions taken and return
-			if(currentState.boardState.isVictory(targets)) {
-				construct(currentState);
+			if(currentState.isVictory(packed.goals())) {
+				construct(current);
 				return;
 			}
 
@@ -83,345 +207,184 @@ public class MyAgent extends ArtificialAgent {
 
 			// loop over all the possible actions
 			for(CAction action : allActions) {
-				// if the action is possible then apply it to a cloned board
-				if(!isPossible(action, currentState.boardState)) continue;
-				BoardCompactExt newState = currentState.boardState.perform(action);
-				newState.hashcode = currentState.boardState.calcNewHashcode(hashValues, action, board.width());
+				// if the action is possible then apply it to a new state
+				if(!currentState.isPossible(action, packed)) continue;
+				StatePacked newState = currentState.perform(action, zobrist);
 
 				// if we haven't been at this board state before, explore it further
 				if (!visited.contains(newState)) {
 
 					if (action.getClass() == CPush.class &&
-							deadSquares[newState.player.x + action.getDirection().dX][newState.player.y + action.getDirection().dY]) continue;
+							deadSquares[packed.x(newState.player()) + action.getDirection().dX][packed.y(newState.player()) + action.getDirection().dY]) continue;
 
-					queue.add(new Node(newState, action, estimate(newState.boxes), currentState.distance + 1, currentState));
+					// freeze and 2x2 deadlocks around the pushed box
+					if (action.getClass() == CPush.class && deadlocks.isDeadlockAfterPush(newState, action.getDirection())) continue;
 
-				}
-			}
-		}
-	}
+					int estimate = estimate(newState);
+					if (estimate >= PushDistances.INFINITE) continue;
 
-	/**
-	 * Construct the final solution.
-	 *
-	 * @param currentState the final state the A* search found
-	 */
-	private void construct(Node currentState) {
-		Node current = currentState;
-		while (current.parent != null) {
-			this.result.add(0, current.action.getDirection());
-			current = current.parent;
-		}
-	}
+					int g = nodes.g(current) + 1;
+					enqueue(newState, current, actionCode(action), g, newState.player(), estimate);
 
-	/**
-	 * Find all the boxes and targets of these boxes on a board.
-	 *
-	 * @param boxes the set to which found boxes should be added
-	 */
-	private void findBoxes(Set<Pair> boxes) {
-		for (int x = 0; x < board.width(); x++) {
-			for (int y = 0; y < board.height(); y++) {
-				if(CTile.forBox(1, board.tiles[x][y])) this.targets.add(new Pair(x, y));
-				if(CTile.isSomeBox(board.tiles[x][y])) boxes.add(new Pair(x, y));
+				}
 			}
 		}
 	}
 
 	/**
-	 * Heuristic function to estimate cost.
-	 * Calculates hamming distance of box to nearest target on the board.
+	 * A* algorithm over pushes: a state is the placement of the boxes together with the region the player can walk to
+	 * (identified by its top-left cell, see {@link Reachability}), successors are all "walk-to-the-box-and-push" actions
+	 * found by {@link ActionsBFSPacked}.
 	 *
-	 * @param boxes the hashset of box locations
+	 * @param init the initial placement of the player and the boxes on the board
 	 */
-	private int estimate(HashSet<Pair> boxes) {
-
-		/*
-		int min = 0;
-
-		// BFS FOR EACH BOX TO TARGETS
-		for(Pair box: boxes) {
-			min += BFS(box);
+	private void searchPushes(StatePacked init) {
+		initQueue(init);
+		visited = createVisited(init.length());
+
+		actionsBFS = new ActionsBFSPacked(packed);
+		reachability = new Reachability(packed);
+		corrals = corralPruning ? new CorralPruning(packed) : null;
+		corralPruned = 0;
+		macros = null;
+		if (tunnelMacros || goalRoomMacros) {
+			macros = new PushMacros(packed, packed.findBoxes(board));
+			macros.setUseTunnels(tunnelMacros);
+			macros.setUseGoalRooms(goalRoomMacros);
+			if (verbose) out.printf("Macros: %d tunnel cells, %d goal rooms\n", macros.tunnelCount(), macros.goalRoomCount());
 		}
 
-		return min;
-		*/
+		StatePacked start = reachability.normalize(init, zobrist);
+		enqueue(start, NodePool.NONE, NodePool.NONE, 0, init.player(), estimate(start));
 
+		while (!queue.isEmpty() && !cancellation.isCancelled(searchedNodes)) {
+			int current = queue.poll();
+			StatePacked currentState = nodes.state(current, zobrist);
+			if (!visited.add(currentState)) continue;
+			++searchedNodes;
+			matching.rebase(currentState);
 
-		int count = 0;
-		for(Pair box : boxes) {
-			int min = Integer.MAX_VALUE;
-			for(Pair tar : targets) {
-				min = Math.min(min, box.distanceTo(tar));
+			// if we found a solution, construct the list of actions taken and return
+			if (currentState.isVictory(packed.goals())) {
+				construct(current);
+				return;
 			}
-			count += min;
-		}
-		return count;
 
-	}
-
-	private int BFS(Pair initial) {
-		class Helper {
-			final Pair pair;
-			final int distance;
-
-			Helper(Pair pair, int distance) {
-				this.pair = pair;
-				this.distance = distance;
-			}
-		}
+			// the player stands where he has actually ended up in this state, walks are planned from there
+			int pushCount = actionsBFS.findPushes(currentState, nodes.player(current));
+			boolean corral = corrals != null && corrals.find(currentState, actionsBFS);
 
-		Queue<Helper> queue = new LinkedList<>();
-		queue.add(new Helper(initial, 0));
-		HashSet<Pair> visited = new HashSet<>();
+			for (int i = 0; i < pushCount; i++) {
+				EDirection dir = actionsBFS.pushDirection(i);
+				if (corral && !corrals.isAllowed(packed.neighbour(actionsBFS.pushCell(i), dir))) {
+					++corralPruned;
+					continue;
+				}
+				StatePacked pushed = currentState.walk(actionsBFS.pushCell(i), zobrist).push(dir, zobrist);
+
+				int box = packed.neighbour(pushed.player(), dir);
+				if (deadSquares[packed.x(box)][packed.y(box)]) continue;
+				if (deadlocks.isDeadlockAfterPush(pushed, dir)) continue;
+
+				// continue the push through a tunnel / into a goal room
+				int macroPushes = 0;
+				if (macros != null && macros.plan(pushed, box, dir) > 0) {
+					pushed = macros.perform(pushed, zobrist);
+					macroPushes = macros.pushes();
+					box = macros.finalBox();
+					if (deadSquares[packed.x(box)][packed.y(box)]) continue;
+					if (macros.finalPushDirection() != null && deadlocks.isDeadlockAfterPush(pushed, macros.finalPushDirection())) continue;
+				}
 
-		while(!queue.isEmpty()) {
-			Helper c = queue.poll();
-			if(visited.contains(c.pair)) continue;
-			visited.add(c.pair);
+				StatePacked newState = reachability.normalize(pushed, zobrist);
+				if (visited.contains(newState)) continue;
 
-			if(CTile.forBox(1, board.tile(c.pair.x, c.pair.y))) {
-				return c.distance;
-			}
+				int estimate = estimate(newState);
+				if (estimate >= PushDistances.INFINITE) continue;
 
-			for(Pair neighbor : List.of(new Pair(c.pair.x +1, c.pair.y), new Pair(c.pair.x -1, c.pair.y),
-					new Pair(c.pair.x, c.pair.y+1), new Pair(c.pair.x, c.pair.y-1))) {
-				if(!CTile.isWall(board.tile(neighbor.x, neighbor.y))) queue.add(new Helper(neighbor, c.distance + 1));
+				// the walk itself is reconstructed only if the push makes it to the solution, see construct()
+				enqueue(newState, current, actionCode(CPush.getAction(dir)), nodes.g(current) + 1 + macroPushes, pushed.player(), estimate);
 			}
 		}
-		return Integer.MAX_VALUE;
 	}
 
-	private boolean isPossible(CAction action, BoardCompactExt boardState) {
-		EDirection dir = action.getDirection();
-		Pair target = new Pair(boardState.player.x + dir.dX, boardState.player.y + dir.dY);
-		if(target.x < 0 || target.x >= board.width() || target.y < 0 || target.y >= board.height()) return false;
-
-		if(action.getClass() == CPush.class) {
-			Pair pushTo = new Pair(boardState.player.x + 2*dir.dX, boardState.player.y + 2*dir.dY);
-			if(pushTo.x < 0 || pushTo.x >= board.width() || pushTo.y < 0 || pushTo.y >= board.height()) return false;
-			if(boardState.boxes.contains(pushTo) || CTile.isWall(board.tile(pushTo.x, pushTo.y))) return false;
-			return boardState.boxes.contains(target);
-		}
-
-		return !(boardState.boxes.contains(target) || CTile.isWall(board.tile(target.x, target.y)));
+	private void initQueue(StatePacked init) {
+		this.queue = new BucketOpenList(BucketOpenList.ETieBreak.LOWEST);
+		this.nodes = new NodePool(init.length());
 	}
-}
-
-class DeadSquareDetector {
 
 	/**
-	 * Finds all the dead squares on the board
+	 * Stores the node into the pool and adds it to the open list ordered by f = g + estimate, ties are broken by the lower estimate
+	 * (i.e., the deeper node first, as g = f - estimate).
 	 *
-	 * @param board The board that we play on
-	 * @return a boolean[][] where true entries are dead tiles, and false entries are live tiles
+	 * @param state the state of the node
+	 * @param parent the index of the parent node or {@link NodePool#NONE}
+	 * @param action the code of the action leading from the parent, see {@link #actionCode(CAction)}
+	 * @param g the number of actions from the initial state
+	 * @param player the cell the player actually stands at
+	 * @param estimate the heuristic estimate of the state
 	 */
-	public static boolean[][] detect(BoardCompact board) {
-		// construct board and set all tiles to be dead
-		boolean[][] tiles = new boolean[board.width()][board.height()];
-		for (int i = 0; i < board.width(); i++) {
-			Arrays.fill(tiles[i], true);
-		}
-
-		// find all boxes and targets on the board
-		HashSet<Pair> targetsAndBoxes = new HashSet<>();
-		for (int x = 0; x < board.width(); x++) {
-			for (int y = 0; y < board.height(); y++) {
-				if(CTile.forBox(1, board.tiles[x][y])) targetsAndBoxes.add(new Pair(x, y));
-				if(CTile.isSomeBox(board.tiles[x][y])) targetsAndBoxes.add(new Pair(x, y));
-			}
-		}
-
-		// mark all boxes and targets as alive squares
-		for(Pair box : targetsAndBoxes) tiles[box.x][box.y] = false;
-
-		// for each box/target, expand outward and find the live neighboring squares
-		for (Pair coord : targetsAndBoxes) {
-			Queue<Pair> q = new LinkedList<>();
-			addNeighbours(coord, q, board);
-
-			while (!q.isEmpty()) {
-				Pair cur = q.poll();
-
-				if (!tiles[cur.x][cur.y]) continue; //if alive, continue.
-
-				if (CTile.isWall(board.tile(cur.x, cur.y))) continue; //Tile is not walkable, hence dead
-
-				if (canMoveToLivingSpot(cur, board, tiles)) { //If the tile can reach a living spot, set to alive and add neighbours
-					tiles[cur.x][cur.y] = false;
-					addNeighbours(cur, q, board);
-				}
-			}
-		}
-		return tiles;
+	private void enqueue(StatePacked state, int parent, int action, int g, int player, int estimate) {
+		int node = nodes.add(state, parent, action, g, player);
+		queue.add(node, g + estimate, estimate);
 	}
 
 	/**
-	 * Tries to add the neighbours of a tile to the queue. Does so if said neighbours are not out of bound
+	 * Encodes a move or a push into a byte of the node pool: the direction index, plus 4 for pushes.
 	 *
-	 * @param cur The current Pair whose neighbours we are adding
-	 * @param q The queue we are adding to
-	 * @param board The board we are playing on
+	 * @param action the move or push
+	 * @return the code
 	 */
-	public static void addNeighbours(Pair cur, Queue<Pair> q, BoardCompact board) {
-		if (cur.x+1 < board.width()) q.add(new Pair(cur.x+1, cur.y));
-		if (cur.x-1 >= 0) q.add(new Pair(cur.x-1, cur.y));
-		if (cur.y+1 < board.height()) q.add(new Pair(cur.x, cur.y+1));
-		if (cur.y-1 >= 0) q.add(new Pair(cur.x, cur.y-1));
+	private static int actionCode(CAction action) {
+		return action.getDirection().index + (action.getType() == EActionType.PUSH ? 4 : 0);
 	}
 
 	/**
-	 * Method checks whether a box on a given square could be moved to a neighbouring live spot
+	 * Construct the final solution by walking the parents within the node pool.
 	 *
-	 * @param coord	The coordinate where the box would be
-	 * @param board The board we use
-	 * @param tiles The list of alive and dead tiles
-	 * @return boolean whether a box could be moved to a living space
+	 * @param node the final node the A* search found
 	 */
-	public static boolean canMoveToLivingSpot(Pair coord, BoardCompact board, boolean[][] tiles) {
-		//check above and below
-		if (coord.y != 0 && coord.y != board.height()-1) {
-			if (!tiles[coord.x][coord.y-1] && CTile.isWalkable(board.tile(coord.x, coord.y+1))
-					|| (!tiles[coord.x][coord.y+1] && CTile.isWalkable(board.tile(coord.x, coord.y-1)))
-					|| (!tiles[coord.x][coord.y+1] && !tiles[coord.x][coord.y-1]))
-				return true;
+	private void construct(int node) {
+		int current = node;
+		while (nodes.parent(current) != NodePool.NONE) {
+			int parent = nodes.parent(current);
+			EDirection dir = EDirection.forIndex(nodes.action(current) & 3);
+			this.result.add(0, dir);
+			if (pushLevel) {
+				// prepend the walk from where the player stood in the parent state to the pushing position
+				StatePacked parentState = nodes.state(parent, zobrist);
+				int pushCount = actionsBFS.findPushes(parentState, nodes.player(parent));
+				int pushCell = packed.neighbour(nodes.player(current), dir.opposite());
+				if (macros != null) {
+					// the push may have been continued by a macro: find the one leading to the node, macros are deterministic
+					StatePacked state = nodes.state(current, zobrist);
+					for (int i = 0; i < pushCount; ++i) {
+						if (actionsBFS.pushDirection(i) != dir) continue;
+						StatePacked pushed = parentState.walk(actionsBFS.pushCell(i), zobrist).push(dir, zobrist);
+						if (macros.plan(pushed, packed.neighbour(pushed.player(), dir), dir) > 0) pushed = macros.perform(pushed, zobrist);
+						if (pushed.player() != nodes.player(current) || !reachability.normalize(pushed, zobrist).equals(state)) continue;
+						pushCell = actionsBFS.pushCell(i);
+						this.result.addAll(1, Arrays.asList(macros.moves()));
+						break;
+					}
+				}
+				this.result.addAll(0, Arrays.asList(actionsBFS.walkTo(pushCell).getDirections()));
+			}
+			current = parent;
 		}
-		//check left and right
-		if (coord.x != 0 && coord.x != board.width()-1)
-			if (!tiles[coord.x-1][coord.y] && CTile.isWalkable(board.tile(coord.x+1, coord.y))
-					|| !tiles[coord.x+1][coord.y] && CTile.isWalkable(board.tile(coord.x-1, coord.y))
-					|| (!tiles[coord.x+1][coord.y] && !tiles[coord.x-1][coord.y]))
-				return true;
-		return false;
-	}
-}
-
-class Node implements Comparable<Node> {
-	BoardCompactExt boardState;
-
-	CAction action;
-	double estimate;
-	double distance;
-	Node parent;
-
-	public Node(BoardCompact board, CAction action, double estimate, double distance, Node parent, HashSet<Pair> boxes, int[][] hashValues) {
-		this.action = action;
-		this.estimate = estimate;
-		this.distance = distance;
-		this.parent = parent;
-
-		// calculate the hashcode by XORing the player position and all positions of the boxes
-		int h = hashValues[(board.playerX-1) + (board.playerY-1)*board.width()][1];
-		for (Pair p : boxes) h = h ^ hashValues[(p.x-1) + (p.y-1)* board.width()][0];
-
-		this.boardState = new BoardCompactExt(boxes, new Pair(board.playerX, board.playerY), h);
-	}
-
-	public Node(BoardCompactExt board, CAction action, double estimate, double distance, Node parent) {
-		this.boardState = board;
-		this.action = action;
-		this.estimate = estimate;
-		this.distance = distance;
-		this.parent = parent;
-	}
-
-	@Override
-	public int compareTo(Node o) {
-		return Double.compare(this.estimate + this.distance, o.estimate + o.distance);
-	}
-
-}
-
-class BoardCompactExt {
-	//BoardCompact board;
-	HashSet<Pair> boxes;
-	Pair player;
-	int hashcode;
-
-	public BoardCompactExt(HashSet<Pair> boxes, Pair player, int hashcode) {
-		this.boxes = boxes;
-		this.player = player;
-		this.hashcode = hashcode;
 	}
 
 	/**
-	 * Calculate the hashcode of a different board given an action that is applied
-	 * @param hashValues the list of hash values initially generated
-	 * @param action the action being made to move away from this board
-	 * @param width the width of the board
-	 * @return the new hashcode
+	 * Heuristic function to estimate cost.
+	 * Minimal sum of pushes needed when every box is pushed to a target of its own (see {@link MatchingHeuristic}),
+	 * or the sum of the {@link PatternDatabase} over groups of boxes if that is higher.
+	 *
+	 * @param state the state holding box locations
+	 * @return the estimate or {@link PushDistances#INFINITE} if boxes can never reach the targets
 	 */
-	public int calcNewHashcode(int[][] hashValues, CAction action, int width) {
-		int h = hashcode;
-		EDirection dir = action.getDirection();
-
-		if(action.getClass() == CPush.class) { // if we are pushing, remove old position of box and add new one
-			h = h ^ hashValues[(player.x + dir.dX -1) + (player.y + dir.dY -1)*width][0];
-			h = h ^ hashValues[(player.x + 2*dir.dX -1) + (player.y + 2*dir.dY -1)*width][0];
-		}
-		// move the player
-		h = h ^ hashValues[(player.x-1) + (player.y-1)*width][1];
-		return h ^ hashValues[(player.x + dir.dX -1) + (player.y + dir.dY -1)*width][1];
-	}
-
-	public BoardCompactExt perform(CAction action) {
-		HashSet<Pair> clonedSet = new HashSet<>();
-		for(Pair p : boxes) clonedSet.add(new Pair(p.x, p.y));
-
-		BoardCompactExt cloned = new BoardCompactExt(clonedSet, new Pair(player.x, player.y), hashcode);
-		EDirection dir = action.getDirection();
-
-		cloned.player = new Pair(this.player.x + dir.dX, this.player.y + dir.dY);
-
-		if (action.getClass() == CPush.class) {
-			// update the location of the box
-			cloned.boxes.remove(new Pair(cloned.player.x, cloned.player.y));
-			cloned.boxes.add(new Pair(cloned.player.x + dir.dX, cloned.player.y + dir.dY));
-		}
-
-		return cloned;
-	}
-
-	public boolean isVictory(HashSet<Pair> targets) {
-		for (Pair box : boxes) if(!targets.contains(box)) return false;
-		return true;
-	}
-
-	@Override
-	public boolean equals(Object o) {
-		if (o == null || getClass() != o.getClass()) return false;
-		BoardCompactExt that = (BoardCompactExt) o;
-		return hashcode == that.hashcode && Objects.equals(boxes, that.boxes) && Objects.equals(player, that.player);
-	}
-
-	@Override
-	public int hashCode() {
-		return hashcode;
-	}
-}
-
-
-class Pair {
-	int x, y;
-
-	Pair(int x, int y) {
-		this.x = x;
-		this.y = y;
-	}
-
-	@Override
-	public boolean equals(Object o) {
-		if (o == null || getClass() != o.getClass()) return false;
-		Pair pair = (Pair) o;
-		return x == pair.x && y == pair.y;
-	}
-
-	@Override
-	public int hashCode() {
-		return Objects.hash(x, y);
-	}
-
-	public int distanceTo(Pair p) {
-		return Math.abs(x - p.x) + Math.abs(y - p.y);
+	private int estimate(StatePacked state) {
+		int estimate = matching.estimate(state);
+		if (patterns == null || estimate >= PushDistances.INFINITE) return estimate;
+		return Math.max(estimate, patterns.estimate(state));
 	}
 }
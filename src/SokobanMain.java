@@ -1,6 +1,8 @@
 import static java.lang.System.out;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 import game.*;
 import tournament.*;
@@ -48,7 +50,7 @@ public class SokobanMain {
     }
 
     static void runLevelSet(String agentId, String className, String levelset, int maxFail, String resultDir,
-                            int timeout, boolean verbose, boolean optimal) {
+                            int timeout, boolean verbose, boolean optimal, int threads) {
         System.out.printf("Running %s on levels in %s\n", className, levelset);
 
         SokobanConfig config = new SokobanConfig();
@@ -59,10 +61,31 @@ public class SokobanMain {
 
         RunSokobanLevels run = new RunSokobanLevels(
             config, className, levelset,
-            resultDir == null ? null : new File(resultDir), maxFail);
+            resultDir == null ? null : new File(resultDir), maxFail, threads);
         run.run();
     }
 
+    static void benchmarkLevelSets(String agentId, String className, String levelsets, int level, int timeout, boolean optimal,
+                                   int warmup, int runs, String benchmarkFile, String baselineFile, double tolerance) {
+        System.out.printf("Benchmarking %s on levels in %s (%d warmup, %d measured runs)\n", className, levelsets, warmup, runs);
+
+        SokobanConfig config = new SokobanConfig();
+        config.id = agentId;
+        config.requireOptimal = optimal;
+        config.timeoutMillis = timeout;
+
+        BenchmarkSokobanLevels benchmark = new BenchmarkSokobanLevels(
+            config, className, Arrays.asList(levelsets.split(",")), level, warmup, runs);
+        List<BenchmarkResult> results = benchmark.run();
+        BenchmarkResult.write(new File(benchmarkFile), results);
+
+        if (baselineFile != null) {
+            List<BenchmarkResult> baseline = BenchmarkResult.read(new File(baselineFile));
+            if (BenchmarkSokobanLevels.compare(results, baseline, tolerance) > 0)
+                System.exit(1);
+        }
+    }
+
     static void usage() {
         out.println("usage: sokoban [<agent-classname>] [<option>...]");
         out.println("options:");
@@ -72,8 +95,15 @@ public class SokobanMain {
         out.println("  -maxfail <num> : maximum level failures allowed");
         out.println("  -optimal : require move-optimal solutions");
         out.println("  -resultdir <path> : directory for results in CSV format");
+        out.println("  -threads <num> : play levels of the set in-process, <num> at once (default: a JVM per level)");
         out.println("  -timeout <num> : maximum thinking time in milliseconds");
         out.println("  -v : verbose output");
+        out.println("benchmark options (levelset may be a comma-separated list):");
+        out.println("  -benchmark <path> : benchmark the agent in-process, write per-level results as CSV to <path>");
+        out.println("  -warmup <num> : runs of every level not measured (default 1)");
+        out.println("  -runs <num> : measured runs of every level (default 3)");
+        out.println("  -baseline <path> : earlier benchmark file to compare with, exits with 1 on regressions");
+        out.println("  -tolerance <percent> : allowed growth of time and nodes against the baseline (default 10)");
         System.exit(1);
     }
 
@@ -86,7 +116,13 @@ public class SokobanMain {
         boolean optimal = false;
         String resultDir = null;
         int timeout = 0;
+        int threads = 0;
         boolean verbose = false;
+        String benchmarkFile = null;
+        String baselineFile = null;
+        int warmup = 1;
+        int runs = 3;
+        double tolerance = 10;
 
         for (int i = 0 ; i < args.length ; ++i) {
             String s = args[i];
@@ -98,9 +134,12 @@ public class SokobanMain {
                     level = Integer.parseInt(args[++i]);
                     break;
                 case "-levelset":
-                    levelset = args[++i];
-                    if (levelset.indexOf('.') == -1)
-                        levelset += ".sok";
+                    levelset = "";
+                    for (String name : args[++i].split(",")) {
+                        if (name.indexOf('.') == -1)
+                            name += ".sok";
+                        levelset += (levelset.isEmpty() ? "" : ",") + name;
+                    }
                     break;
                 case "-maxfail":
                     maxFail = Integer.parseInt(args[++i]);
@@ -114,9 +153,27 @@ public class SokobanMain {
                 case "-timeout":
                     timeout = Integer.parseInt(args[++i]);
                     break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
                 case "-v":
                     verbose = true;
                     break;
+                case "-benchmark":
+                    benchmarkFile = args[++i];
+                    break;
+                case "-baseline":
+                    baselineFile = args[++i];
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "-runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "-tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
                 default:
                     if (s.startsWith("-"))
                         usage();
@@ -130,7 +187,12 @@ public class SokobanMain {
             else
                 Sokoban.playHumanFile(levelset);
         else
-            if (level > 0) {
+            if (benchmarkFile != null) {
+                benchmarkLevelSets(agentId, className, levelset, level, timeout, optimal,
+                                   warmup, runs, benchmarkFile, baselineFile, tolerance / 100);
+                System.exit(0);
+            }
+            else if (level > 0) {
                 IAgent agent = (IAgent) Class.forName(className).getConstructor().newInstance();
                 SokobanResultType resultType = runLevel(
                     agent, agentId, levelset, level, resultDir, timeout, verbose, optimal);
@@ -138,6 +200,6 @@ public class SokobanMain {
             }
             else
                 runLevelSet(agentId, className, levelset, maxFail,
-                            resultDir, timeout, verbose, optimal);
+                            resultDir, timeout, verbose, optimal, threads);
     }
 }
@@ -1,23 +1,62 @@
 package TenetAgent;
 
 import agents.ArtificialAgent;
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.MatchingHeuristic;
+import agents.heuristics.PushDistances;
+import agents.search.BucketOpenList;
+import agents.search.IOpenList;
+import agents.search.IStateSet;
+import agents.search.MappedStateSet;
+import agents.search.NodePool;
+import agents.search.TranspositionTable;
+import game.CancellationToken;
+import game.IAgentStatistics;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
-import game.board.compact.CTile;
+import game.board.ZobristTable;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
 
+import java.io.File;
 import java.util.*;
 
 import static java.lang.System.out;
 
-public class TenetAgent extends ArtificialAgent {
+public class TenetAgent extends ArtificialAgent implements IAgentStatistics {
     protected BoardCompact board;
+    protected BoardPacked packed;
 
-    protected HashSet<Pair> tenetTargets;
+    protected boolean[] tenetTargets;
+    protected int[] tenetTargetCells;
+    private MatchingHeuristic matching;
+    private FreezeDeadlockDetector deadlocks;
     protected List<TAction> allActions;
     protected int searchedNodes;
-    protected Pair tenetEndLocation;
+    protected int tenetEndLocation;
     protected List<EDirection> result;
-    private int[][] hashValues;
+    private ZobristTable zobrist;
+
+    // search configuration
+    protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+    protected int visitedCapacity = TranspositionTable.DEFAULT_CAPACITY;
+    /**
+     * Whether visited states are kept off-heap within a memory-mapped file ({@link MappedStateSet}) instead of the {@link TranspositionTable},
+     * for searches that would outgrow the heap.
+     */
+    protected boolean offHeapVisited = false;
+    /**
+     * Where the off-heap closed set creates its temp directory; null for java.io.tmpdir.
+     */
+    protected File offHeapDirectory = null;
+    protected IStateSet visited;
+
+    // open list holding indices of nodes stored within the pool
+    protected IOpenList queue;
+    protected NodePool nodes;
+
+    // polled every expansion, the search gives up once the level is stopped or its deadline passes
+    protected CancellationToken cancellation;
 
 
     @Override
@@ -25,23 +64,18 @@ public class TenetAgent extends ArtificialAgent {
         long searchStartMillis = System.currentTimeMillis();
         // initialize everything
         this.board = board;
-        this.tenetTargets = new HashSet<>();
-        HashSet<Pair> tenetBoxes = new HashSet<>();
-        findTenetTargetsAndBoxes(tenetBoxes);
+        this.packed = new BoardPacked(board);
+        int[] tenetBoxes = findTenetTargetsAndBoxes();
+        this.matching = new MatchingHeuristic(PushDistances.forPulling(packed, tenetTargetCells), board.boxCount);
+        this.deadlocks = new FreezeDeadlockDetector(packed, null);
         generateAllActions();
         searchedNodes = 0;
-        this.tenetEndLocation = new Pair(board.playerX, board.playerY);
+        this.cancellation = cancellation();
+        this.tenetEndLocation = packed.cell(board.playerX, board.playerY);
         this.result = new ArrayList<>();
 
-        // Construct the hash values for different states
-        // first column: the hash values of having a box at a certain square (row ind)
-        // second column: the hash value of having a person at a certain square (row ind)
-        // take a look at https://en.wikipedia.org/wiki/Zobrist_hashing
-        this.hashValues = new int[(board.width() - 1) * (board.height() - 1)][2];
-        for(int i = 0; i < hashValues.length; i++) {
-            hashValues[i][0] = new Random().nextInt();
-            hashValues[i][1] = new Random().nextInt();
-        }
+        // Zobrist keys of the level, seeded so that hashes are the same for every run
+        this.zobrist = new ZobristTable(packed, zobristSeed);
 
         // actually search
         search(tenetBoxes);
@@ -51,137 +85,160 @@ public class TenetAgent extends ArtificialAgent {
             out.println("Nodes visited: " + searchedNodes);
             out.printf("Performance: %.1f nodes/sec\n",
                     ((double)searchedNodes / (double)searchTime * 1000));
+            out.printf("Visited states: %d (load factor %.2f)\n", visited.size(), visited.loadFactor());
+            out.printf("Generated nodes: %d (%d bytes per node)\n", nodes.size(), nodes.bytesPerNode());
+            if (result.isEmpty() && cancellation.isCancelled()) out.println("Search cancelled.");
         }
 
+        // do not hold the search memory till the next level
+        queue = null;
+        nodes = null;
+        if (visited != null) visited.close();
+        visited = null;
+
         return result.isEmpty() ? null : result;
     }
 
+    @Override
+    public long getSearchedNodes() {
+        return searchedNodes;
+    }
+
+    /**
+     * Closed set for states of 'stateLength' according to {@link #offHeapVisited}.
+     * @param stateLength
+     * @return
+     */
+    protected IStateSet createVisited(int stateLength) {
+        if (offHeapVisited) return new MappedStateSet(visitedCapacity, stateLength, offHeapDirectory);
+        return new TranspositionTable(visitedCapacity, stateLength, true);
+    }
+
     /**
      * A* algorithm with as catch that we now pull boxes instead of pushing them.
      * This requires us to have swapped the boxes and targets (so we pull targets) and Sokoban starts on all free
      * positions next to TenetBoxes
      *
-     * @param tenetBoxes a list of the TenetBoxes at the start of the level
+     * @param tenetBoxes the cells of the TenetBoxes at the start of the level
      */
-    private void search(HashSet<Pair> tenetBoxes) {
-        PriorityQueue<Node> queue = new PriorityQueue<>();
-        HashSet<BoardCompactExt> visited = new HashSet<>();
+    private void search(int[] tenetBoxes) {
+        queue = new BucketOpenList(BucketOpenList.ETieBreak.LOWEST);
 
         //Add starting positions to the queue
-        for (Pair p : tenetBoxes) {
-            if (!CTile.isWall(board.tiles[p.x + 1][p.y]) && !tenetBoxes.contains(new Pair(p.x+1, p.y)))
-                queue.add(new Node(board, estimate(tenetBoxes),tenetBoxes, hashValues, new Pair(p.x+1, p.y)));
-            if (!CTile.isWall(board.tiles[p.x - 1][p.y]) && !tenetBoxes.contains(new Pair(p.x-1, p.y)))
-                queue.add(new Node(board, estimate(tenetBoxes),tenetBoxes, hashValues, new Pair(p.x-1, p.y)));
-            if (!CTile.isWall(board.tiles[p.x][p.y + 1]) && !tenetBoxes.contains(new Pair(p.x, p.y+1)))
-                queue.add(new Node(board, estimate(tenetBoxes),tenetBoxes, hashValues, new Pair(p.x, p.y+1)));
-            if (!CTile.isWall(board.tiles[p.x][p.y - 1]) && !tenetBoxes.contains(new Pair(p.x, p.y-1)))
-                queue.add(new Node(board, estimate(tenetBoxes),tenetBoxes, hashValues, new Pair(p.x, p.y-1)));
+        StatePacked boxesOnly = StatePacked.create(tenetBoxes[0], tenetBoxes, zobrist);
+        nodes = new NodePool(boxesOnly.length());
+        visited = createVisited(boxesOnly.length());
+        for (int p : tenetBoxes) {
+            for (EDirection dir : EDirection.arrows()) {
+                int start = packed.neighbour(p, dir);
+                if (start == BoardPacked.NONE || boxesOnly.hasBox(start)) continue;
+                StatePacked init = StatePacked.create(start, tenetBoxes, zobrist);
+                enqueue(init, NodePool.NONE, NodePool.NONE, 0, estimate(init));
+            }
         }
 
-        while (!queue.isEmpty()) {
-            Node currentState = queue.poll();
-            visited.add(currentState.boardState);
+        while (!queue.isEmpty() && !cancellation.isCancelled(searchedNodes)) {
+            int current = queue.poll();
+            StatePacked currentState = nodes.state(current, zobrist);
+            ++searchedNodes;
+            visited.add(currentState);
+            matching.rebase(currentState);
 
             // if we found a solution, construct the list of actions taken and return
-            if(currentState.boardState.player.x == tenetEndLocation.x && currentState.boardState.player.y == tenetEndLocation.y
-                && currentState.boardState.isVictory(tenetTargets)) {
-                construct(currentState);
+            if(currentState.player() == tenetEndLocation
+                && currentState.isVictory(tenetTargets)) {
+                construct(current);
                 return;
             }
 
             // loop over all the possible actions
-            for(TAction action : allActions) {
-                // if the action is possible then apply it to a cloned board
-                if(!isPossible(action, currentState.boardState)) continue;
-                BoardCompactExt newState = currentState.boardState.perform(action);
-                newState.hashcode = currentState.boardState.calcNewHashcode(hashValues, action, board.width());
+            for(int a = 0; a < allActions.size(); a++) {
+                TAction action = allActions.get(a);
+                // if the action is possible then apply it to a new state
+                if(!isPossible(action, currentState)) continue;
+                StatePacked newState = action.pull
+                        ? currentState.pull(action.direction, zobrist)
+                        : currentState.move(action.direction, zobrist);
 
                 // if we haven't been at this board state before, explore it further
                 if(!visited.contains(newState)) {
-                    queue.add(new Node(newState, action, estimate(newState.boxes), currentState.distance + 1, currentState));
+                    // the pulled box can never be pulled again and is not on a tenetTarget
+                    if (action.pull && deadlocks.isDeadlockAfterPull(newState, action.direction, tenetTargets)) continue;
+
+                    int estimate = estimate(newState);
+                    if (estimate >= PushDistances.INFINITE) continue;
+                    enqueue(newState, current, a, nodes.g(current) + 1, estimate);
                 }
             }
         }
     }
 
     /**
-     * Checks whether an action is possible on a given board
+     * Stores the node into the pool and adds it to the open list ordered by f = g + estimate, ties are broken by the lower estimate.
      *
-     * @param action The action to be performed
-     * @param boardState The board to perform an action on
-     * @return a boolean value indicating whether an action is possible or not
+     * @param state the state of the node
+     * @param parent the index of the parent node or {@link NodePool#NONE}
+     * @param action the index of the action within {@link #allActions} leading from the parent
+     * @param g the number of actions from the starting state
+     * @param estimate the heuristic estimate of the state
      */
-    private boolean isPossible(TAction action, BoardCompactExt boardState) {
-        EDirection dir = action.getDirection();
-        Pair target = new Pair(boardState.player.x + dir.dX, boardState.player.y + dir.dY);
-
-        // Check that moving does not put Sokoban outside the map, in a wall, or in a box
-        if(target.x < 0 || target.x >= board.width() || target.y < 0 || target.y >= board.height()
-                || CTile.isWall(board.tiles[target.x][target.y])
-                || playerOnBox(boardState, action)) return false;
-
-        // Checks that for all pull actions there is a box to pull
-        if (action.pull) {
-            return boardState.boxes.contains(new Pair(boardState.player.x-dir.dX, boardState.player.y-dir.dY));
-        }
-
-        return true;
+    private void enqueue(StatePacked state, int parent, int action, int g, int estimate) {
+        int node = nodes.add(state, parent, action, g, state.player());
+        queue.add(node, g + estimate, estimate);
     }
 
     /**
-     * Checks whether a player is on a box
+     * Checks whether an action is possible on a given board
      *
-     * @param board the board we are using
-     * @return boolean whether the player x and y are the same as any box's x and y
+     * @param action The action to be performed
+     * @param boardState The board to perform an action on
+     * @return a boolean value indicating whether an action is possible or not
      */
-    public boolean playerOnBox(BoardCompactExt board, TAction action) {
-        return board.boxes.contains(new Pair(board.player.x+action.direction.dX, board.player.y+action.direction.dY));
+    private boolean isPossible(TAction action, StatePacked boardState) {
+        // Check that moving does not put Sokoban in a wall or in a box, and for all pull actions that there is a box to pull
+        if (action.pull) return boardState.canPull(packed, action.direction);
+        return boardState.canMove(packed, action.direction);
     }
 
     /**
-     * A relatively simple heuristic which checks the smallest manhattan distance of each box to a unique board
+     * Minimal sum of pulls needed when every box is pulled to a tenetTarget of its own (see {@link MatchingHeuristic})
      *
-     * @param boxes List of box locations
-     * @return number of boxes - number of boxes on a target
+     * @param state the state holding box locations
+     * @return the estimate or {@link PushDistances#INFINITE} if boxes can never reach the tenetTargets
      */
-    private int estimate(HashSet<Pair> boxes) {
-        int count = 0;
-        for(Pair box : boxes) {
-            int min = Integer.MAX_VALUE;
-            for(Pair tar : tenetTargets) {
-                min = Math.min(min, box.distanceTo(tar));
-            }
-            count += min;
-        }
-        return count;
+    private int estimate(StatePacked state) {
+        return matching.estimate(state);
     }
 
     /**
      * Construct the results list.
      *
-     * @param currentState the final state the A* search found
+     * @param node the final node the A* search found
      */
-    private void construct(Node currentState) {
-        Node current = currentState;
-        while (current.parent != null) {
-            this.result.add(current.action.getReverseDirection());
-            current = current.parent;
+    private void construct(int node) {
+        int current = node;
+        while (nodes.parent(current) != NodePool.NONE) {
+            this.result.add(allActions.get(nodes.action(current)).getReverseDirection());
+            current = nodes.parent(current);
         }
     }
 
     /**
      * Finds all the tenetTargets and tenetBoxes given the global board
      *
-     * @param tenetBoxes a list of pairs that we fill with tenetBox locations
+     * @return the cells of the tenetBoxes
      */
-    private void findTenetTargetsAndBoxes(Set<Pair> tenetBoxes) {
-        for (int x = 0; x < board.width(); x++) {
-            for (int y = 0; y < board.height(); y++) {
-                if(CTile.forBox(1, board.tiles[x][y])) tenetBoxes.add(new Pair(x, y));
-                if(CTile.isSomeBox(board.tiles[x][y])) this.tenetTargets.add(new Pair(x, y));
-            }
+    private int[] findTenetTargetsAndBoxes() {
+        this.tenetTargetCells = packed.findBoxes(board);
+        this.tenetTargets = new boolean[packed.cellCount()];
+        for (int cell : tenetTargetCells) tenetTargets[cell] = true;
+
+        int[] tenetBoxes = new int[packed.goalCount()];
+        int index = 0;
+        for (int cell = 0; cell < packed.cellCount(); cell++) {
+            if (packed.isGoal(cell)) tenetBoxes[index++] = cell;
         }
+        return tenetBoxes;
     }
 
     /**
@@ -1,23 +1,65 @@
 package agents;
 
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import game.IAgent;
+import game.CancellationToken;
+import game.ICancellableAgent;
 import game.actions.EDirection;
 import game.board.compact.BoardCompact;
 
-public abstract class ArtificialAgent implements IAgent {
+/**
+ * Agent planning within {@link #think(BoardCompact)} and then replaying the planned actions.
+ * 
+ * Planning runs on a thread of the shared {@link #THINK_EXECUTOR} (threads are reused across levels and agents);
+ * its result is handed over through a {@link CompletableFuture}, so {@link #act(long)} parks the caller until the actions
+ * are ready instead of polling, and {@link #act()} just checks whether they are.
+ * 
+ * Every planning gets its own {@link CancellationToken} ({@link #cancellation()}), cancelled by {@link #stop()} or once the deadline
+ * of the level passes; searches within {@link #think(BoardCompact)} should poll it and give up when it is cancelled.
+ */
+public abstract class ArtificialAgent implements ICancellableAgent {
+
+	/**
+	 * Threads running {@link #think(BoardCompact)}; daemons, created on demand and reused once idle.
+	 */
+	private static final ExecutorService THINK_EXECUTOR = Executors.newCachedThreadPool(new ThinkThreadFactory());
 
 	private List<EDirection> actions;
 	
 	private BoardCompact board;
 		
-	private ThinkThread thread;
+	/**
+	 * Result of the current planning; null if not started yet.
+	 */
+	private CompletableFuture<List<EDirection>> planning;
+	
+	/**
+	 * Task running the current planning (used to interrupt it).
+	 */
+	private Future<?> planningTask;
+	
+	/**
+	 * Token of the current (or the last) planning.
+	 */
+	private volatile CancellationToken cancellation = CancellationToken.noDeadline();
+	
+	/**
+	 * Deadline of the current level; non-positive == none.
+	 */
+	private long deadlineMillis;
 	
 	private Object mutex = new Object();
 	
-    private RuntimeException agentException;
-    
     protected boolean optimal, verbose;
 
     @Override
@@ -26,11 +68,16 @@ public abstract class ArtificialAgent implements IAgent {
         this.verbose = verbose;
     }
 
+	@Override
+	public void setDeadline(long deadlineMillis) {
+		this.deadlineMillis = deadlineMillis;
+	}
+	
 	@Override
 	public void newLevel() {
+		cancelPlanning();
 		actions = null;
 		board = null;
-		agentException = null;
 	}
 
 	@Override
@@ -40,6 +87,11 @@ public abstract class ArtificialAgent implements IAgent {
 
 	@Override
 	public EDirection act() {
+		return act(0);
+	}
+	
+	@Override
+	public EDirection act(long maxWaitMillis) {
 		// HAVE ACTION?
 		if (actions != null && actions.size() != 0) {
 			// => EXECUTE
@@ -47,98 +99,117 @@ public abstract class ArtificialAgent implements IAgent {
 		}
 		
 		// OTHERWISE THINK!
-		synchronized(mutex) {
-			if (agentException != null) {
-				throw agentException;
-			}
-			ensureThinkThread();
-			if (actions == null || actions.size() == 0) {
-				thread.think = true;
+		CompletableFuture<List<EDirection>> future = ensurePlanning();
+		List<EDirection> thinkActions;
+		try {
+			if (maxWaitMillis <= 0) {
+				if (!future.isDone()) return null;
+				thinkActions = future.get();
+			} else if (maxWaitMillis == Long.MAX_VALUE) {
+				thinkActions = future.get();
+			} else {
+				thinkActions = future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
 			}
-			if (actions != null && actions.size() != 0) {
-				// => EXECUTE
-				return actions.remove(0);
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			// let the caller see it
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (CancellationException e) {
+			return null;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("ThinkThread failed.", e.getCause());
+		}
+		
+		synchronized(mutex) {
+			if (planning != future) return null; // stopped meanwhile
+			if (thinkActions == null && cancellation.isCancelled()) return null; // out of time, let the game time out
+			planning = null;
+			planningTask = null;
+			if (thinkActions != null) {
+				actions = thinkActions;
+			} else {
+				actions = new ArrayList<EDirection>();
+				actions.add(EDirection.NONE);
 			}
 		}
-		return null;
+		return actions.remove(0);
 	}
 	
+	/**
+	 * Plans actions solving the level; should give up (and return null) once {@link #cancellation()} is cancelled.
+	 * @param board
+	 * @return actions to perform or null if there is no solution (or the planning was cancelled)
+	 */
 	protected abstract List<EDirection> think(final BoardCompact board);
+	
+	/**
+	 * Token of the running {@link #think(BoardCompact)}, to be polled by the search, e.g., via {@link CancellationToken#isCancelled(long)}
+	 * with the number of expansions.
+	 * @return
+	 */
+	protected CancellationToken cancellation() {
+		return cancellation;
+	}
 
 	@Override
 	public void victory() {
-		stopThinkThread();		
+		cancelPlanning();
 	}
 	
 	@Override
 	public void stop() {
-		stopThinkThread();
+		cancelPlanning();
 	}
 	
-	private void ensureThinkThread() {
+	private CompletableFuture<List<EDirection>> ensurePlanning() {
 		synchronized(mutex) {
-			if (thread != null && thread.running) return;
-			thread = new ThinkThread();
-			thread.start();
+			if (planning != null) return planning;
+			final CompletableFuture<List<EDirection>> future = new CompletableFuture<List<EDirection>>();
+			final BoardCompact thinkBoard = board;
+			planning = future;
+			cancellation = new CancellationToken(deadlineMillis);
+			planningTask = THINK_EXECUTOR.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						future.complete(think(thinkBoard));
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					} finally {
+						// do not leak the interrupt to the next planning run on this thread
+						Thread.interrupted();
+					}
+				}
+			});
+			return future;
 		}
 	}
 	
-	private void stopThinkThread() {
+	private void cancelPlanning() {
 		synchronized(mutex) {
-			if (thread != null) {
-				thread.shouldRun = false;
-				thread.interrupt();
-				thread = null;
+			cancellation.cancel();
+			if (planning != null) {
+				planning.cancel(false);
+				planningTask.cancel(true);
+				planning = null;
+				planningTask = null;
 			}
 		}
 	}
 	
-	protected class ThinkThread extends Thread {
-		
-		public boolean running = true;
-		
-		public boolean shouldRun = true;
-		
-		public boolean think = false;
+	private static class ThinkThreadFactory implements ThreadFactory {
 		
-		public ThinkThread() {
-			super("ThinkThread");
-		}
+		private final AtomicInteger count = new AtomicInteger();
 		
 		@Override
-		public void run() {
-			try {
-				while (shouldRun && !interrupted()) {
-					while (!think) {
-						try {
-							Thread.sleep(50);
-						} catch (Exception e) {
-							throw new RuntimeException("Interrupted on sleep");
-						}
-					}
-					List<EDirection> thinkActions = think(board);
-					synchronized(mutex) {
-						if (ArtificialAgent.this.thread == this) {
-                            if (thinkActions != null)
-                                actions = thinkActions;
-                            else {
-                                actions = new ArrayList<EDirection>();
-                                actions.add(EDirection.NONE);
-                            }
-						}
-						think = false;
-					}
-				}
-			} catch (Exception e) {
-				synchronized(mutex) {
-					agentException = new RuntimeException("ThinkThread failed.", e);
-				}
-			} finally {
-				running = false;
-			}
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "ThinkThread-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
 		
 	}
-
 	
 }
@@ -0,0 +1,330 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import agents.actions.ActionsBFSPacked;
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.MatchingHeuristic;
+import agents.heuristics.PushDistances;
+import agents.search.BucketOpenList;
+import agents.search.IOpenList;
+import agents.search.NodePool;
+import agents.search.NodeTable;
+import game.CancellationToken;
+import game.IAgentStatistics;
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.Reachability;
+import game.board.packed.StatePacked;
+
+/**
+ * Bidirectional search: the forward A* over pushes (as MyAgent) and the backward A* over pulls from the solved positions
+ * (as TenetAgent) interleaved within a single thread, always expanding the side with the smaller open list.
+ *
+ * States of both sides are boxes + the top-left cell the player can reach ({@link Reachability}); as the region does not depend on
+ * the direction of the search, a state of one side equals the state of the other one for the same box configuration and region.
+ * Both sides register their states within a single shared table; once a side generates a state registered by the other one,
+ * the forward half-path to it and the backward half-path (replayed as pushes) are stitched into the solution.
+ *
+ * Solutions are not guaranteed to be optimal, the point is to meet in the middle with far fewer expanded nodes on long levels.
+ */
+public class BidirectionalAgent extends ArtificialAgent implements IAgentStatistics {
+
+	protected List<EDirection> result;
+
+	protected BoardCompact board;
+
+	// LEVEL
+
+	protected BoardPacked packed;
+
+	protected ZobristTable zobrist;
+
+	protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+
+	/**
+	 * Backward roots are seeded from at most this many sets of goals (levels with more goals than boxes have a set per
+	 * {@link BoardCompact#boxCount}-subset of goals); beyond it, only the forward side searches and finishes on reaching a solved state.
+	 */
+	public static final int MAX_GOAL_SETS = 256;
+
+	/**
+	 * Cells of boxes at the start (targets of the backward search).
+	 */
+	protected boolean[] startBoxes;
+
+	// SEARCH
+
+	protected Side forward;
+
+	protected Side backward;
+
+	/**
+	 * State -> forward node (>= 0) or {@link NodeTable#other(int)} of the backward node (< 0).
+	 */
+	protected NodeTable table;
+
+	protected ActionsBFSPacked actionsBFS;
+
+	protected Reachability reachability;
+
+	/**
+	 * Where the sides met: [forward node, backward node].
+	 */
+	private int meetingForward = NodePool.NONE;
+
+	private int meetingBackward = NodePool.NONE;
+
+	protected CancellationToken cancellation;
+
+	@Override
+	protected List<EDirection> think(BoardCompact board) {
+		// INIT SEARCH
+		this.board = board;
+		this.result = new ArrayList<EDirection>();
+		this.packed = new BoardPacked(board);
+		this.zobrist = new ZobristTable(packed, zobristSeed);
+		this.actionsBFS = new ActionsBFSPacked(packed);
+		this.reachability = new Reachability(packed);
+		this.meetingForward = NodePool.NONE;
+		this.meetingBackward = NodePool.NONE;
+		this.cancellation = cancellation();
+
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		int[] boxes = packed.findBoxes(board);
+		this.startBoxes = new boolean[packed.cellCount()];
+		for (int box : boxes) startBoxes[box] = true;
+
+		StatePacked init = StatePacked.create(packed.cell(board.playerX, board.playerY), boxes, zobrist);
+		if (init.isVictory(packed.goals())) return result;
+
+		PushDistances pushing = PushDistances.forPushing(packed, goals);
+		PushDistances pulling = PushDistances.forPulling(packed, boxes);
+		forward = new Side(true, pushing, new FreezeDeadlockDetector(packed, FreezeDeadlockDetector.deadCells(pushing)), init.length());
+		backward = new Side(false, pulling, new FreezeDeadlockDetector(packed, null), init.length());
+		this.table = new NodeTable(NodeTable.DEFAULT_CAPACITY, forward.nodes, backward.nodes);
+
+		// FIRE THE SEARCH
+
+		long searchStartMillis = System.currentTimeMillis();
+
+		StatePacked start = reachability.normalize(init, zobrist);
+		forward.open(start, init.player());
+		addBackwardRoots(goals, boxes.length);
+
+		while (meetingForward == NodePool.NONE && !cancellation.isCancelled(getSearchedNodes())) {
+			Side side = forward.queue.isEmpty() || (!backward.queue.isEmpty() && backward.queue.size() < forward.queue.size()) ? backward : forward;
+			if (side.queue.isEmpty()) break;
+			side.expand();
+		}
+
+		long searchTime = System.currentTimeMillis() - searchStartMillis;
+
+		if (meetingForward != NodePool.NONE) construct();
+
+		if (verbose) {
+			long searchedNodes = getSearchedNodes();
+			System.out.println("SEARCH TOOK:   " + searchTime + " ms");
+			System.out.println("NODES VISITED: " + searchedNodes + " (forward " + forward.expanded + ", backward " + backward.expanded + ")");
+			System.out.println("PERFORMANCE:   " + ((double)searchedNodes / (double)Math.max(1, searchTime) * 1000) + " nodes/sec");
+			System.out.println("SOLUTION:      " + (result.size() == 0 ? "NOT FOUND" : "FOUND in " + result.size() + " steps, "
+			                   + (forward.nodes.g(meetingForward) + (meetingBackward == NodePool.NONE ? 0 : backward.nodes.g(meetingBackward))) + " pushes"));
+			System.out.println("=================");
+		}
+
+		if (result.size() == 0) {
+			return null;
+		}
+
+		return result;
+	}
+
+	@Override
+	public long getSearchedNodes() {
+		if (forward == null) return 0;
+		return forward.expanded + backward.expanded;
+	}
+
+	/**
+	 * Solved states: 'boxCount' boxes on goals with the player within any of the regions left free; none if there are more
+	 * than {@link #MAX_GOAL_SETS} sets of goals to fill.
+	 */
+	private void addBackwardRoots(int[] goals, int boxCount) {
+		long sets = 1;
+		for (int i = 0; i < boxCount && sets <= MAX_GOAL_SETS; ++i) {
+			sets = sets * (goals.length - i) / (i + 1);
+		}
+		if (sets > MAX_GOAL_SETS) return;
+
+		// all ascending 'boxCount'-subsets of goals
+		int[] subset = new int[boxCount];
+		for (int i = 0; i < boxCount; ++i) subset[i] = i;
+		int[] boxes = new int[boxCount];
+		while (meetingForward == NodePool.NONE) {
+			for (int i = 0; i < boxCount; ++i) boxes[i] = goals[subset[i]];
+			StatePacked solved = StatePacked.create(boxes[0], boxes, zobrist);
+			for (int cell = 0; cell < packed.cellCount() && meetingForward == NodePool.NONE; ++cell) {
+				if (solved.hasBox(cell)) continue;
+				StatePacked root = reachability.normalize(solved.walk(cell, zobrist), zobrist);
+				if (root.player() != cell) continue; // not the top-left cell of its region
+				backward.open(root, cell);
+			}
+			int i = boxCount - 1;
+			while (i >= 0 && subset[i] == goals.length - boxCount + i) --i;
+			if (i < 0) return;
+			++subset[i];
+			for (int j = i + 1; j < boxCount; ++j) subset[j] = subset[j - 1] + 1;
+		}
+	}
+
+	/**
+	 * Records that both sides reached the same state; 'backwardNode' is {@link NodePool#NONE} if the forward side reached
+	 * a solved state on its own.
+	 */
+	private void meet(int forwardNode, int backwardNode) {
+		meetingForward = forwardNode;
+		meetingBackward = backwardNode;
+	}
+
+	// ==========
+	// STITCHING
+	// ==========
+
+	private void construct() {
+		// FORWARD HALF: pushes from the start to the meeting state, walks reconstructed from the actual player cells
+		int current = meetingForward;
+		while (forward.nodes.parent(current) != NodePool.NONE) {
+			int parent = forward.nodes.parent(current);
+			EDirection dir = EDirection.forIndex(forward.nodes.action(current));
+			result.add(0, dir);
+			actionsBFS.findPushes(forward.nodes.state(parent, zobrist), forward.nodes.player(parent));
+			int pushCell = packed.neighbour(forward.nodes.player(current), dir.opposite());
+			result.addAll(0, Arrays.asList(actionsBFS.walkTo(pushCell).getDirections()));
+			current = parent;
+		}
+
+		// BACKWARD HALF: every pull (player c -> c + d dragging the box c - d -> c) replayed as the push from c + d in -d
+		int player = forward.nodes.player(meetingForward);
+		current = meetingBackward;
+		while (current != NodePool.NONE && backward.nodes.parent(current) != NodePool.NONE) {
+			StatePacked state = backward.nodes.state(current, zobrist);
+			int pushCell = backward.nodes.player(current);
+			EDirection dir = EDirection.forIndex(backward.nodes.action(current)).opposite();
+			actionsBFS.findPushes(state, player);
+			result.addAll(Arrays.asList(actionsBFS.walkTo(pushCell).getDirections()));
+			result.add(dir);
+			player = packed.neighbour(pushCell, dir);
+			current = backward.nodes.parent(current);
+		}
+	}
+
+	// ====
+	// SIDE
+	// ====
+
+	/**
+	 * A* of a single direction: pushes towards goals (forward) or pulls towards the start boxes (backward).
+	 */
+	protected class Side {
+
+		final boolean pushing;
+
+		final MatchingHeuristic matching;
+
+		final FreezeDeadlockDetector deadlocks;
+
+		final IOpenList queue = new BucketOpenList(BucketOpenList.ETieBreak.LOWEST);
+
+		final NodePool nodes;
+
+		long expanded;
+
+		Side(boolean pushing, PushDistances distances, FreezeDeadlockDetector deadlocks, int stateLength) {
+			this.pushing = pushing;
+			this.nodes = new NodePool(stateLength);
+			this.matching = new MatchingHeuristic(distances, board.boxCount);
+			this.deadlocks = deadlocks;
+		}
+
+		/**
+		 * Adds the root node.
+		 */
+		void open(StatePacked state, int player) {
+			int h = matching.estimate(state);
+			if (h >= PushDistances.INFINITE) return;
+			add(state, NodePool.NONE, NodePool.NONE, 0, player, h);
+		}
+
+		private void add(StatePacked state, int parent, int action, int g, int player, int h) {
+			int node = nodes.add(state, parent, action, g, player);
+			int other = table.putIfAbsent(state, pushing ? node : NodeTable.other(node));
+			if (other != NodePool.NONE) {
+				// the other side has been here already (own duplicates are filtered before)
+				if (pushing) meet(node, NodeTable.other(other));
+				else meet(other, node);
+				return;
+			}
+			queue.add(node, g + h, h);
+		}
+
+		void expand() {
+			int current = queue.poll();
+			StatePacked state = nodes.state(current, zobrist);
+			int g = nodes.g(current);
+			++expanded;
+			matching.rebase(state);
+
+			int pushCount = actionsBFS.findPushes(state, nodes.player(current));
+			if (pushing) {
+				for (int i = 0; i < pushCount && meetingForward == NodePool.NONE; ++i) {
+					EDirection dir = actionsBFS.pushDirection(i);
+					StatePacked pushed = state.walk(actionsBFS.pushCell(i), zobrist).push(dir, zobrist);
+					if (deadlocks.isDeadlockAfterPush(pushed, dir)) continue;
+					successor(current, pushed, dir, g + 1);
+				}
+				return;
+			}
+			// PULLS: the player stands next to a box and steps away from it to a free cell
+			for (int b = 0; b < state.boxCount() && meetingForward == NodePool.NONE; ++b) {
+				int box = state.box(b);
+				for (EDirection dir : EDirection.arrows()) {
+					int from = packed.neighbour(box, dir);
+					if (from == BoardPacked.NONE || !actionsBFS.isReached(from)) continue;
+					int to = packed.neighbour(from, dir);
+					if (to == BoardPacked.NONE || state.hasBox(to)) continue;
+					StatePacked pulled = state.walk(from, zobrist).pull(dir, zobrist);
+					if (deadlocks.isDeadlockAfterPull(pulled, dir, startBoxes)) continue;
+					successor(current, pulled, dir, g + 1);
+				}
+			}
+		}
+
+		private void successor(int parent, StatePacked moved, EDirection dir, int g) {
+			StatePacked next = reachability.normalize(moved, zobrist);
+			if (pushing && next.isVictory(packed.goals())) {
+				// solved without meeting the backward side, which need not hold every solved state
+				meet(nodes.add(next, parent, dir.index, g, moved.player()), NodePool.NONE);
+				return;
+			}
+			int known = table.get(next);
+			if (known != NodePool.NONE) {
+				// meeting the other side, unless it is a duplicate of our own
+				if ((known >= 0) != pushing) add(next, parent, dir.index, g, moved.player(), 0);
+				return;
+			}
+			int h = matching.estimate(next);
+			if (h >= PushDistances.INFINITE) return;
+			add(next, parent, dir.index, g, moved.player(), h);
+		}
+
+	}
+
+}
@@ -3,6 +3,8 @@ package agents;
 import java.util.ArrayList;
 import java.util.List;
 
+import game.CancellationToken;
+import game.IAgentStatistics;
 import game.actions.EDirection;
 import game.actions.compact.CAction;
 import game.actions.compact.CMove;
@@ -13,7 +15,7 @@ import game.board.compact.BoardCompact;
  * The simplest Tree-DFS implementation
  * @author Jimmy
  */
-public class DFS1Agent extends ArtificialAgent {
+public class DFS1Agent extends ArtificialAgent implements IAgentStatistics {
 
 	protected List<EDirection> result;
 	
@@ -25,6 +27,9 @@ public class DFS1Agent extends ArtificialAgent {
 	
 	protected long searchStartMillis;
 	
+	// polled on every node, the search unwinds once the level is stopped or its deadline passes
+	protected CancellationToken cancellation;
+	
 	@Override
 	protected List<EDirection> think(BoardCompact board) {
 		// INIT SEARCH
@@ -32,6 +37,7 @@ public class DFS1Agent extends ArtificialAgent {
 		this.result = new ArrayList<EDirection>();
 		this.solutionFound = false;
 		this.searchedNodes = 0;		
+		this.cancellation = cancellation();
 		
 		// FIRE THE SEARCH
 		
@@ -63,10 +69,15 @@ public class DFS1Agent extends ArtificialAgent {
 		return result;
 	}
 
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes;
+	}
+
 	private boolean dfs(int level) {
 		if (level <= 0) return false; // DEPTH-LIMITED
 		
-		++searchedNodes;
+		if (cancellation.isCancelled(++searchedNodes)) return false;
 		
 		// COLLECT POSSIBLE ACTIONS
 		
@@ -3,12 +3,16 @@ package agents;
 import java.util.ArrayList;
 import java.util.List;
 
+import agents.deadlocks.FreezeDeadlockDetector;
+import game.CancellationToken;
+import game.IAgentStatistics;
 import game.actions.EDirection;
 import game.actions.compact.CAction;
 import game.actions.compact.CMove;
 import game.actions.compact.CPush;
 import game.actions.oop.EActionType;
 import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
 
 /**
  * Tree-DFS update that forbids the search to immediately return to the previous state effectively cutting at least 1/4 of all "move" search nodes;
@@ -16,24 +20,31 @@ import game.board.compact.BoardCompact;
  * 
  * @author Jimmy
  */
-public class DFS2Agent extends ArtificialAgent {
+public class DFS2Agent extends ArtificialAgent implements IAgentStatistics {
 
 	protected List<EDirection> result;
 	
 	protected BoardCompact board;
 	
+	protected FreezeDeadlockDetector deadlocks;
+	
 	protected boolean solutionFound;
 	
 	protected int searchedNodes;
 	
 	protected long searchStartMillis;
 	
+	// polled on every node, the search unwinds once the level is stopped or its deadline passes
+	protected CancellationToken cancellation;
+	
 	@Override
 	protected List<EDirection> think(BoardCompact board) {
 		// INIT SEARCH
 		this.board = board;
+		this.deadlocks = FreezeDeadlockDetector.create(new BoardPacked(board));
 		this.result = new ArrayList<EDirection>();
 		this.solutionFound = false;
+		this.cancellation = cancellation();
 		
 		// FIRE THE SEARCH
 		
@@ -67,10 +78,15 @@ public class DFS2Agent extends ArtificialAgent {
 		return result;
 	}
 
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes;
+	}
+
 	private boolean dfs(int level, EDirection previousMove) {
 		if (level <= 0) return false; // DEPTH-LIMITED
 		
-		++searchedNodes;
+		if (cancellation.isCancelled(++searchedNodes)) return false;
 		
 		// COLLECT POSSIBLE ACTIONS
 		
@@ -109,8 +125,8 @@ public class DFS2Agent extends ArtificialAgent {
 				return true;
 			}
 			
-			// CONTINUE THE SEARCH
-			if (dfs(level-1, action.getType() == EActionType.MOVE ? action.getDirection() : EDirection.NONE)) {
+			// CONTINUE THE SEARCH, unless the push has frozen some box off goal
+			if (!deadlocks.isDeadlockAfter(board, action) && dfs(level-1, action.getType() == EActionType.MOVE ? action.getDirection() : EDirection.NONE)) {
 				// SOLUTION FOUND!
 				return true;
 			}
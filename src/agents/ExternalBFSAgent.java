@@ -0,0 +1,401 @@
+package agents;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.PushDistances;
+import agents.search.LayerFile;
+import game.CancellationToken;
+import game.IAgentStatistics;
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Move-optimal breadth-first search whose layers live on the disk instead of the heap (external-memory BFS).
+ *
+ * Every layer (states at the same number of moves from the start) is a {@link LayerFile} of states packed into fixed-width records
+ * (player and box cells, {@link #bits} per cell), sorted and delta-compressed. A layer is expanded by streaming its file: successors are
+ * collected in chunks of {@link #chunkStates}, each sorted in place ({@link LayerFile#sort(long[], int, int)}) and written as a run;
+ * the runs are then merged into the next layer, dropping states found within any of the previous layers by merging against their
+ * (sorted) files too. Moves cannot always be undone (pushes), so all previous layers are needed, not just the last two.
+ *
+ * As layers are complete, the first layer holding a solved state gives a move-optimal solution. No parents are stored; the path is
+ * reconstructed backwards by looking up the predecessors of the solved state within the previous layers.
+ *
+ * Pushes to dead cells and freeze deadlocks ({@link FreezeDeadlockDetector}) are pruned, which never cuts off a solution.
+ */
+public class ExternalBFSAgent extends ArtificialAgent implements IAgentStatistics {
+
+	protected List<EDirection> result;
+
+	protected BoardCompact board;
+
+	// SEARCH CONFIGURATION
+
+	/**
+	 * Successors sorted in memory at once (a run); the chunk takes {@link #words} longs per state.
+	 */
+	protected int chunkStates = 1 << 20;
+
+	/**
+	 * Where the temp directory of layer files is created; null for java.io.tmpdir.
+	 */
+	protected File layerDirectory = null;
+
+	protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+
+	// LEVEL
+
+	protected BoardPacked packed;
+
+	protected ZobristTable zobrist;
+
+	protected FreezeDeadlockDetector deadlocks;
+
+	/**
+	 * Bits per cell within a record.
+	 */
+	protected int bits;
+
+	/**
+	 * Cells per record word.
+	 */
+	protected int cellsPerWord;
+
+	/**
+	 * Longs per record.
+	 */
+	protected int words;
+
+	protected int boxCount;
+
+	// SEARCH
+
+	protected File directory;
+
+	protected List<LayerFile> layers;
+
+	protected StatePacked solved;
+
+	protected long expanded;
+
+	private int runs;
+
+	protected CancellationToken cancellation;
+
+	@Override
+	protected List<EDirection> think(BoardCompact board) {
+		// INIT SEARCH
+		this.board = board;
+		this.result = new ArrayList<EDirection>();
+		this.packed = new BoardPacked(board);
+		this.zobrist = new ZobristTable(packed, zobristSeed);
+		this.layers = new ArrayList<LayerFile>();
+		this.solved = null;
+		this.expanded = 0;
+		this.runs = 0;
+		this.cancellation = cancellation();
+
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		deadlocks = new FreezeDeadlockDetector(packed, FreezeDeadlockDetector.deadCells(PushDistances.forPushing(packed, goals)));
+
+		StatePacked start = StatePacked.create(packed.cell(board.playerX, board.playerY), packed.findBoxes(board), zobrist);
+		bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(packed.cellCount() - 1));
+		cellsPerWord = 63 / bits;
+		words = (start.length() + cellsPerWord - 1) / cellsPerWord;
+		boxCount = start.boxCount();
+
+		// FIRE THE SEARCH
+
+		long searchStartMillis = System.currentTimeMillis();
+
+		try {
+			directory = (layerDirectory == null ? Files.createTempDirectory("sokoban-bfs") : Files.createTempDirectory(layerDirectory.toPath(), "sokoban-bfs")).toFile();
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create the directory for BFS layers.", e);
+		}
+		try {
+			if (start.isVictory(packed.goals())) return result;
+
+			LayerFile first = newLayer();
+			long[] record = new long[words];
+			encode(start, record, 0);
+			try (LayerFile.Writer writer = first.writer()) {
+				writer.write(record, 0);
+			}
+
+			while (solved == null && !cancellation.isCancelled()) {
+				LayerFile next = expand(layers.get(layers.size() - 1));
+				if (next == null || next.records() == 0) break;
+				if (verbose) System.out.println("Layer " + (layers.size() - 1) + ": " + next.records() + " states, " + next.bytes() + " bytes");
+			}
+
+			long searchTime = System.currentTimeMillis() - searchStartMillis;
+
+			if (solved != null) construct();
+
+			if (verbose) {
+				System.out.println("SEARCH TOOK:   " + searchTime + " ms");
+				System.out.println("NODES VISITED: " + expanded);
+				System.out.println("PERFORMANCE:   " + ((double)expanded / (double)Math.max(1, searchTime) * 1000) + " nodes/sec");
+				System.out.println("SOLUTION:      " + (solved == null ? "NOT FOUND" : "FOUND in " + result.size() + " steps"));
+				if (solved == null && cancellation.isCancelled()) System.out.println("Search cancelled.");
+				System.out.println("=================");
+			}
+		} finally {
+			for (LayerFile layer : layers) layer.delete();
+			layers = null;
+			directory.delete();
+		}
+
+		if (solved == null) {
+			return null;
+		}
+
+		return result;
+	}
+
+	@Override
+	public long getSearchedNodes() {
+		return expanded;
+	}
+
+	private LayerFile newLayer() {
+		LayerFile layer = new LayerFile(new File(directory, "layer-" + layers.size() + ".bin"), words);
+		layers.add(layer);
+		return layer;
+	}
+
+	// =========
+	// EXPANSION
+	// =========
+
+	/**
+	 * Generates the layer following 'layer'.
+	 * @param layer
+	 * @return the new layer; null if a solved state was generated ({@link #solved}) or the search was cancelled
+	 */
+	private LayerFile expand(LayerFile layer) {
+		List<LayerFile> runFiles = new ArrayList<LayerFile>();
+		try {
+			long[] chunk = new long[chunkStates * words];
+			int count = 0;
+			try (LayerFile.Reader reader = layer.reader()) {
+				while (reader.next()) {
+					if (cancellation.isCancelled(++expanded)) return null;
+					StatePacked state = decode(reader.current(), 0);
+					for (EDirection dir : EDirection.arrows()) {
+						StatePacked next = successor(state, dir);
+						if (next == null) continue;
+						if (next.isVictory(packed.goals())) {
+							solved = next;
+							return null;
+						}
+						encode(next, chunk, count * words);
+						if (++count == chunkStates) {
+							runFiles.add(writeRun(chunk, count));
+							count = 0;
+						}
+					}
+				}
+			}
+			if (count > 0) runFiles.add(writeRun(chunk, count));
+			LayerFile next = newLayer();
+			return merge(runFiles, next) ? next : null;
+		} finally {
+			for (LayerFile run : runFiles) run.delete();
+		}
+	}
+
+	/**
+	 * State after the player moves (or pushes) in 'dir'; null if not possible or a deadlock.
+	 */
+	private StatePacked successor(StatePacked state, EDirection dir) {
+		int target = packed.neighbour(state.player(), dir);
+		if (target == BoardPacked.NONE) return null;
+		if (!state.hasBox(target)) return state.move(dir, zobrist);
+		int beyond = packed.neighbour(target, dir);
+		if (beyond == BoardPacked.NONE || state.hasBox(beyond)) return null;
+		StatePacked pushed = state.push(dir, zobrist);
+		if (deadlocks.isDeadlockAfterPush(pushed, dir)) return null;
+		return pushed;
+	}
+
+	/**
+	 * Sorts the first 'count' records of 'chunk' and writes them (without duplicates) into a new run file.
+	 */
+	private LayerFile writeRun(long[] chunk, int count) {
+		LayerFile run = new LayerFile(new File(directory, "run-" + (runs++) + ".bin"), words);
+		// records of more words are sorted in place, as rows of the chunk
+		if (words == 1) Arrays.parallelSort(chunk, 0, count);
+		else LayerFile.sort(chunk, count, words);
+		try (LayerFile.Writer writer = run.writer()) {
+			for (int i = 0; i < count; ++i) {
+				if (i > 0 && LayerFile.compare(chunk, i * words, chunk, (i - 1) * words, words) == 0) continue;
+				writer.write(chunk, i * words);
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * K-way merge of 'runFiles' into 'target', dropping duplicates and states of the layers before 'target'.
+	 * @return false if cancelled ('target' is left incomplete)
+	 */
+	private boolean merge(List<LayerFile> runFiles, LayerFile target) {
+		List<Cursor> previous = new ArrayList<Cursor>();
+		PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>((a, b) -> LayerFile.compare(a.record(), 0, b.record(), 0, words));
+		try (LayerFile.Writer writer = target.writer()) {
+			for (LayerFile layer : layers) {
+				if (layer != target) previous.add(new Cursor(layer));
+			}
+			for (LayerFile run : runFiles) {
+				Cursor cursor = new Cursor(run);
+				if (cursor.valid) queue.add(cursor);
+			}
+			long[] last = new long[words];
+			boolean any = false;
+			long merged = 0;
+			while (!queue.isEmpty()) {
+				if (cancellation.isCancelled(++merged)) return false;
+				Cursor cursor = queue.poll();
+				long[] record = cursor.record();
+				if (!any || LayerFile.compare(record, 0, last, 0, words) != 0) {
+					System.arraycopy(record, 0, last, 0, words);
+					any = true;
+					if (!isIn(previous, last)) writer.write(last, 0);
+				}
+				if (cursor.advance()) queue.add(cursor);
+			}
+			return true;
+		} finally {
+			for (Cursor cursor : previous) cursor.reader.close();
+			for (Cursor cursor : queue) cursor.reader.close();
+		}
+	}
+
+	/**
+	 * Whether 'record' is within any of 'cursors'; they are advanced up to it (records are asked for in ascending order).
+	 */
+	private boolean isIn(List<Cursor> cursors, long[] record) {
+		boolean found = false;
+		for (Cursor cursor : cursors) {
+			while (cursor.valid && LayerFile.compare(cursor.record(), 0, record, 0, words) < 0) cursor.advance();
+			if (cursor.valid && LayerFile.compare(cursor.record(), 0, record, 0, words) == 0) found = true;
+		}
+		return found;
+	}
+
+	/**
+	 * Reader of a sorted file positioned at its current record.
+	 */
+	private static class Cursor {
+
+		final LayerFile.Reader reader;
+
+		boolean valid;
+
+		Cursor(LayerFile file) {
+			this.reader = file.reader();
+			advance();
+		}
+
+		long[] record() {
+			return reader.current();
+		}
+
+		/**
+		 * @return false (and the reader closed) if there are no more records
+		 */
+		boolean advance() {
+			valid = reader.next();
+			if (!valid) reader.close();
+			return valid;
+		}
+
+	}
+
+	// ========
+	// ENCODING
+	// ========
+
+	/**
+	 * Packs the player and box cells of 'state' into {@link #words} longs of 'record' at 'offset', the player being the most significant.
+	 */
+	private void encode(StatePacked state, long[] record, int offset) {
+		Arrays.fill(record, offset, offset + words, 0);
+		for (int i = 0; i < state.length(); ++i) {
+			long cell = i == 0 ? state.player() : state.box(i - 1);
+			int shift = (cellsPerWord - 1 - i % cellsPerWord) * bits;
+			record[offset + i / cellsPerWord] |= cell << shift;
+		}
+	}
+
+	private StatePacked decode(long[] record, int offset) {
+		long mask = (1L << bits) - 1;
+		int[] cells = new int[words * cellsPerWord];
+		for (int i = 0; i < cells.length; ++i) {
+			int shift = (cellsPerWord - 1 - i % cellsPerWord) * bits;
+			cells[i] = (int)((record[offset + i / cellsPerWord] >>> shift) & mask);
+		}
+		return StatePacked.create(cells[0], Arrays.copyOfRange(cells, 1, boxCount + 1), zobrist);
+	}
+
+	// ==============
+	// RECONSTRUCTION
+	// ==============
+
+	/**
+	 * Walks from {@link #solved} back to the start: the predecessor within every previous layer is found by scanning its file.
+	 */
+	private void construct() {
+		StatePacked current = solved;
+		long[] candidates = new long[2 * EDirection.arrows().length * words];
+		EDirection[] directions = new EDirection[2 * EDirection.arrows().length];
+		for (int layer = layers.size() - 1; layer >= 0; --layer) {
+			// PREDECESSORS: the player came from the cell behind him, either walking or pushing the box in front of him
+			int count = 0;
+			int player = current.player();
+			for (EDirection dir : EDirection.arrows()) {
+				int from = packed.neighbour(player, dir.opposite());
+				if (from == BoardPacked.NONE || current.hasBox(from)) continue;
+				encode(current.walk(from, zobrist), candidates, count * words);
+				directions[count++] = dir;
+				int box = packed.neighbour(player, dir);
+				if (box == BoardPacked.NONE || !current.hasBox(box)) continue;
+				int[] boxes = new int[current.boxCount()];
+				for (int i = 0; i < boxes.length; ++i) boxes[i] = current.box(i) == box ? player : current.box(i);
+				encode(StatePacked.create(from, boxes, zobrist), candidates, count * words);
+				directions[count++] = dir;
+			}
+			int match = -1;
+			try (LayerFile.Reader reader = layers.get(layer).reader()) {
+				while (match < 0 && reader.next()) {
+					for (int i = 0; i < count; ++i) {
+						if (LayerFile.compare(reader.current(), 0, candidates, i * words, words) == 0) {
+							match = i;
+							current = decode(reader.current(), 0);
+							break;
+						}
+					}
+				}
+			}
+			if (match < 0) throw new RuntimeException("No predecessor found within BFS layer " + layer + ".");
+			result.add(0, directions[match]);
+		}
+	}
+
+}
@@ -0,0 +1,391 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import agents.actions.ActionsBFSPacked;
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.MatchingHeuristic;
+import agents.heuristics.PushDistances;
+import agents.search.ConcurrentReplacementTable;
+import agents.search.ReplacementTable;
+import game.CancellationToken;
+import game.IAgentStatistics;
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.Reachability;
+import game.board.packed.StatePacked;
+
+/**
+ * Parallel IDA* over pushes running within a {@link ForkJoinPool}; replaces the static root split of {@link MTDFS2Agent}.
+ *
+ * Subtrees are split on demand: a task forks its children only when the pool has more than one worker and (almost) no queued work, i.e., when some workers
+ * are idle and can steal them; otherwise it searches them itself. Tasks carry immutable {@link StatePacked} states, so no board
+ * is cloned. Cost bound grows iteration by iteration as in IDA*, hence there is no fixed depth limit.
+ *
+ * All tasks share a {@link ConcurrentReplacementTable} of the best g per state key, kept across iterations as in {@link IDAStarAgent},
+ * and cancel cooperatively through {@link #cancelled} once a solution is found, the agent is stopped or {@link #cancellation} runs out of time.
+ */
+public class ForkJoinIDAAgent extends ArtificialAgent implements IAgentStatistics {
+
+	/**
+	 * Children are forked only if the current worker has at most this many tasks queued beyond what other workers may steal.
+	 */
+	private static final int SPLIT_SURPLUS = 2;
+
+	/**
+	 * Children are not forked when fewer pushes than this remain until the cost bound; such subtrees are too small to pay off.
+	 */
+	private static final int MIN_SPLIT_PUSHES = 3;
+
+	private static final int FOUND = -1;
+
+	protected List<EDirection> result;
+
+	protected BoardCompact board;
+
+	// SEARCH CONFIGURATION
+
+	protected int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Bytes of heap the transposition table may take; capped to the half of the max heap.
+	 */
+	protected long heapBudget = IDAStarAgent.DEFAULT_HEAP_BUDGET;
+
+	protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+
+	// LEVEL
+
+	protected BoardPacked packed;
+
+	protected ZobristTable zobrist;
+
+	protected PushDistances distances;
+
+	protected FreezeDeadlockDetector deadlocks;
+
+	// SHARED SEARCH STATE
+
+	protected ConcurrentReplacementTable table;
+
+	protected ThreadLocal<Helpers> helpers;
+
+	protected volatile boolean cancelled;
+
+	protected CancellationToken cancellation;
+
+	protected volatile PathNode solution;
+
+	protected Object solutionMutex = new Object();
+
+	protected LongAdder searchedNodes = new LongAdder();
+
+	/**
+	 * Cost bound of the current IDA* iteration.
+	 */
+	protected int bound;
+
+	public ForkJoinIDAAgent() {
+	}
+
+	/**
+	 * @param threads parallelism of the pool
+	 */
+	public ForkJoinIDAAgent(int threads) {
+		this.threads = threads;
+	}
+
+	@Override
+	protected List<EDirection> think(BoardCompact board) {
+		// INIT SEARCH
+		this.board = board;
+		this.result = new ArrayList<EDirection>();
+		this.packed = new BoardPacked(board);
+		this.zobrist = new ZobristTable(packed, zobristSeed);
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		this.distances = PushDistances.forPushing(packed, goals);
+		this.deadlocks = new FreezeDeadlockDetector(packed, FreezeDeadlockDetector.deadCells(distances));
+		this.table = ConcurrentReplacementTable.forBudget(Math.min(heapBudget, Runtime.getRuntime().maxMemory() / 2));
+		this.helpers = ThreadLocal.withInitial(Helpers::new);
+		this.cancelled = false;
+		this.cancellation = cancellation();
+		this.solution = null;
+		this.searchedNodes.reset();
+
+		// FIRE THE SEARCH
+
+		long searchStartMillis = System.currentTimeMillis();
+
+		Helpers local = helpers.get();
+		StatePacked init = StatePacked.create(packed.cell(board.playerX, board.playerY), packed.findBoxes(board), zobrist);
+		StatePacked start = local.reachability.normalize(init, zobrist);
+		PathNode root = new PathNode(start, init.player(), null, null);
+		int h = local.matching.estimate(start);
+
+		int iterations = 0;
+		if (h < PushDistances.INFINITE) {
+			ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+			try {
+				bound = h;
+				while (!cancelled && !cancellation.isCancelled()) {
+					++iterations;
+					table.nextIteration();
+					int next = pool.invoke(new SearchTask(root, 0, h));
+					if (next == FOUND || next >= PushDistances.INFINITE) break;
+					bound = next;
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+
+		long searchTime = System.currentTimeMillis() - searchStartMillis;
+
+		if (solution != null) construct(solution);
+
+		if (verbose) {
+			System.out.println("SEARCH TOOK:   " + searchTime + " ms");
+			System.out.println("NODES VISITED: " + getSearchedNodes());
+			System.out.println("PERFORMANCE:   " + ((double)getSearchedNodes() / (double)Math.max(1, searchTime) * 1000) + " nodes/sec");
+			System.out.println("ITERATIONS:    " + iterations + " (last bound " + bound + ")");
+			System.out.println("TABLE:         " + table.size() + " / " + table.capacity() + " states");
+			System.out.println("SOLUTION:      " + (result.size() == 0 ? "NOT FOUND" : "FOUND in " + result.size() + " steps"));
+			System.out.println("=================");
+		}
+
+		if (result.size() == 0) {
+			return null;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void stop() {
+		cancelled = true;
+		super.stop();
+	}
+
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes.sum();
+	}
+
+	/**
+	 * Records the state (reached with 'g' pushes) within {@link #table} unless it was already reached with a lower g,
+	 * or with the same g within the current iteration; see {@link ReplacementTable#visit(long, int)}.
+	 * @param state
+	 * @param g
+	 * @return whether the state should be searched
+	 */
+	private boolean claim(StatePacked state, int g) {
+		return table.visit(state.key(), g);
+	}
+
+	private void solutionFound(PathNode node) {
+		synchronized(solutionMutex) {
+			if (solution == null) solution = node;
+			cancelled = true;
+		}
+	}
+
+	/**
+	 * Expands pushes of the solution into single steps; walks are reconstructed by BFS from the parent states.
+	 */
+	private void construct(PathNode node) {
+		ActionsBFSPacked actionsBFS = new ActionsBFSPacked(packed);
+		while (node.parent != null) {
+			result.add(0, node.push);
+			actionsBFS.findPushes(node.parent.state, node.parent.player);
+			int pushCell = packed.neighbour(node.player, node.push.opposite());
+			result.addAll(0, Arrays.asList(actionsBFS.walkTo(pushCell).getDirections()));
+			node = node.parent;
+		}
+	}
+
+	// ====
+	// TASK
+	// ====
+
+	/**
+	 * Searches the subtree of {@link #node} up to the current {@link ForkJoinIDAAgent#bound}.
+	 * Computes {@link ForkJoinIDAAgent#FOUND} or the lowest f beyond the bound.
+	 */
+	@SuppressWarnings("serial")
+	private class SearchTask extends RecursiveTask<Integer> {
+
+		private final PathNode node;
+
+		private final int g;
+
+		private final int h;
+
+		public SearchTask(PathNode node, int g, int h) {
+			this.node = node;
+			this.g = g;
+			this.h = h;
+		}
+
+		@Override
+		protected Integer compute() {
+			return search(node, g, h);
+		}
+
+		private int search(PathNode node, int g, int h) {
+			if (cancelled) return PushDistances.INFINITE;
+			if (g + h > bound) return g + h;
+
+			Helpers local = helpers.get();
+			if (cancellation.isCancelled(++local.expanded)) {
+				cancelled = true;
+				return PushDistances.INFINITE;
+			}
+
+			searchedNodes.increment();
+
+			PathNode[] children = local.expand(node);
+			int[] estimates = local.estimates;
+			int count = children.length;
+			for (int i = 0; i < count; ++i) {
+				if (estimates[i] == 0 && children[i].state.isVictory(packed.goals())) {
+					solutionFound(children[i]);
+					return FOUND;
+				}
+			}
+			int[] h2 = Arrays.copyOf(estimates, count);
+
+			int min = PushDistances.INFINITE;
+
+			if (count > 1 && getPool().getParallelism() > 1 && bound - g >= MIN_SPLIT_PUSHES && getSurplusQueuedTaskCount() <= SPLIT_SURPLUS) {
+				// SPLIT: let idle workers steal the other children
+				List<SearchTask> forked = new ArrayList<SearchTask>(count - 1);
+				for (int i = 1; i < count; ++i) {
+					if (!claim(children[i].state, g + 1)) continue;
+					SearchTask task = new SearchTask(children[i], g + 1, h2[i]);
+					task.fork();
+					forked.add(task);
+				}
+				if (claim(children[0].state, g + 1)) {
+					min = search(children[0], g + 1, h2[0]);
+				}
+				for (SearchTask task : forked) {
+					int value = task.join();
+					if (value == FOUND) min = FOUND;
+					else if (min != FOUND) min = Math.min(min, value);
+				}
+				return min;
+			}
+
+			for (int i = 0; i < count; ++i) {
+				if (!claim(children[i].state, g + 1)) continue;
+				int value = search(children[i], g + 1, h2[i]);
+				if (value == FOUND) return FOUND;
+				min = Math.min(min, value);
+			}
+			return min;
+		}
+
+	}
+
+	// =======
+	// HELPERS
+	// =======
+
+	/**
+	 * Per-thread (not thread-safe) search helpers.
+	 */
+	private class Helpers {
+
+		final MatchingHeuristic matching = new MatchingHeuristic(distances, board.boxCount);
+
+		final ActionsBFSPacked actionsBFS = new ActionsBFSPacked(packed);
+
+		final Reachability reachability = new Reachability(packed);
+
+		final FreezeDeadlockDetector deadlocks = new FreezeDeadlockDetector(ForkJoinIDAAgent.this.deadlocks);
+
+		/**
+		 * Nodes expanded by this thread, to poll {@link ForkJoinIDAAgent#cancellation} with.
+		 */
+		long expanded;
+
+		/**
+		 * Estimates of children returned by the last {@link #expand(PathNode)}; valid until the next call.
+		 */
+		int[] estimates = new int[16];
+
+		/**
+		 * Non-deadlocked children of 'node' ordered by their estimate (the push bringing a box closer to its matched goal first).
+		 */
+		PathNode[] expand(PathNode node) {
+			matching.rebase(node.state);
+			int pushCount = actionsBFS.findPushes(node.state, node.player);
+			if (estimates.length < pushCount) estimates = new int[pushCount];
+
+			PathNode[] children = new PathNode[pushCount];
+			int count = 0;
+			for (int i = 0; i < pushCount; ++i) {
+				EDirection dir = actionsBFS.pushDirection(i);
+				StatePacked pushed = node.state.walk(actionsBFS.pushCell(i), zobrist).push(dir, zobrist);
+				if (deadlocks.isDeadlockAfterPush(pushed, dir)) continue;
+
+				StatePacked next = reachability.normalize(pushed, zobrist);
+				int h = matching.estimate(next);
+				if (h >= PushDistances.INFINITE) continue;
+
+				// insertion sort by estimate
+				int j = count++;
+				while (j > 0 && estimates[j - 1] > h) {
+					estimates[j] = estimates[j - 1];
+					children[j] = children[j - 1];
+					--j;
+				}
+				estimates[j] = h;
+				children[j] = new PathNode(next, pushed.player(), dir, node);
+			}
+			return Arrays.copyOf(children, count);
+		}
+
+	}
+
+	// ====
+	// PATH
+	// ====
+
+	private static class PathNode {
+
+		final StatePacked state;
+
+		/**
+		 * Cell the player actually stands at (the one of {@link #state} is normalized).
+		 */
+		final int player;
+
+		/**
+		 * Direction of the push leading here; null for the root.
+		 */
+		final EDirection push;
+
+		final PathNode parent;
+
+		PathNode(StatePacked state, int player, EDirection push, PathNode parent) {
+			this.state = state;
+			this.player = player;
+			this.push = push;
+			this.parent = parent;
+		}
+
+	}
+
+}
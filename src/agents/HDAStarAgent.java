@@ -0,0 +1,524 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import agents.actions.ActionsBFSPacked;
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.MatchingHeuristic;
+import agents.heuristics.PushDistances;
+import agents.search.BucketOpenList;
+import agents.search.NodePool;
+import agents.search.NodeTable;
+import game.CancellationToken;
+import game.IAgentStatistics;
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.Reachability;
+import game.board.packed.StatePacked;
+
+/**
+ * Hash-distributed A* (HDA*, Kishimoto et al.) over pushes running in {@link #threads} workers.
+ *
+ * Every state (boxes + the top-left cell of the player-reachable region, as within MyAgent's push-level search) is owned
+ * by the worker picked by its Zobrist hash; only the owner keeps it in its open list ({@link BucketOpenList}), node pool ({@link NodePool})
+ * and table of best nodes ({@link NodeTable}), so workers share no search data. Successors of other workers are batched into primitive arrays
+ * and sent over lock-free multiple-producers/single-consumer queues ({@link ConcurrentLinkedQueue}). Nodes refer to their parents
+ * by {@link #ref(int, int)}, which also names the worker whose pool holds the parent.
+ *
+ * Solutions are push-optimal: search goes on until no worker has a node with f lower than the best solution found.
+ * Termination is detected by a single counter of active workers plus nodes in flight (sent, not yet received), which can drop
+ * to zero only once every worker ran out of work and nothing is on its way. Idle workers park till a batch arrives
+ * (senders unpark them) or the search ends. Every worker polls {@link #cancellation} as it expands and halts all of them once it runs out.
+ */
+public class HDAStarAgent extends ArtificialAgent implements IAgentStatistics {
+
+	/**
+	 * Number of nodes sent to a single worker at once.
+	 */
+	private static final int BATCH_SIZE = 64;
+
+	/**
+	 * Outgoing batches are flushed at least every this many expansions.
+	 */
+	private static final int FLUSH_PERIOD = 32;
+
+	protected List<EDirection> result;
+
+	protected BoardCompact board;
+
+	// SEARCH CONFIGURATION
+
+	protected int threads = Runtime.getRuntime().availableProcessors();
+
+	protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+
+	// LEVEL
+
+	protected BoardPacked packed;
+
+	protected ZobristTable zobrist;
+
+	protected PushDistances distances;
+
+	protected FreezeDeadlockDetector deadlocks;
+
+	// SHARED SEARCH STATE
+
+	protected Worker[] workers;
+
+	/**
+	 * Bits of {@link #ref(int, int)} naming the worker.
+	 */
+	protected int workerBits;
+
+	/**
+	 * Number of active workers + number of nodes in flight; the search is over once it drops to 0.
+	 */
+	protected AtomicLong active = new AtomicLong();
+
+	protected volatile boolean stopped;
+
+	protected CancellationToken cancellation;
+
+	/**
+	 * Pushes of the best solution found so far; {@link Integer#MAX_VALUE} if none.
+	 */
+	protected volatile int solutionG;
+
+	protected int solutionSteps;
+
+	/**
+	 * {@link #ref(int, int)} of the goal node of the best solution; {@link NodePool#NONE} if none.
+	 */
+	protected int solution;
+
+	protected Object solutionMutex = new Object();
+
+	protected volatile Throwable failure;
+
+	public HDAStarAgent() {
+	}
+
+	/**
+	 * @param threads number of workers
+	 */
+	public HDAStarAgent(int threads) {
+		this.threads = threads;
+	}
+
+	@Override
+	protected List<EDirection> think(BoardCompact board) {
+		// INIT SEARCH
+		this.board = board;
+		this.result = new ArrayList<EDirection>();
+		this.packed = new BoardPacked(board);
+		this.zobrist = new ZobristTable(packed, zobristSeed);
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		this.distances = PushDistances.forPushing(packed, goals);
+		this.deadlocks = new FreezeDeadlockDetector(packed, FreezeDeadlockDetector.deadCells(distances));
+		this.solution = NodePool.NONE;
+		this.solutionG = Integer.MAX_VALUE;
+		this.solutionSteps = Integer.MAX_VALUE;
+		this.stopped = false;
+		this.failure = null;
+		this.cancellation = cancellation();
+
+		int workerCount = Math.max(1, threads);
+		workerBits = 32 - Integer.numberOfLeadingZeros(workerCount - 1);
+		workers = new Worker[workerCount];
+		for (int i = 0; i < workerCount; ++i) {
+			workers[i] = new Worker(i);
+		}
+
+		// FIRE THE SEARCH
+
+		long searchStartMillis = System.currentTimeMillis();
+
+		StatePacked init = StatePacked.create(packed.cell(board.playerX, board.playerY), packed.findBoxes(board), zobrist);
+		Worker first = workers[0];
+		StatePacked start = first.reachability.normalize(init, zobrist);
+		int h = first.matching.estimate(start);
+		if (h < PushDistances.INFINITE) {
+			// root is "in flight" towards its owner
+			active.set(workerCount + 1);
+			Batch root = new Batch(start.length());
+			root.add(start, init.player(), NodePool.NONE, 0, h, 0, NodePool.NONE);
+			owner(start).inbox.add(root);
+			for (Worker worker : workers) worker.start();
+			try {
+				for (Worker worker : workers) worker.join();
+			} catch (InterruptedException e) {
+				halt();
+				return null;
+			}
+		}
+		if (failure != null) throw new RuntimeException("HDA* worker failed.", failure);
+
+		long searchTime = System.currentTimeMillis() - searchStartMillis;
+
+		if (solution != NodePool.NONE) construct(solution);
+
+		if (verbose) {
+			System.out.println("SEARCH TOOK:   " + searchTime + " ms");
+			System.out.println("NODES VISITED: " + getSearchedNodes());
+			System.out.println("PERFORMANCE:   " + ((double)getSearchedNodes() / (double)Math.max(1, searchTime) * 1000) + " nodes/sec");
+			StringBuilder perWorker = new StringBuilder();
+			for (Worker worker : workers) perWorker.append(worker.expanded).append(' ');
+			System.out.println("PER WORKER:    " + perWorker.toString().trim());
+			System.out.println("SOLUTION:      " + (result.size() == 0 ? "NOT FOUND" : "FOUND in " + result.size() + " steps, " + solutionG + " pushes"));
+			System.out.println("=================");
+		}
+
+		if (result.size() == 0) {
+			return null;
+		}
+
+		return result;
+	}
+
+	@Override
+	public void stop() {
+		halt();
+		super.stop();
+	}
+
+	@Override
+	public long getSearchedNodes() {
+		if (workers == null) return 0;
+		long sum = 0;
+		for (Worker worker : workers) sum += worker.expanded;
+		return sum;
+	}
+
+	protected Worker owner(StatePacked state) {
+		long mixed = state.key() * 0x9E3779B97F4A7C15L;
+		return workers[(int)((mixed >>> 32) % workers.length)];
+	}
+
+	/**
+	 * Reference to 'node' of the pool of 'worker', valid across workers.
+	 * @param worker
+	 * @param node
+	 * @return
+	 */
+	protected int ref(int worker, int node) {
+		return (node << workerBits) | worker;
+	}
+
+	/**
+	 * Stops all workers, waking up the parked ones.
+	 */
+	protected void halt() {
+		stopped = true;
+		wakeAll();
+	}
+
+	private void wakeAll() {
+		Worker[] all = workers;
+		if (all == null) return;
+		for (Worker worker : all) LockSupport.unpark(worker);
+	}
+
+	/**
+	 * Expands pushes of the solution into single steps; walks are reconstructed by BFS from the parent states.
+	 */
+	private void construct(int ref) {
+		ActionsBFSPacked actionsBFS = new ActionsBFSPacked(packed);
+		int workerMask = (1 << workerBits) - 1;
+		while (true) {
+			NodePool nodes = workers[ref & workerMask].nodes;
+			int node = ref >>> workerBits;
+			int parentRef = nodes.parent(node);
+			if (parentRef == NodePool.NONE) break;
+			NodePool parentNodes = workers[parentRef & workerMask].nodes;
+			int parent = parentRef >>> workerBits;
+
+			EDirection push = EDirection.forIndex(nodes.action(node));
+			result.add(0, push);
+			actionsBFS.findPushes(parentNodes.state(parent, zobrist), parentNodes.player(parent));
+			int pushCell = packed.neighbour(nodes.player(node), push.opposite());
+			result.addAll(0, Arrays.asList(actionsBFS.walkTo(pushCell).getDirections()));
+			ref = parentRef;
+		}
+	}
+
+	/**
+	 * Records the goal node 'ref' as the solution if it is better than the current one.
+	 */
+	private void offerSolution(int ref, int g, int steps) {
+		synchronized(solutionMutex) {
+			if (solution == NodePool.NONE || g < solutionG || (g == solutionG && steps < solutionSteps)) {
+				solution = ref;
+				solutionSteps = steps;
+				solutionG = g;
+			}
+		}
+	}
+
+	/**
+	 * Upper bound on f given by the best solution found so far.
+	 */
+	private int bound() {
+		return solutionG;
+	}
+
+	// ======
+	// WORKER
+	// ======
+
+	public class Worker extends Thread {
+
+		public final int id;
+
+		/**
+		 * Batches of nodes sent to this worker by others (and itself at the start).
+		 */
+		public final ConcurrentLinkedQueue<Batch> inbox = new ConcurrentLinkedQueue<Batch>();
+
+		public volatile long expanded = 0;
+
+		/**
+		 * Nodes of states owned by this worker; g-ties are broken by the lower h.
+		 */
+		private final BucketOpenList open = new BucketOpenList(BucketOpenList.ETieBreak.LOWEST);
+
+		private final NodePool nodes;
+
+		/**
+		 * Node with the best g of every state owned (and seen) by this worker.
+		 */
+		private final NodeTable best;
+
+		private final Batch[] outboxes;
+
+		/**
+		 * Nodes per worker are limited by the bits {@link #ref(int, int)} leaves for them.
+		 */
+		private final int maxNodes;
+
+		// NOT THREAD-SAFE HELPERS, ONE PER WORKER
+
+		private final MatchingHeuristic matching = new MatchingHeuristic(distances, board.boxCount);
+
+		private final ActionsBFSPacked actionsBFS = new ActionsBFSPacked(packed);
+
+		private final Reachability reachability = new Reachability(packed);
+
+		private final FreezeDeadlockDetector deadlocks = new FreezeDeadlockDetector(HDAStarAgent.this.deadlocks);
+
+		private boolean idle = false;
+
+		/**
+		 * Set while parked (or about to park); senders unpark the worker if it is set.
+		 */
+		private volatile boolean sleeping = false;
+
+		public Worker(int id) {
+			super("HDAStarWorker-" + id);
+			this.id = id;
+			int stateLength = board.boxCount + 1;
+			this.nodes = new NodePool(stateLength, true);
+			this.best = new NodeTable(NodeTable.DEFAULT_CAPACITY, nodes);
+			this.outboxes = new Batch[workers.length];
+			for (int i = 0; i < workers.length; ++i) {
+				outboxes[i] = new Batch(stateLength);
+			}
+			this.maxNodes = workerBits == 0 ? Integer.MAX_VALUE : 1 << (31 - workerBits);
+		}
+
+		@Override
+		public void run() {
+			try {
+				search();
+			} catch (Throwable e) {
+				failure = e;
+				halt();
+			}
+		}
+
+		private void search() {
+			int sinceFlush = 0;
+			while (!stopped) {
+				receive();
+
+				if (open.isEmpty() || open.minF() >= bound()) {
+					open.clear(); // nothing here can improve the solution anymore
+					flushAll();
+					if (!idle) {
+						idle = true;
+						if (active.decrementAndGet() == 0) {
+							wakeAll();
+							break;
+						}
+					}
+					if (active.get() == 0) break;
+					park();
+					continue;
+				}
+
+				int node = open.poll();
+				StatePacked state = nodes.state(node, zobrist);
+				if (best.get(state) != node) continue; // reached by a cheaper path meanwhile
+
+				if (cancellation.isCancelled(expanded)) {
+					halt();
+					break;
+				}
+				expand(node, state);
+				if (++sinceFlush >= FLUSH_PERIOD) {
+					flushAll();
+					sinceFlush = 0;
+				}
+			}
+			stopped = stopped || active.get() != 0;
+		}
+
+		/**
+		 * Waits for a batch, the end of the search or {@link #halt()}.
+		 */
+		private void park() {
+			sleeping = true;
+			// re-check after announcing the sleep: a sender either sees the flag or its batch is seen here
+			if (inbox.isEmpty() && active.get() != 0 && !stopped) {
+				LockSupport.park(this);
+			}
+			sleeping = false;
+		}
+
+		/**
+		 * Moves nodes from {@link #inbox} to {@link #open}.
+		 */
+		private void receive() {
+			if (inbox.isEmpty()) return;
+			if (idle) {
+				// become active BEFORE the received nodes stop being counted as in flight
+				active.incrementAndGet();
+				idle = false;
+			}
+			Batch batch;
+			while ((batch = inbox.poll()) != null) {
+				for (int i = 0; i < batch.size; ++i) {
+					StatePacked state = StatePacked.read(batch.states, i * batch.stateLength, batch.stateLength, zobrist);
+					int[] data = batch.data;
+					int offset = i * Batch.FIELDS;
+					accept(state, data[offset], data[offset + 1], data[offset + 2], data[offset + 3], data[offset + 4], data[offset + 5]);
+				}
+				active.addAndGet(-batch.size);
+			}
+		}
+
+		private void accept(StatePacked state, int player, int action, int g, int h, int steps, int parent) {
+			if (g + h >= bound()) return;
+			int known = best.get(state);
+			if (known != NodePool.NONE && nodes.g(known) <= g) return;
+			if (nodes.size() >= maxNodes) throw new RuntimeException("Node pool of the worker " + id + " is full: " + maxNodes + " nodes.");
+			int node = nodes.add(state, parent, action, g, player, steps);
+			best.put(state, node);
+			open.add(node, g + h, h);
+		}
+
+		private void expand(int node, StatePacked state) {
+			++expanded;
+			matching.rebase(state);
+			int g = nodes.g(node) + 1;
+			int steps = nodes.steps(node);
+			int parent = ref(id, node);
+
+			int pushCount = actionsBFS.findPushes(state, nodes.player(node));
+			for (int i = 0; i < pushCount; ++i) {
+				EDirection dir = actionsBFS.pushDirection(i);
+				StatePacked pushed = state.walk(actionsBFS.pushCell(i), zobrist).push(dir, zobrist);
+				if (deadlocks.isDeadlockAfterPush(pushed, dir)) continue;
+
+				StatePacked next = reachability.normalize(pushed, zobrist);
+				int h = matching.estimate(next);
+				if (h >= PushDistances.INFINITE) continue;
+				if (g + h >= bound()) continue;
+
+				int childSteps = steps + actionsBFS.pushSteps(i);
+				if (h == 0 && next.isVictory(packed.goals())) {
+					if (nodes.size() >= maxNodes) throw new RuntimeException("Node pool of the worker " + id + " is full: " + maxNodes + " nodes.");
+					int goal = nodes.add(next, parent, dir.index, g, pushed.player(), childSteps);
+					offerSolution(ref(id, goal), g, childSteps);
+					continue;
+				}
+
+				Worker owner = owner(next);
+				if (owner == this) {
+					accept(next, pushed.player(), dir.index, g, h, childSteps, parent);
+				} else {
+					Batch outbox = outboxes[owner.id];
+					outbox.add(next, pushed.player(), dir.index, g, h, childSteps, parent);
+					if (outbox.size >= BATCH_SIZE) flush(owner);
+				}
+			}
+		}
+
+		private void flushAll() {
+			for (Worker worker : workers) {
+				if (outboxes[worker.id].size > 0) flush(worker);
+			}
+		}
+
+		private void flush(Worker worker) {
+			Batch batch = outboxes[worker.id];
+			outboxes[worker.id] = new Batch(batch.stateLength);
+			// count nodes as in flight BEFORE they can be received
+			active.addAndGet(batch.size);
+			worker.inbox.add(batch);
+			if (worker.sleeping) LockSupport.unpark(worker);
+		}
+
+	}
+
+	// =====
+	// BATCH
+	// =====
+
+	/**
+	 * Nodes sent to another worker, packed into primitive arrays: states as {@link StatePacked#writeTo(short[], int)}
+	 * and {@link #FIELDS} ints per node: player, action (push direction index), g, h, player steps and the parent {@link #ref(int, int)}.
+	 */
+	public static class Batch {
+
+		public static final int FIELDS = 6;
+
+		public final int stateLength;
+
+		public final short[] states;
+
+		public final int[] data = new int[BATCH_SIZE * FIELDS];
+
+		public int size;
+
+		public Batch(int stateLength) {
+			this.stateLength = stateLength;
+			this.states = new short[BATCH_SIZE * stateLength];
+		}
+
+		public void add(StatePacked state, int player, int action, int g, int h, int steps, int parent) {
+			state.writeTo(states, size * stateLength);
+			int offset = size * FIELDS;
+			data[offset] = player;
+			data[offset + 1] = action;
+			data[offset + 2] = g;
+			data[offset + 3] = h;
+			data[offset + 4] = steps;
+			data[offset + 5] = parent;
+			++size;
+		}
+
+	}
+
+}
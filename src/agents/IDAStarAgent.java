@@ -0,0 +1,491 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import agents.actions.ActionsBFSPacked;
+import agents.actions.PushMacros;
+import agents.deadlocks.FreezeDeadlockDetector;
+import agents.heuristics.MatchingHeuristic;
+import agents.heuristics.PushDistances;
+import agents.search.ReplacementTable;
+import game.CancellationToken;
+import game.IAgentStatistics;
+import game.actions.EDirection;
+import game.actions.compact.CMove;
+import game.actions.compact.CPush;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Memory-bounded push-optimal solver: IDA* over pushes performed in place on a single {@link BoardCompact}
+ * ({@link CPush#perform(BoardCompact)} / {@link CPush#reverse(BoardCompact)}), so the memory taken does not grow with the search.
+ *
+ * States (boxes + the top-left cell the player can reach) are recorded within a fixed-size {@link ReplacementTable} storing
+ * the best g known per state, which cuts transpositions and cycles. Its size is given by {@link #heapBudget}.
+ *
+ * Pushes are ordered by how much closer they bring the box to the goal it is matched with by {@link MatchingHeuristic}, then by the estimate.
+ *
+ * Pushes into tunnels are continued by {@link PushMacros} (which keeps push-optimality); goal-room macros are off by default as they may not.
+ */
+public class IDAStarAgent extends ArtificialAgent implements IAgentStatistics {
+
+	/**
+	 * Default {@link #heapBudget}.
+	 */
+	public static final long DEFAULT_HEAP_BUDGET = 64L * 1024 * 1024;
+
+	private static final int FOUND = -1;
+
+	protected List<EDirection> result;
+
+	protected BoardCompact board;
+
+	// SEARCH CONFIGURATION
+
+	/**
+	 * Bytes of heap the transposition table may take; capped to the half of the max heap.
+	 */
+	protected long heapBudget = DEFAULT_HEAP_BUDGET;
+
+	protected long zobristSeed = ZobristTable.DEFAULT_SEED;
+
+	protected boolean tunnelMacros = true;
+
+	protected boolean goalRoomMacros = false;
+
+	// LEVEL
+
+	protected BoardPacked packed;
+
+	protected ZobristTable zobrist;
+
+	protected PushDistances distances;
+
+	protected MatchingHeuristic matching;
+
+	protected FreezeDeadlockDetector deadlocks;
+
+	protected ReplacementTable table;
+
+	/**
+	 * Null if no macros are used.
+	 */
+	protected PushMacros macros;
+
+	// CURRENT STATE OF THE BOARD
+
+	/**
+	 * Cells of boxes on {@link #board}, sorted.
+	 */
+	protected int[] boxes;
+
+	/**
+	 * Zobrist hash of {@link #boxes}.
+	 */
+	protected long boxesHash;
+
+	// FLOOD FILL
+
+	private int[] marks;
+
+	private int[] queue;
+
+	private int generation;
+
+	// PER DEPTH BUFFERS
+
+	private List<Children> children = new ArrayList<Children>();
+
+	/**
+	 * [depth] -> cell the player pushed from / direction of the push, i.e., the current path.
+	 */
+	private int[] pathCells = new int[64];
+
+	private EDirection[] pathDirections = new EDirection[64];
+
+	/**
+	 * [depth] -> moves of the macro continuing the push, null if none.
+	 */
+	private EDirection[][] pathMacros = new EDirection[64][];
+
+	private boolean[][] pathMacroPushes = new boolean[64][];
+
+	private int pathLength;
+
+	private int solutionPushes;
+
+	// SEARCH STATE
+
+	protected int bound;
+
+	protected long searchedNodes;
+
+	protected CancellationToken cancellation;
+
+	public IDAStarAgent() {
+	}
+
+	/**
+	 * @param heapBudget bytes of heap the transposition table may take
+	 */
+	public IDAStarAgent(long heapBudget) {
+		this.heapBudget = heapBudget;
+	}
+
+	@Override
+	protected List<EDirection> think(BoardCompact board) {
+		// INIT SEARCH
+		this.board = board.clone();
+		this.result = new ArrayList<EDirection>();
+		this.packed = new BoardPacked(board);
+		this.zobrist = new ZobristTable(packed, zobristSeed);
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		this.distances = PushDistances.forPushing(packed, goals);
+		this.matching = new MatchingHeuristic(distances, board.boxCount);
+		this.deadlocks = new FreezeDeadlockDetector(packed, FreezeDeadlockDetector.deadCells(distances));
+		this.table = ReplacementTable.forBudget(Math.min(heapBudget, Runtime.getRuntime().maxMemory() / 2));
+		this.boxes = packed.findBoxes(board);
+		Arrays.sort(boxes);
+		this.boxesHash = 0;
+		for (int box : boxes) boxesHash ^= zobrist.box(box);
+		this.marks = new int[packed.cellCount()];
+		this.queue = new int[packed.cellCount()];
+		this.generation = 0;
+		this.pathLength = 0;
+		this.solutionPushes = 0;
+		this.macros = null;
+		if (tunnelMacros || goalRoomMacros) {
+			macros = new PushMacros(packed, boxes);
+			macros.setUseTunnels(tunnelMacros);
+			macros.setUseGoalRooms(goalRoomMacros);
+		}
+		this.searchedNodes = 0;
+		this.cancellation = cancellation();
+
+		// FIRE THE SEARCH
+
+		long searchStartMillis = System.currentTimeMillis();
+
+		int h = matching.rebase(boxes);
+		int iterations = 0;
+		bound = h;
+		while (h < PushDistances.INFINITE && !cancellation.isCancelled()) {
+			++iterations;
+			table.nextIteration();
+			int next = search(0, 0, h);
+			if (next == FOUND || next >= PushDistances.INFINITE) break;
+			bound = next;
+		}
+
+		long searchTime = System.currentTimeMillis() - searchStartMillis;
+
+		if (pathLength > 0) construct();
+
+		if (verbose) {
+			System.out.println("SEARCH TOOK:   " + searchTime + " ms");
+			System.out.println("NODES VISITED: " + searchedNodes);
+			System.out.println("PERFORMANCE:   " + ((double)searchedNodes / (double)Math.max(1, searchTime) * 1000) + " nodes/sec");
+			System.out.println("ITERATIONS:    " + iterations + " (last bound " + bound + ")");
+			System.out.println("TABLE:         " + table.size() + " / " + table.capacity() + " states");
+			System.out.println("SOLUTION:      " + (result.size() == 0 ? "NOT FOUND" : "FOUND in " + result.size() + " steps, " + solutionPushes + " pushes"));
+			System.out.println("=================");
+		}
+
+		if (result.size() == 0) {
+			return null;
+		}
+
+		return result;
+	}
+
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes;
+	}
+
+	// ======
+	// SEARCH
+	// ======
+
+	/**
+	 * Searches from the current {@link #board} reached by 'g' pushes in 'depth' (macro) pushes.
+	 * @param depth
+	 * @param g
+	 * @param h estimate of the current board
+	 * @return {@link #FOUND} or the lowest f beyond {@link #bound}
+	 */
+	private int search(int depth, int g, int h) {
+		if (g + h > bound) return g + h;
+		if (cancellation.isCancelled(searchedNodes)) return PushDistances.INFINITE;
+
+		int player = packed.cell(board.playerX, board.playerY);
+		int normalized = flood(player);
+		if (!table.visit(boxesHash ^ zobrist.player(normalized), g)) return PushDistances.INFINITE;
+
+		++searchedNodes;
+
+		Children next = children(depth);
+		next.collect(depth);
+
+		int min = PushDistances.INFINITE;
+		for (int i = 0; i < next.count; ++i) {
+			int childG = g + next.pushes[next.order[i]];
+			int childH = next.estimates[next.order[i]];
+			if (childG + childH > bound) {
+				min = Math.min(min, childG + childH);
+				continue;
+			}
+			int pushCell = next.cells[next.order[i]];
+			EDirection dir = next.directions[next.order[i]];
+
+			int playerX = board.playerX;
+			int playerY = board.playerY;
+			push(pushCell, dir, depth);
+			pathCells[depth] = pushCell;
+			pathDirections[depth] = dir;
+
+			int value;
+			if (board.isVictory()) {
+				pathLength = depth + 1;
+				solutionPushes = childG;
+				value = FOUND;
+			} else {
+				value = search(depth + 1, childG, childH);
+			}
+
+			unpush(pushCell, dir, depth, playerX, playerY);
+
+			if (value == FOUND) return FOUND;
+			min = Math.min(min, value);
+		}
+		return min;
+	}
+
+	/**
+	 * Moves the player to 'pushCell' and pushes the neighbouring box to 'dir' continuing by the macro, if any (kept for 'depth');
+	 * updates {@link #boxes} and {@link #boxesHash}.
+	 * @return number of pushes performed
+	 */
+	private int push(int pushCell, EDirection dir, int depth) {
+		int x = packed.x(pushCell);
+		int y = packed.y(pushCell);
+		if (board.playerX != x || board.playerY != y) board.movePlayer(board.playerX, board.playerY, x, y);
+		CPush.getAction(dir).perform(board);
+		int box = packed.neighbour(pushCell, dir);
+		moveBox(box, packed.neighbour(box, dir));
+
+		pathMacros[depth] = null;
+		if (macros == null || macros.plan(board, packed.neighbour(box, dir), dir) == 0) return 1;
+		EDirection[] moves = macros.moves();
+		boolean[] pushes = new boolean[moves.length];
+		for (int i = 0; i < moves.length; ++i) {
+			pushes[i] = macros.isPush(i);
+			if (pushes[i]) {
+				int moved = packed.neighbour(packed.cell(board.playerX, board.playerY), moves[i]);
+				CPush.getAction(moves[i]).perform(board);
+				moveBox(moved, packed.neighbour(moved, moves[i]));
+			} else {
+				CMove.getAction(moves[i]).perform(board);
+			}
+		}
+		pathMacros[depth] = moves;
+		pathMacroPushes[depth] = pushes;
+		return 1 + macros.pushes();
+	}
+
+	private void unpush(int pushCell, EDirection dir, int depth, int playerX, int playerY) {
+		EDirection[] moves = pathMacros[depth];
+		if (moves != null) {
+			for (int i = moves.length - 1; i >= 0; --i) {
+				if (pathMacroPushes[depth][i]) {
+					CPush.getAction(moves[i]).reverse(board);
+					int moved = packed.neighbour(packed.cell(board.playerX, board.playerY), moves[i]);
+					moveBox(packed.neighbour(moved, moves[i]), moved);
+				} else {
+					CMove.getAction(moves[i]).reverse(board);
+				}
+			}
+		}
+		CPush.getAction(dir).reverse(board);
+		int box = packed.neighbour(pushCell, dir);
+		moveBox(packed.neighbour(box, dir), box);
+		if (board.playerX != playerX || board.playerY != playerY) board.movePlayer(board.playerX, board.playerY, playerX, playerY);
+	}
+
+	/**
+	 * Keeps {@link #boxes} sorted while the box moves 'from' -> 'to'.
+	 */
+	private void moveBox(int from, int to) {
+		int i = Arrays.binarySearch(boxes, from);
+		while (i > 0 && boxes[i - 1] > to) {
+			boxes[i] = boxes[i - 1];
+			--i;
+		}
+		while (i < boxes.length - 1 && boxes[i + 1] < to) {
+			boxes[i] = boxes[i + 1];
+			++i;
+		}
+		boxes[i] = to;
+		boxesHash ^= zobrist.box(from) ^ zobrist.box(to);
+	}
+
+	private boolean hasBox(int cell) {
+		return CTile.isSomeBox(board.tile(packed.x(cell), packed.y(cell)));
+	}
+
+	/**
+	 * Marks cells reachable from 'player' by the current {@link #generation}.
+	 * @return the lowest reachable cell
+	 */
+	private int flood(int player) {
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			generation = 1;
+		}
+		int min = player;
+		int head = 0;
+		int tail = 0;
+		marks[player] = generation;
+		queue[tail++] = player;
+		while (head < tail) {
+			int cell = queue[head++];
+			for (EDirection dir : EDirection.arrows()) {
+				int next = packed.neighbour(cell, dir);
+				if (next == BoardPacked.NONE || marks[next] == generation || hasBox(next)) continue;
+				marks[next] = generation;
+				queue[tail++] = next;
+				if (next < min) min = next;
+			}
+		}
+		return min;
+	}
+
+	private Children children(int depth) {
+		while (children.size() <= depth) children.add(new Children());
+		if (pathCells.length <= depth) {
+			pathCells = Arrays.copyOf(pathCells, pathCells.length * 2);
+			pathDirections = Arrays.copyOf(pathDirections, pathDirections.length * 2);
+			pathMacros = Arrays.copyOf(pathMacros, pathMacros.length * 2);
+			pathMacroPushes = Arrays.copyOf(pathMacroPushes, pathMacroPushes.length * 2);
+		}
+		return children.get(depth);
+	}
+
+	/**
+	 * Expands pushes of the found path into single steps; walks are reconstructed by BFS over packed states.
+	 */
+	private void construct() {
+		ActionsBFSPacked actionsBFS = new ActionsBFSPacked(packed);
+		// the board is back in the initial state as the search returned
+		StatePacked state = StatePacked.create(packed.cell(board.playerX, board.playerY), packed.findBoxes(board), zobrist);
+		for (int i = 0; i < pathLength; ++i) {
+			actionsBFS.findPushes(state, state.player());
+			result.addAll(Arrays.asList(actionsBFS.walkTo(pathCells[i]).getDirections()));
+			result.add(pathDirections[i]);
+			state = state.walk(pathCells[i], zobrist).push(pathDirections[i], zobrist);
+			if (pathMacros[i] == null) continue;
+			for (int j = 0; j < pathMacros[i].length; ++j) {
+				result.add(pathMacros[i][j]);
+				state = pathMacroPushes[i][j] ? state.push(pathMacros[i][j], zobrist) : state.move(pathMacros[i][j], zobrist);
+			}
+		}
+	}
+
+	// ========
+	// CHILDREN
+	// ========
+
+	/**
+	 * Pushes possible from a single search node together with their estimates and the order to try them in.
+	 */
+	private class Children {
+
+		int count;
+
+		int[] cells = new int[4 * boxes.length];
+
+		EDirection[] directions = new EDirection[4 * boxes.length];
+
+		int[] estimates = new int[4 * boxes.length];
+
+		/**
+		 * Pushes performed by the child (more than one if continued by a macro).
+		 */
+		int[] pushes = new int[4 * boxes.length];
+
+		/**
+		 * Matched-goal distance change of the pushed box, the primary ordering key.
+		 */
+		int[] progress = new int[4 * boxes.length];
+
+		int[] order = new int[4 * boxes.length];
+
+		/**
+		 * Collects non-deadlocked pushes of the current {@link #board}; requires {@link #flood(int)} of the current board to be the last one.
+		 * @param depth of the current board
+		 */
+		void collect(int depth) {
+			count = 0;
+			matching.rebase(boxes);
+			int stamp = generation;
+			for (int box : boxes) {
+				for (EDirection dir : EDirection.arrows()) {
+					int pushCell = packed.neighbour(box, dir.opposite());
+					if (pushCell == BoardPacked.NONE || marks[pushCell] != stamp) continue;
+					int target = packed.neighbour(box, dir);
+					if (target == BoardPacked.NONE || hasBox(target) || distances.minDistance(target) >= PushDistances.INFINITE) continue;
+					cells[count] = pushCell;
+					directions[count] = dir;
+					int goal = matching.matchedGoal(box);
+					progress[count] = goal < 0 ? 0 : distances.distance(goal, target) - distances.distance(goal, box);
+					++count;
+				}
+			}
+
+			// EVALUATE, performing the pushes in place
+			int playerX = board.playerX;
+			int playerY = board.playerY;
+			int kept = 0;
+			for (int i = 0; i < count; ++i) {
+				int performed = push(cells[i], directions[i], depth);
+				EDirection last = pathMacros[depth] == null ? directions[i] : macros.finalPushDirection();
+				int h = last != null && deadlocks.isDeadlockAfterPush(board, last) ? PushDistances.INFINITE : matching.estimate(boxes);
+				unpush(cells[i], directions[i], depth, playerX, playerY);
+				if (h >= PushDistances.INFINITE) continue;
+				cells[kept] = cells[i];
+				directions[kept] = directions[i];
+				progress[kept] = progress[i];
+				estimates[kept] = h;
+				pushes[kept] = performed;
+				++kept;
+			}
+			count = kept;
+
+			// ORDER (insertion sort, there are a few pushes only)
+			for (int i = 0; i < count; ++i) {
+				int j = i;
+				while (j > 0 && before(i, order[j - 1])) {
+					order[j] = order[j - 1];
+					--j;
+				}
+				order[j] = i;
+			}
+		}
+
+		private boolean before(int a, int b) {
+			if (progress[a] != progress[b]) return progress[a] < progress[b];
+			return estimates[a] < estimates[b];
+		}
+
+	}
+
+}
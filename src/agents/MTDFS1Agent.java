@@ -6,20 +6,29 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import agents.deadlocks.FreezeDeadlockDetector;
+import game.CancellationToken;
+import game.IAgentStatistics;
 import game.actions.EDirection;
 import game.actions.compact.CAction;
 import game.actions.compact.CMove;
 import game.actions.compact.CPush;
 import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
 
 /**
  * Multi-threaded version of {@link DFS1Agent}
  * @author Jimmy
  */
-public class MTDFS1Agent extends ArtificialAgent {
+public class MTDFS1Agent extends ArtificialAgent implements IAgentStatistics {
 
 	protected BoardCompact board;
 
+	/**
+	 * Level data for deadlock checks; every {@link DFS1Thread} works with its own copy.
+	 */
+	protected FreezeDeadlockDetector deadlocks;
+
 	protected Object solutionFoundMutex = new Object();
 	
 	/**
@@ -31,13 +40,20 @@ public class MTDFS1Agent extends ArtificialAgent {
 	 * Profiling ... how many nodes we have managed to search.
 	 */
 	protected AtomicInteger searchedNodes = new AtomicInteger();
+
+	/**
+	 * Polled by all {@link DFS1Thread}s, see {@link #cancellation()}.
+	 */
+	protected CancellationToken cancellation;
 	
 	@Override
 	protected List<EDirection> think(BoardCompact board) {
 		// INIT SEARCH
 		this.board = board;
+		this.deadlocks = FreezeDeadlockDetector.create(new BoardPacked(board));
 		this.solutionFound = false;
 		this.searchedNodes.set(0);
+		this.cancellation = cancellation();
 		
 		// SEARCH CONFIGURATION
 		int spareThreads = 8;
@@ -83,6 +99,11 @@ public class MTDFS1Agent extends ArtificialAgent {
 		return result;
 	}
 
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes.get();
+	}
+
 	public class DFS1Thread extends Thread {
 		
 		public List<EDirection> preActions = new ArrayList<EDirection>();
@@ -93,6 +114,8 @@ public class MTDFS1Agent extends ArtificialAgent {
 		
 		public boolean solutionFound = false;
 
+		private FreezeDeadlockDetector deadlocks = new FreezeDeadlockDetector(MTDFS1Agent.this.deadlocks);
+
 		private int level;
 
 		private int spareThreads;
@@ -226,7 +249,9 @@ public class MTDFS1Agent extends ArtificialAgent {
 		private boolean dfs(List<CAction> actions, int level) {
 			if (level <= 0) return false; // DEPTH-LIMITED
 			
-			MTDFS1Agent.this.searchedNodes.incrementAndGet();
+			if (cancellation.isCancelled(MTDFS1Agent.this.searchedNodes.incrementAndGet())) {
+				return false; // OUT OF TIME OR STOPPED
+			}
 			
 			// TRY ACTIONS
 			for (CAction action : actions) {
@@ -249,8 +274,8 @@ public class MTDFS1Agent extends ArtificialAgent {
 					return true;
 				}
 				
-				// CONTINUE THE SEARCH
-				if (dfs(level-1)) {
+				// CONTINUE THE SEARCH, unless the push has frozen some box off goal
+				if (!deadlocks.isDeadlockAfter(board, action) && dfs(level-1)) {
 					// SOLUTION FOUND!
 					solutionFound();
 					return true;
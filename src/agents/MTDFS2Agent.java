@@ -6,21 +6,30 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import agents.deadlocks.FreezeDeadlockDetector;
+import game.CancellationToken;
+import game.IAgentStatistics;
 import game.actions.EDirection;
 import game.actions.compact.CAction;
 import game.actions.compact.CMove;
 import game.actions.compact.CPush;
 import game.actions.oop.EActionType;
 import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
 
 /**
  * Multi-threaded version of {@link DFS2Agent}
  * @author Jimmy
  */
-public class MTDFS2Agent extends ArtificialAgent {
+public class MTDFS2Agent extends ArtificialAgent implements IAgentStatistics {
 
 	protected BoardCompact board;
 
+	/**
+	 * Level data for deadlock checks; every {@link DFS2Thread} works with its own copy.
+	 */
+	protected FreezeDeadlockDetector deadlocks;
+
 	protected Object solutionFoundMutex = new Object();
 	
 	/**
@@ -32,13 +41,20 @@ public class MTDFS2Agent extends ArtificialAgent {
 	 * Profiling ... how many nodes we have managed to search.
 	 */
 	protected AtomicInteger searchedNodes = new AtomicInteger();
+
+	/**
+	 * Polled by all {@link DFS2Thread}s, see {@link #cancellation()}.
+	 */
+	protected CancellationToken cancellation;
 	
 	@Override
 	protected List<EDirection> think(BoardCompact board) {
 		// INIT SEARCH
 		this.board = board;
+		this.deadlocks = FreezeDeadlockDetector.create(new BoardPacked(board));
 		this.solutionFound = false;
 		this.searchedNodes.set(0);
+		this.cancellation = cancellation();
 		
 		// SEARCH CONFIGURATION
 		int spareThreads = 8;
@@ -84,6 +100,11 @@ public class MTDFS2Agent extends ArtificialAgent {
 		return result;
 	}
 
+	@Override
+	public long getSearchedNodes() {
+		return searchedNodes.get();
+	}
+
 	public class DFS2Thread extends Thread {
 		
 		public List<EDirection> preActions = new ArrayList<EDirection>();
@@ -94,6 +115,8 @@ public class MTDFS2Agent extends ArtificialAgent {
 		
 		public boolean solutionFound = false;
 
+		private FreezeDeadlockDetector deadlocks = new FreezeDeadlockDetector(MTDFS2Agent.this.deadlocks);
+
 		private int level;
 
 		private int spareThreads;
@@ -238,7 +261,9 @@ public class MTDFS2Agent extends ArtificialAgent {
 		private boolean dfs(List<CAction> actions, int level) {
 			if (level <= 0) return false; // DEPTH-LIMITED
 			
-			MTDFS2Agent.this.searchedNodes.incrementAndGet();
+			if (cancellation.isCancelled(MTDFS2Agent.this.searchedNodes.incrementAndGet())) {
+				return false; // OUT OF TIME OR STOPPED
+			}
 			
 			// TRY ACTIONS
 			for (CAction action : actions) {
@@ -261,8 +286,8 @@ public class MTDFS2Agent extends ArtificialAgent {
 					return true;
 				}
 				
-				// CONTINUE THE SEARCH
-				if (dfs(level-1, (action.getType() == EActionType.MOVE ? action.getDirection() : EDirection.NONE))) {
+				// CONTINUE THE SEARCH, unless the push has frozen some box off goal
+				if (!deadlocks.isDeadlockAfter(board, action) && dfs(level-1, (action.getType() == EActionType.MOVE ? action.getDirection() : EDirection.NONE))) {
 					// SOLUTION FOUND!
 					solutionFound();
 					return true;
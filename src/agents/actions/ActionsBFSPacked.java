@@ -0,0 +1,201 @@
+package agents.actions;
+
+import java.util.Arrays;
+
+import game.actions.EDirection;
+import game.actions.compact.CPush;
+import game.actions.compact.CWalk;
+import game.actions.compact.CWalkPush;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Allocation-free variant of {@link ActionsBFS} working over {@link BoardPacked} cells of a {@link StatePacked}.
+ *
+ * The queue is a preallocated int[] ring buffer of cell indices; every cell has a single int in {@link #marks} holding the generation
+ * of the BFS that reached it together with the direction it was reached from, so nothing needs to be cleared between calls.
+ *
+ * {@link #findPushes(StatePacked, int)} only records [cell, direction] of possible pushes; the {@link CWalk} path to a push is reconstructed
+ * lazily by {@link #walkTo(int)} or {@link #action(int)} for the push that is actually chosen (valid until the next BFS).
+ *
+ * Not thread-safe; use one instance per search thread.
+ */
+public class ActionsBFSPacked {
+
+	private static final int DIRECTION_BITS = 3;
+
+	private static final int DIRECTION_MASK = (1 << DIRECTION_BITS) - 1;
+
+	/**
+	 * Stored instead of direction for the cell the BFS started from.
+	 */
+	private static final int START = 4;
+
+	private final BoardPacked board;
+
+	/**
+	 * [cell] -> (generation << {@link #DIRECTION_BITS}) | index of the direction the cell was entered by (or {@link #START})
+	 */
+	private final int[] marks;
+
+	/**
+	 * [cell] -> number of steps from the start; valid for cells marked by the current generation only
+	 */
+	private final int[] distances;
+
+	private final int[] queue;
+
+	private final int queueMask;
+
+	private int generation = 0;
+
+	// PUSHES FOUND BY THE LAST BFS
+
+	private final int[] pushCells;
+
+	private final byte[] pushDirections;
+
+	private int pushCount;
+
+	private int minReached;
+
+	public ActionsBFSPacked(BoardPacked board) {
+		this.board = board;
+		this.marks = new int[board.cellCount()];
+		this.distances = new int[board.cellCount()];
+		int capacity = Integer.highestOneBit(Math.max(1, board.cellCount())) << 1;
+		this.queue = new int[capacity];
+		this.queueMask = capacity - 1;
+		this.pushCells = new int[board.cellCount() * 4];
+		this.pushDirections = new byte[board.cellCount() * 4];
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	/**
+	 * Performs BFS from 'player' to find all possible "walk-to-the-box-and-push" actions within 'state'.
+	 * @param state boxes of the board (its player is ignored)
+	 * @param player cell the player walks from
+	 * @return number of pushes found, see {@link #pushCell(int)} and {@link #pushDirection(int)}
+	 */
+	public int findPushes(StatePacked state, int player) {
+		if (++generation >= (1 << (31 - DIRECTION_BITS))) {
+			Arrays.fill(marks, 0);
+			generation = 1;
+		}
+		int stamp = generation << DIRECTION_BITS;
+		pushCount = 0;
+		minReached = player;
+
+		int head = 0;
+		int tail = 0;
+		marks[player] = stamp | START;
+		distances[player] = 0;
+		queue[tail++ & queueMask] = player;
+
+		while (head != tail) {
+			int cell = queue[head++ & queueMask];
+			for (EDirection dir : EDirection.arrows()) {
+				int next = board.neighbour(cell, dir);
+				if (next == BoardPacked.NONE) continue;
+				if (state.hasBox(next)) {
+					// CAN WE PUSH IT?
+					int behind = board.neighbour(next, dir);
+					if (behind != BoardPacked.NONE && !state.hasBox(behind)) {
+						pushCells[pushCount] = cell;
+						pushDirections[pushCount] = (byte)dir.index;
+						++pushCount;
+					}
+					continue;
+				}
+				if ((marks[next] >>> DIRECTION_BITS) == generation) continue;
+				marks[next] = stamp | dir.index;
+				distances[next] = distances[cell] + 1;
+				queue[tail++ & queueMask] = next;
+				if (next < minReached) minReached = next;
+			}
+		}
+		return pushCount;
+	}
+
+	/**
+	 * Cell the player pushes from in the 'index'-th push found by the last BFS.
+	 * @param index
+	 * @return
+	 */
+	public int pushCell(int index) {
+		return pushCells[index];
+	}
+
+	/**
+	 * Direction of the 'index'-th push found by the last BFS.
+	 * @param index
+	 * @return
+	 */
+	public EDirection pushDirection(int index) {
+		return EDirection.forIndex(pushDirections[index]);
+	}
+
+	/**
+	 * Number of steps of the 'index'-th push found by the last BFS including the push itself.
+	 * @param index
+	 * @return
+	 */
+	public int pushSteps(int index) {
+		return distances[pushCells[index]] + 1;
+	}
+
+	/**
+	 * Was 'cell' reached by the last BFS?
+	 * @param cell
+	 * @return
+	 */
+	public boolean isReached(int cell) {
+		return (marks[cell] >>> DIRECTION_BITS) == generation;
+	}
+
+	/**
+	 * Number of steps needed to reach 'cell' within the last BFS; valid only if {@link #isReached(int)}.
+	 * @param cell
+	 * @return
+	 */
+	public int distance(int cell) {
+		return distances[cell];
+	}
+
+	/**
+	 * Top-left (smallest) cell reached by the last BFS.
+	 * @return
+	 */
+	public int normalizedPlayer() {
+		return minReached;
+	}
+
+	/**
+	 * Reconstructs the path of the last BFS from its start to 'cell'.
+	 * @param cell must be {@link #isReached(int)}
+	 * @return
+	 */
+	public CWalk walkTo(int cell) {
+		EDirection[] path = new EDirection[distances[cell]];
+		int current = cell;
+		for (int i = path.length - 1; i >= 0; --i) {
+			EDirection dir = EDirection.forIndex(marks[current] & DIRECTION_MASK);
+			path[i] = dir;
+			current = board.neighbour(current, dir.opposite());
+		}
+		return new CWalk(board.x(cell), board.y(cell), path);
+	}
+
+	/**
+	 * Creates the {@link CWalkPush} of the 'index'-th push found by the last BFS.
+	 * @param index
+	 * @return
+	 */
+	public CWalkPush action(int index) {
+		return new CWalkPush(walkTo(pushCells[index]), CPush.getAction(pushDirection(index)));
+	}
+
+}
@@ -0,0 +1,152 @@
+package agents.actions;
+
+import java.util.Arrays;
+
+import game.actions.EDirection;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * PI-corral (player-inaccessible corral) pruning of pushes found by {@link ActionsBFSPacked#findPushes(StatePacked, int)}.
+ *
+ * A corral is an area the player cannot reach, fenced by boxes (its barrier). It is a PI-corral if barrier boxes can only be pushed into
+ * the corral (pushes out of it are blocked by walls or other barrier boxes, not by boxes that may move away) and the player can get to
+ * all cells such pushes would be made from. If such a corral is not solved yet (a box of the barrier is off goal or a goal within
+ * the corral is empty), one of its barrier boxes has to be pushed sooner or later, and pushing other boxes first does not help,
+ * so only the pushes of its barrier boxes need to be generated. If there are several PI-corrals, the one with the fewest pushes is taken.
+ *
+ * Not thread-safe; use one instance per search thread.
+ */
+public class CorralPruning {
+
+	private final BoardPacked board;
+
+	/**
+	 * [cell] -> generation of the corral the cell belongs to.
+	 */
+	private final int[] corrals;
+
+	/**
+	 * [cell] -> {@link #generation} of the corral the box was found to be a barrier box of.
+	 */
+	private final int[] barrierMarks;
+
+	private final int[] queue;
+
+	private final int[] barrier;
+
+	private int generation;
+
+	/**
+	 * Barrier boxes of the chosen PI-corral are marked by this value within {@link #chosen}.
+	 */
+	private final int[] chosen;
+
+	private int chosenMark;
+
+	private boolean found;
+
+	public CorralPruning(BoardPacked board) {
+		this.board = board;
+		this.corrals = new int[board.cellCount()];
+		this.barrierMarks = new int[board.cellCount()];
+		this.chosen = new int[board.cellCount()];
+		this.queue = new int[board.cellCount()];
+		this.barrier = new int[board.cellCount()];
+	}
+
+	/**
+	 * Looks for the PI-corral within 'state'; 'bfs' must hold the pushes found for 'state' by the last {@link ActionsBFSPacked#findPushes(StatePacked, int)}.
+	 * @param state
+	 * @param bfs
+	 * @return whether a PI-corral was found, see {@link #isAllowed(int)}
+	 */
+	public boolean find(StatePacked state, ActionsBFSPacked bfs) {
+		found = false;
+		if (++chosenMark == Integer.MAX_VALUE) {
+			Arrays.fill(chosen, 0);
+			chosenMark = 1;
+		}
+		int bestPushes = Integer.MAX_VALUE;
+		if (generation > Integer.MAX_VALUE - board.cellCount() - 1) {
+			Arrays.fill(corrals, 0);
+			Arrays.fill(barrierMarks, 0);
+			generation = 0;
+		}
+		// corrals of this call get generations from 'first' on
+		int first = generation + 1;
+
+		for (int start = 0; start < board.cellCount(); ++start) {
+			if (bfs.isReached(start) || state.hasBox(start) || corrals[start] >= first) continue;
+			++generation;
+
+			// FLOOD THE CORRAL, collecting its barrier
+			boolean solved = true;
+			int barrierCount = 0;
+			int head = 0;
+			int tail = 0;
+			corrals[start] = generation;
+			queue[tail++] = start;
+			while (head < tail) {
+				int cell = queue[head++];
+				if (board.isGoal(cell)) solved = false; // empty goal
+				for (EDirection dir : EDirection.arrows()) {
+					int next = board.neighbour(cell, dir);
+					if (next == BoardPacked.NONE) continue;
+					if (state.hasBox(next)) {
+						if (barrierMarks[next] != generation) {
+							barrierMarks[next] = generation;
+							barrier[barrierCount++] = next;
+							if (!board.isGoal(next)) solved = false;
+						}
+						continue;
+					}
+					if (corrals[next] == generation || bfs.isReached(next)) continue;
+					corrals[next] = generation;
+					queue[tail++] = next;
+				}
+			}
+			if (solved) continue;
+
+			// PI: barrier boxes can be pushed into the corral only, from cells the player can get to;
+			// pushes out of it must be blocked by walls or the barrier itself (other boxes may move away later)
+			int pushes = 0;
+			boolean pi = true;
+			for (int i = 0; i < barrierCount && pi; ++i) {
+				int box = barrier[i];
+				for (EDirection dir : EDirection.arrows()) {
+					int target = board.neighbour(box, dir);
+					int from = board.neighbour(box, dir.opposite());
+					if (target == BoardPacked.NONE || from == BoardPacked.NONE) continue;
+					if (corrals[from] == generation || barrierMarks[from] == generation) continue;
+					if (corrals[target] == generation) {
+						if (bfs.isReached(from)) ++pushes;
+						else pi = false;
+					} else if (barrierMarks[target] != generation) {
+						pi = false;
+					}
+				}
+			}
+			if (!pi || pushes == 0 || pushes >= bestPushes) continue;
+
+			bestPushes = pushes;
+			found = true;
+			if (++chosenMark == Integer.MAX_VALUE) {
+				Arrays.fill(chosen, 0);
+				chosenMark = 1;
+			}
+			for (int i = 0; i < barrierCount; ++i) chosen[barrier[i]] = chosenMark;
+		}
+		return found;
+	}
+
+	/**
+	 * Whether the push of the box on 'box' should be generated according to the last {@link #find(StatePacked, ActionsBFSPacked)}.
+	 * @param box
+	 * @return
+	 */
+	public boolean isAllowed(int box) {
+		return !found || chosen[box] == chosenMark;
+	}
+
+}
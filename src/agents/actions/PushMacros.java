@@ -0,0 +1,510 @@
+package agents.actions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Macro moves continuing a push whose follow-up is forced (or as good as any other), detected once per level from static walls:
+ *
+ * TUNNEL: a box pushed into a straight one-wide corridor (walls on both sides of the box and of the player behind it) can only
+ * be pushed further along it; it is pushed on until it leaves the tunnel, reaches a goal or is blocked by another box.
+ *
+ * GOAL ROOM: an area holding goals (and no boxes at the start) reachable only through a single entrance cell. Its packing order
+ * is found once by pulling boxes out of the filled room one by one; whenever a box is pushed onto the entrance (into the room)
+ * while the room holds exactly the boxes packed before, the box is pushed straight to the next goal of the order.
+ * Unlike tunnels, goal-room macros are not guaranteed to keep solutions (or their optimality), so they can be switched off.
+ *
+ * Usage: after a push, {@link #plan(StatePacked, int, EDirection)} (or {@link #plan(BoardCompact, int, EDirection)}) finds the moves
+ * continuing it, {@link #perform(StatePacked, ZobristTable)} applies them; the planned moves are valid until the next plan.
+ *
+ * Not thread-safe; use one instance per search thread.
+ */
+public class PushMacros {
+
+	/**
+	 * Rooms larger than this are ignored (the packing order is found by BFS over box x player cells).
+	 */
+	public static final int MAX_ROOM_CELLS = 64;
+
+	private final BoardPacked board;
+
+	/**
+	 * [direction index][cell] -> whether the box pushed onto 'cell' in the direction is in a tunnel, i.e., should be pushed on.
+	 */
+	private final boolean[][] tunnels;
+
+	private final List<GoalRoom> rooms = new ArrayList<GoalRoom>();
+
+	/**
+	 * [cell] -> goal room the cell is the entrance of, null if none.
+	 */
+	private final GoalRoom[] entrances;
+
+	private boolean useTunnels = true;
+
+	private boolean useGoalRooms = true;
+
+	// LAST PLAN
+
+	private StatePacked planState;
+
+	private BoardCompact planBoard;
+
+	private EDirection[] moves = new EDirection[16];
+
+	private boolean[] pushing = new boolean[16];
+
+	private int moveCount;
+
+	private int pushCount;
+
+	private int finalBox;
+
+	/**
+	 * @param board
+	 * @param boxes box cells at the start (goal rooms must be empty)
+	 */
+	public PushMacros(BoardPacked board, int[] boxes) {
+		this.board = board;
+		this.tunnels = new boolean[4][board.cellCount()];
+		this.entrances = new GoalRoom[board.cellCount()];
+		findTunnels();
+		findGoalRooms(boxes);
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	public void setUseTunnels(boolean useTunnels) {
+		this.useTunnels = useTunnels;
+	}
+
+	public void setUseGoalRooms(boolean useGoalRooms) {
+		this.useGoalRooms = useGoalRooms;
+	}
+
+	/**
+	 * Number of cells a box may be pushed into as a tunnel (for all directions).
+	 * @return
+	 */
+	public int tunnelCount() {
+		int count = 0;
+		for (boolean[] cells : tunnels) {
+			for (boolean tunnel : cells) if (tunnel) ++count;
+		}
+		return count;
+	}
+
+	public int goalRoomCount() {
+		return rooms.size();
+	}
+
+	// ========
+	// PLANNING
+	// ========
+
+	/**
+	 * Plans the macro continuing the push that has just moved a box onto 'box' in 'dir' within 'state' (the player stands behind the box).
+	 * @param state
+	 * @param box
+	 * @param dir
+	 * @return number of further pushes (0 == no macro applies)
+	 */
+	public int plan(StatePacked state, int box, EDirection dir) {
+		this.planState = state;
+		this.planBoard = null;
+		return plan(box, dir);
+	}
+
+	/**
+	 * As {@link #plan(StatePacked, int, EDirection)} over the {@link BoardCompact} the macros were computed for.
+	 * @param board
+	 * @param box
+	 * @param dir
+	 * @return
+	 */
+	public int plan(BoardCompact board, int box, EDirection dir) {
+		this.planState = null;
+		this.planBoard = board;
+		return plan(box, dir);
+	}
+
+	private int plan(int box, EDirection dir) {
+		moveCount = 0;
+		pushCount = 0;
+
+		// TUNNEL
+		if (useTunnels) {
+			while (tunnels[dir.index][box]) {
+				int next = board.neighbour(box, dir);
+				if (next == BoardPacked.NONE || hasBox(next)) break;
+				add(dir, true);
+				box = next;
+			}
+		}
+
+		// GOAL ROOM (the box may have got to the entrance through a tunnel)
+		if (useGoalRooms && entrances[box] != null && entrances[box].direction == dir) {
+			GoalRoom room = entrances[box];
+			int packed = room.packed();
+			if (packed >= 0) {
+				for (int i = 0; i < room.moves[packed].length; ++i) {
+					add(room.moves[packed][i], room.pushing[packed][i]);
+				}
+				box = room.order[packed];
+			}
+		}
+
+		finalBox = box;
+		return pushCount;
+	}
+
+	private boolean hasBox(int cell) {
+		if (planState != null) return planState.hasBox(cell);
+		return CTile.isSomeBox(planBoard.tile(board.x(cell), board.y(cell)));
+	}
+
+	private void add(EDirection dir, boolean push) {
+		if (moveCount == moves.length) {
+			moves = Arrays.copyOf(moves, moveCount * 2);
+			pushing = Arrays.copyOf(pushing, moveCount * 2);
+		}
+		moves[moveCount] = dir;
+		pushing[moveCount] = push;
+		++moveCount;
+		if (push) ++pushCount;
+	}
+
+	/**
+	 * Applies the moves of the last plan to 'state'.
+	 * @param state
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked perform(StatePacked state, ZobristTable zobrist) {
+		for (int i = 0; i < moveCount; ++i) {
+			state = pushing[i] ? state.push(moves[i], zobrist) : state.move(moves[i], zobrist);
+		}
+		return state;
+	}
+
+	/**
+	 * Pushes of the last plan.
+	 * @return
+	 */
+	public int pushes() {
+		return pushCount;
+	}
+
+	/**
+	 * Moves (steps and pushes) of the last plan.
+	 * @return
+	 */
+	public int moveCount() {
+		return moveCount;
+	}
+
+	public EDirection move(int index) {
+		return moves[index];
+	}
+
+	public boolean isPush(int index) {
+		return pushing[index];
+	}
+
+	/**
+	 * Cell of the box after the last plan.
+	 * @return
+	 */
+	public int finalBox() {
+		return finalBox;
+	}
+
+	/**
+	 * Direction of the last move of the last plan if it was a push (the player then stands right behind {@link #finalBox()}), null otherwise.
+	 * @return
+	 */
+	public EDirection finalPushDirection() {
+		return moveCount > 0 && pushing[moveCount - 1] ? moves[moveCount - 1] : null;
+	}
+
+	/**
+	 * Directions of the last plan.
+	 * @return
+	 */
+	public EDirection[] moves() {
+		return Arrays.copyOf(moves, moveCount);
+	}
+
+	// =======
+	// TUNNELS
+	// =======
+
+	private void findTunnels() {
+		for (EDirection dir : EDirection.arrows()) {
+			for (int cell = 0; cell < board.cellCount(); ++cell) {
+				int player = board.neighbour(cell, dir.opposite());
+				tunnels[dir.index][cell] = !board.isGoal(cell) && player != BoardPacked.NONE && walledSides(cell, dir) && walledSides(player, dir);
+			}
+		}
+	}
+
+	/**
+	 * Whether both cells next to 'cell' perpendicular to 'dir' are walls.
+	 */
+	private boolean walledSides(int cell, EDirection dir) {
+		return board.neighbour(cell, EDirection.forIndex((dir.index + 1) & 3)) == BoardPacked.NONE
+		    && board.neighbour(cell, EDirection.forIndex((dir.index + 3) & 3)) == BoardPacked.NONE;
+	}
+
+	// ==========
+	// GOAL ROOMS
+	// ==========
+
+	private void findGoalRooms(int[] boxes) {
+		boolean[] startBoxes = new boolean[board.cellCount()];
+		for (int box : boxes) startBoxes[box] = true;
+
+		// CANDIDATES: entrance cells whose removal cuts off an area with goals and no boxes
+		List<GoalRoom> candidates = new ArrayList<GoalRoom>();
+		int[] queue = new int[board.cellCount()];
+		int[] marks = new int[board.cellCount()];
+		int generation = 0;
+		for (int entrance = 0; entrance < board.cellCount(); ++entrance) {
+			if (board.isGoal(entrance) || startBoxes[entrance]) continue;
+			for (EDirection dir : EDirection.arrows()) {
+				int inside = board.neighbour(entrance, dir);
+				int outside = board.neighbour(entrance, dir.opposite());
+				if (inside == BoardPacked.NONE || outside == BoardPacked.NONE) continue;
+
+				++generation;
+				marks[entrance] = generation;
+				marks[inside] = generation;
+				int head = 0;
+				int tail = 0;
+				queue[tail++] = inside;
+				boolean valid = true;
+				int goals = 0;
+				while (head < tail && valid) {
+					int cell = queue[head++];
+					if (cell == outside || startBoxes[cell] || tail > MAX_ROOM_CELLS) valid = false;
+					if (board.isGoal(cell)) ++goals;
+					for (EDirection next : EDirection.arrows()) {
+						int neighbour = board.neighbour(cell, next);
+						if (neighbour == BoardPacked.NONE || marks[neighbour] == generation) continue;
+						marks[neighbour] = generation;
+						queue[tail++] = neighbour;
+					}
+				}
+				if (!valid || goals == 0) continue;
+				candidates.add(new GoalRoom(entrance, dir, Arrays.copyOf(queue, tail), goals));
+			}
+		}
+
+		// outer rooms first, then the tightest entrance of the same room; rooms must not overlap
+		candidates.sort((a, b) -> a.goalCount != b.goalCount ? b.goalCount - a.goalCount : a.cells.length - b.cells.length);
+		boolean[] taken = new boolean[board.cellCount()];
+		for (GoalRoom room : candidates) {
+			if (taken[room.entrance]) continue;
+			boolean overlaps = false;
+			for (int cell : room.cells) overlaps |= taken[cell];
+			if (overlaps || !room.findPackingOrder()) continue;
+			taken[room.entrance] = true;
+			for (int cell : room.cells) taken[cell] = true;
+			rooms.add(room);
+			entrances[room.entrance] = room;
+		}
+	}
+
+	/**
+	 * Area with goals entered from {@link #entrance} by pushing in {@link #direction}.
+	 */
+	private class GoalRoom {
+
+		final int entrance;
+
+		final EDirection direction;
+
+		final int[] cells;
+
+		final int goalCount;
+
+		/**
+		 * [i] -> goal filled as the i-th one.
+		 */
+		int[] order;
+
+		/**
+		 * [cell] -> index within {@link #order}, -1 for cells that are not goals of the room.
+		 */
+		int[] rank;
+
+		/**
+		 * [i] -> moves from the box on {@link #entrance} (the player behind it) to the box on order[i] with order[0..i-1] filled.
+		 */
+		EDirection[][] moves;
+
+		boolean[][] pushing;
+
+		GoalRoom(int entrance, EDirection direction, int[] cells, int goalCount) {
+			this.entrance = entrance;
+			this.direction = direction;
+			this.cells = cells;
+			this.goalCount = goalCount;
+		}
+
+		/**
+		 * Index of the goal to be filled next if the room holds exactly the boxes filled before it, -1 otherwise.
+		 */
+		int packed() {
+			int count = 0;
+			int max = -1;
+			for (int cell : cells) {
+				if (!hasBox(cell)) continue;
+				if (rank[cell] < 0) return -1;
+				++count;
+				max = Math.max(max, rank[cell]);
+			}
+			if (max != count - 1 || count == order.length) return -1;
+			return count;
+		}
+
+		/**
+		 * Pulls boxes out of the filled room, always the one with the shortest way out; the packing order is the reverse.
+		 * @return whether all boxes could be pulled out
+		 */
+		boolean findPackingOrder() {
+			// LOCAL CELLS: the room, its entrance and the cell the player pushes into the entrance from
+			int outside = board.neighbour(entrance, direction.opposite());
+			int[] local = new int[cells.length + 2];
+			int[] index = new int[board.cellCount()];
+			Arrays.fill(index, -1);
+			System.arraycopy(cells, 0, local, 0, cells.length);
+			local[cells.length] = entrance;
+			local[cells.length + 1] = outside;
+			for (int i = 0; i < local.length; ++i) index[local[i]] = i;
+			int size = local.length;
+
+			boolean[] boxes = new boolean[size];
+			List<Integer> goals = new ArrayList<Integer>();
+			for (int i = 0; i < cells.length; ++i) {
+				if (board.isGoal(cells[i])) {
+					boxes[i] = true;
+					goals.add(i);
+				}
+			}
+
+			int[] removal = new int[goals.size()];
+			List<List<int[]>> paths = new ArrayList<List<int[]>>();
+			for (int removed = 0; removed < removal.length; ++removed) {
+				List<int[]> best = null;
+				int bestGoal = -1;
+				for (int goal : goals) {
+					if (!boxes[goal]) continue;
+					List<int[]> path = pullOut(goal, local, index, boxes, size);
+					if (path != null && (best == null || path.size() < best.size())) {
+						best = path;
+						bestGoal = goal;
+					}
+				}
+				if (best == null) return false;
+				boxes[bestGoal] = false;
+				removal[removed] = local[bestGoal];
+				paths.add(best);
+			}
+
+			// PACKING ORDER: the reverse, every pull replayed backwards as a push
+			order = new int[removal.length];
+			moves = new EDirection[removal.length][];
+			pushing = new boolean[removal.length][];
+			rank = new int[board.cellCount()];
+			Arrays.fill(rank, -1);
+			for (int i = 0; i < order.length; ++i) {
+				int removed = order.length - 1 - i;
+				order[i] = removal[removed];
+				rank[order[i]] = i;
+				List<int[]> path = paths.get(removed);
+				moves[i] = new EDirection[path.size()];
+				pushing[i] = new boolean[path.size()];
+				for (int j = 0; j < path.size(); ++j) {
+					int[] step = path.get(path.size() - 1 - j);
+					moves[i][j] = EDirection.forIndex(step[0]).opposite();
+					pushing[i][j] = step[1] != 0;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * BFS over [box, player] from the box on 'goal' (the player next to it) to the box on the entrance (the player outside of it).
+		 * @return [direction index, pull ? 1 : 0] of player moves from the goal out, null if the box cannot be pulled out
+		 */
+		private List<int[]> pullOut(int goal, int[] local, int[] index, boolean[] boxes, int size) {
+			int[] parents = new int[size * size];
+			byte[] actions = new byte[size * size];
+			Arrays.fill(parents, -2);
+			int[] queue = new int[size * size];
+			int head = 0;
+			int tail = 0;
+			int boxLimit = cells.length + 1; // the box stays within the room and the entrance
+			int target = index[entrance] * size + (size - 1);
+
+			for (EDirection dir : EDirection.arrows()) {
+				int player = board.neighbour(local[goal], dir);
+				if (player == BoardPacked.NONE || index[player] < 0 || boxes[index[player]]) continue;
+				int state = goal * size + index[player];
+				if (parents[state] != -2) continue;
+				parents[state] = -1;
+				queue[tail++] = state;
+			}
+
+			while (head < tail) {
+				int state = queue[head++];
+				if (state == target) {
+					List<int[]> path = new ArrayList<int[]>();
+					while (parents[state] != -1) {
+						path.add(0, new int[] { actions[state] & 3, actions[state] >> 2 });
+						state = parents[state];
+					}
+					return path;
+				}
+				int box = state / size;
+				int player = state % size;
+				for (EDirection dir : EDirection.arrows()) {
+					int next = board.neighbour(local[player], dir);
+					if (next == BoardPacked.NONE || index[next] < 0) continue;
+					int to = index[next];
+					if (to == box || (boxes[to] && to != goal)) continue;
+					// STEP
+					int stepped = box * size + to;
+					if (parents[stepped] == -2) {
+						parents[stepped] = state;
+						actions[stepped] = (byte)dir.index;
+						queue[tail++] = stepped;
+					}
+					// PULL: the box right behind the player follows him
+					int behind = board.neighbour(local[player], dir.opposite());
+					if (behind == BoardPacked.NONE || index[behind] != box || player >= boxLimit) continue;
+					int pulled = player * size + to;
+					if (parents[pulled] == -2) {
+						parents[pulled] = state;
+						actions[pulled] = (byte)(dir.index | 4);
+						queue[tail++] = pulled;
+					}
+				}
+			}
+			return null;
+		}
+
+	}
+
+}
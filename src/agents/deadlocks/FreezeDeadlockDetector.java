@@ -0,0 +1,225 @@
+package agents.deadlocks;
+
+import agents.heuristics.PushDistances;
+import game.actions.EDirection;
+import game.actions.compact.CAction;
+import game.actions.compact.CWalkPush;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Dynamic deadlock checks to be run after a box has been moved; only the neighbourhood of the moved box is examined.
+ *
+ * PUSHING ({@link #isDeadlockAfterPush(StatePacked, EDirection)}, {@link #isDeadlockAfterPush(BoardCompact, EDirection)}):
+ * - 2x2 block: the box is part of a 2x2 square of walls and boxes and one of the boxes is not on a goal,
+ * - freeze: the box cannot move along either axis (walls, dead squares on both sides or other frozen boxes) and it or another
+ *   frozen box found on the way is not on a goal.
+ *
+ * PULLING ({@link #isDeadlockAfterPull(StatePacked, EDirection, boolean[])}):
+ * - the box can never be pulled again, because for every direction there is a wall next to it or one tile further,
+ *   and it is not on a target.
+ *
+ * Not thread-safe; use one instance per search thread.
+ */
+public class FreezeDeadlockDetector {
+
+	private final BoardPacked board;
+
+	private final boolean[] deadCells;
+
+	/**
+	 * Boxes on the current recursion path of {@link #isFrozen(int)}; treated as walls to avoid circular checks.
+	 * A box is unmarked once its check returns, so a box found movable never blocks its siblings.
+	 */
+	private final boolean[] onPath;
+
+	private boolean offGoal;
+
+	// ONE OF THESE IS SET FOR THE CURRENT CHECK
+
+	private StatePacked state;
+
+	private BoardCompact compact;
+
+	/**
+	 * @param board
+	 * @param deadCells cells a box can never be pushed to a goal from (may be null)
+	 */
+	public FreezeDeadlockDetector(BoardPacked board, boolean[] deadCells) {
+		this.board = board;
+		this.deadCells = deadCells;
+		this.onPath = new boolean[board.cellCount()];
+	}
+
+	/**
+	 * Detector sharing the level data of 'prototype' with its own working arrays, e.g., for another search thread.
+	 * @param prototype
+	 */
+	public FreezeDeadlockDetector(FreezeDeadlockDetector prototype) {
+		this(prototype.board, prototype.deadCells);
+	}
+
+	/**
+	 * Detector using dead cells derived from {@link PushDistances#forPushing(BoardPacked, int[])} of the level.
+	 * @param board
+	 * @return
+	 */
+	public static FreezeDeadlockDetector create(BoardPacked board) {
+		int[] goals = new int[board.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < board.cellCount(); ++cell) {
+			if (board.isGoal(cell)) goals[index++] = cell;
+		}
+		return new FreezeDeadlockDetector(board, deadCells(PushDistances.forPushing(board, goals)));
+	}
+
+	/**
+	 * Cells from which a box cannot reach any goal according to 'distances'.
+	 * @param distances
+	 * @return
+	 */
+	public static boolean[] deadCells(PushDistances distances) {
+		boolean[] deadCells = new boolean[distances.getBoard().cellCount()];
+		for (int cell = 0; cell < deadCells.length; ++cell) {
+			deadCells[cell] = distances.minDistance(cell) >= PushDistances.INFINITE;
+		}
+		return deadCells;
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	/**
+	 * To be called on the state resulting from a push in 'pushDirection' (the player stands where the box was).
+	 * @param state
+	 * @param pushDirection
+	 * @return
+	 */
+	public boolean isDeadlockAfterPush(StatePacked state, EDirection pushDirection) {
+		this.state = state;
+		this.compact = null;
+		return isDeadlockAt(board.neighbour(state.player(), pushDirection));
+	}
+
+	/**
+	 * To be called on the 'board' after {@link game.actions.compact.CPush} or {@link game.actions.compact.CWalkPush}
+	 * in 'pushDirection' has been performed on it.
+	 * @param board
+	 * @param pushDirection
+	 * @return
+	 */
+	public boolean isDeadlockAfterPush(BoardCompact board, EDirection pushDirection) {
+		this.state = null;
+		this.compact = board;
+		return isDeadlockAt(this.board.cell(board.playerX + pushDirection.dX, board.playerY + pushDirection.dY));
+	}
+
+	/**
+	 * To be called on the 'board' after 'action' has been performed on it; only {@link game.actions.compact.CPush}
+	 * and {@link game.actions.compact.CWalkPush} can create a deadlock.
+	 * @param board
+	 * @param action
+	 * @return
+	 */
+	public boolean isDeadlockAfter(BoardCompact board, CAction action) {
+		switch (action.getType()) {
+		case PUSH:
+			return isDeadlockAfterPush(board, action.getDirection());
+		case WALK_AND_PUSH:
+			return isDeadlockAfterPush(board, ((CWalkPush) action).getPushDirection());
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * To be called on the state resulting from a pull in 'pullDirection' (the box stands where the player was).
+	 * @param state
+	 * @param pullDirection
+	 * @param targets cells the pulled boxes should end at
+	 * @return
+	 */
+	public boolean isDeadlockAfterPull(StatePacked state, EDirection pullDirection, boolean[] targets) {
+		int box = board.neighbour(state.player(), pullDirection.opposite());
+		if (targets[box]) return false;
+		for (EDirection dir : EDirection.arrows()) {
+			int next = board.neighbour(box, dir);
+			if (next != BoardPacked.NONE && board.neighbour(next, dir) != BoardPacked.NONE) return false;
+		}
+		return true;
+	}
+
+	private boolean isDeadlockAt(int box) {
+		return isBlockDeadlock(box) || isFreezeDeadlock(box);
+	}
+
+	// ===========
+	// 2x2 BLOCKS
+	// ===========
+
+	private boolean isBlockDeadlock(int box) {
+		return isBlock(box, EDirection.UP, EDirection.LEFT)
+			|| isBlock(box, EDirection.UP, EDirection.RIGHT)
+			|| isBlock(box, EDirection.DOWN, EDirection.LEFT)
+			|| isBlock(box, EDirection.DOWN, EDirection.RIGHT);
+	}
+
+	private boolean isBlock(int box, EDirection vertical, EDirection horizontal) {
+		int a = board.neighbour(box, vertical);
+		int b = board.neighbour(box, horizontal);
+		int c = board.cell(board.x(box) + horizontal.dX, board.y(box) + vertical.dY);
+		if (!isWallOrBox(a) || !isWallOrBox(b) || !isWallOrBox(c)) return false;
+		return !board.isGoal(box) || isBoxOffGoal(a) || isBoxOffGoal(b) || isBoxOffGoal(c);
+	}
+
+	private boolean isWallOrBox(int cell) {
+		return cell == BoardPacked.NONE || hasBox(cell);
+	}
+
+	private boolean isBoxOffGoal(int cell) {
+		return cell != BoardPacked.NONE && !board.isGoal(cell);
+	}
+
+	// ======
+	// FREEZE
+	// ======
+
+	private boolean isFreezeDeadlock(int box) {
+		offGoal = false;
+		return isFrozen(box) && offGoal;
+	}
+
+	private boolean isFrozen(int box) {
+		onPath[box] = true;
+		boolean offGoalBefore = offGoal;
+		boolean frozen = isBlocked(box, EDirection.LEFT, EDirection.RIGHT) && isBlocked(box, EDirection.UP, EDirection.DOWN);
+		onPath[box] = false;
+		if (!frozen) {
+			// boxes found frozen while examining this one assumed it to be a wall
+			offGoal = offGoalBefore;
+		} else if (!board.isGoal(box)) {
+			offGoal = true;
+		}
+		return frozen;
+	}
+
+	private boolean isBlocked(int box, EDirection one, EDirection other) {
+		int a = board.neighbour(box, one);
+		int b = board.neighbour(box, other);
+		if (a == BoardPacked.NONE || b == BoardPacked.NONE) return true;
+		if (onPath[a] || onPath[b]) return true;
+		if (deadCells != null && deadCells[a] && deadCells[b]) return true;
+		if (hasBox(a) && isFrozen(a)) return true;
+		if (hasBox(b) && isFrozen(b)) return true;
+		return false;
+	}
+
+	private boolean hasBox(int cell) {
+		if (state != null) return state.hasBox(cell);
+		return CTile.isSomeBox(compact.tile(board.x(cell), board.y(cell)));
+	}
+
+}
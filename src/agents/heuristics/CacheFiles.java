@@ -0,0 +1,94 @@
+package agents.heuristics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Files caching per-level data between runs ({@link LevelAnalysis}, {@link PatternDatabase}), each kind within its own directory under {@link #ROOT}.
+ *
+ * Files are written into a temp file of the same directory and then atomically moved over the target, so runs sharing the cache
+ * never read a half-written file; a file that cannot be read (corrupted, truncated or of another format) is treated as missing.
+ */
+final class CacheFiles {
+
+	/**
+	 * "cache" of the working directory unless the "sokoban.cache" system property says otherwise.
+	 */
+	static final File ROOT = new File(System.getProperty("sokoban.cache", "cache"));
+
+	interface IReader {
+
+		/**
+		 * @param input
+		 * @return false if the content does not fit (the file is then treated as missing)
+		 * @throws IOException
+		 */
+		boolean read(DataInputStream input) throws IOException;
+
+	}
+
+	interface IWriter {
+
+		void write(DataOutputStream output) throws IOException;
+
+	}
+
+	private CacheFiles() {
+	}
+
+	/**
+	 * Default directory of a kind of cached data.
+	 * @param name
+	 * @return
+	 */
+	static File directory(String name) {
+		return new File(ROOT, name);
+	}
+
+	/**
+	 * Reads 'file' by 'reader'.
+	 * @param file
+	 * @param reader
+	 * @return false if the file does not exist, cannot be read or 'reader' refuses it
+	 */
+	static boolean read(File file, IReader reader) {
+		if (!file.exists()) return false;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return reader.read(input);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes 'file' by 'writer' via a temp file moved over it.
+	 * @param file
+	 * @param what what the file holds, for the error message
+	 * @param writer
+	 */
+	static void write(File file, String what, IWriter writer) {
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			File temp = File.createTempFile(file.getName() + "-", ".tmp", file.getParentFile());
+			try {
+				try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+					writer.write(output);
+				}
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp.toPath());
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to store the " + what + ": " + file, e);
+		}
+	}
+
+}
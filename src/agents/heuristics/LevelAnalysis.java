@@ -0,0 +1,370 @@
+package agents.heuristics;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+
+/**
+ * Static analysis of a level, which depends on walls and goals only and so is computed once per level:
+ * goals, {@link PushDistances} towards them, dead cells (no goal can be reached by pushing a box from there), tunnels,
+ * rooms (areas connected by tunnels) and articulation points (cells whose blocking splits the level).
+ *
+ * {@link #forLevel(BoardCompact, BoardPacked, File)} stores the analysis into a compact binary file of a cache directory
+ * keyed by {@link BoardCompact#levelHash} (the hash of the level text given by SokReader / S4JLReader), so later runs
+ * (every level of RunSokobanLevels runs in a JVM of its own) load it in milliseconds instead of computing it again.
+ */
+public class LevelAnalysis {
+
+	/**
+	 * "analysis" within the cache root ({@link CacheFiles#ROOT}).
+	 */
+	public static final File DEFAULT_CACHE_DIRECTORY = CacheFiles.directory("analysis");
+
+	/**
+	 * Bits of {@link #tunnel(int)}: walls to the left and right of the cell (vertical tunnel), walls above and below (horizontal one).
+	 */
+	public static final int TUNNEL_VERTICAL = 1;
+
+	public static final int TUNNEL_HORIZONTAL = 2;
+
+	/**
+	 * "LVA" + version of the file format.
+	 */
+	private static final int MAGIC = 0x4C564101;
+
+	private final BoardPacked board;
+
+	private final long levelHash;
+
+	private int[] goals;
+
+	private PushDistances distances;
+
+	private boolean[] deadCells;
+
+	private byte[] tunnels;
+
+	/**
+	 * [cell] -> room id or -1 for tunnel cells.
+	 */
+	private int[] rooms;
+
+	private int roomCount;
+
+	private boolean[] articulations;
+
+	private boolean fromCache;
+
+	/**
+	 * Analysis of the level of 'board' ('packed' being built from it), loaded from 'cacheDirectory' if it has been computed before,
+	 * otherwise computed and stored there. Boards not loaded from level text ({@link BoardCompact#levelHash} is 0) are not cached.
+	 * @param board
+	 * @param packed
+	 * @param cacheDirectory null not to cache
+	 * @return
+	 */
+	public static LevelAnalysis forLevel(BoardCompact board, BoardPacked packed, File cacheDirectory) {
+		LevelAnalysis analysis = new LevelAnalysis(packed, board.levelHash);
+		File file = cacheDirectory == null || board.levelHash == 0 ? null : new File(cacheDirectory, String.format("level-%016x.bin", board.levelHash));
+		if (file != null && CacheFiles.read(file, analysis::load)) {
+			analysis.fromCache = true;
+			return analysis;
+		}
+		analysis.compute();
+		if (file != null) analysis.store(file);
+		return analysis;
+	}
+
+	private LevelAnalysis(BoardPacked board, long levelHash) {
+		this.board = board;
+		this.levelHash = levelHash;
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	/**
+	 * Whether the analysis was loaded from the cache directory rather than computed.
+	 * @return
+	 */
+	public boolean isFromCache() {
+		return fromCache;
+	}
+
+	/**
+	 * Goal cells in ascending order.
+	 * @return
+	 */
+	public int[] goals() {
+		return goals;
+	}
+
+	/**
+	 * Push distances towards {@link #goals()}, as {@link PushDistances#forPushing(BoardPacked, int[])}.
+	 * @return
+	 */
+	public PushDistances distances() {
+		return distances;
+	}
+
+	public boolean isDead(int cell) {
+		return deadCells[cell];
+	}
+
+	/**
+	 * [cell] -> whether a box there can never reach a goal; not to be modified.
+	 * @return
+	 */
+	public boolean[] deadCells() {
+		return deadCells;
+	}
+
+	/**
+	 * Dead squares indexed by [x][y]; walls are dead as well.
+	 * @return
+	 */
+	public boolean[][] deadSquares() {
+		boolean[][] result = new boolean[board.width()][board.height()];
+		for (int x = 0; x < board.width(); ++x) {
+			for (int y = 0; y < board.height(); ++y) {
+				int cell = board.cell(x, y);
+				result[x][y] = cell == BoardPacked.NONE || deadCells[cell];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param cell
+	 * @return combination of {@link #TUNNEL_VERTICAL} and {@link #TUNNEL_HORIZONTAL}, 0 if not a tunnel cell
+	 */
+	public int tunnel(int cell) {
+		return tunnels[cell];
+	}
+
+	/**
+	 * @param cell
+	 * @return id of the room of 'cell' within [0; {@link #roomCount()}) or -1 for tunnel cells
+	 */
+	public int room(int cell) {
+		return rooms[cell];
+	}
+
+	public int roomCount() {
+		return roomCount;
+	}
+
+	/**
+	 * Whether blocking 'cell' (by a box) splits the free cells of the level into several areas.
+	 * @param cell
+	 * @return
+	 */
+	public boolean isArticulation(int cell) {
+		return articulations[cell];
+	}
+
+	// ===========
+	// COMPUTATION
+	// ===========
+
+	private void compute() {
+		int cells = board.cellCount();
+		goals = new int[board.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < cells; ++cell) {
+			if (board.isGoal(cell)) goals[index++] = cell;
+		}
+		distances = PushDistances.forPushing(board, goals);
+		computeDeadCells();
+
+		// TUNNELS
+		tunnels = new byte[cells];
+		for (int cell = 0; cell < cells; ++cell) {
+			if (board.neighbour(cell, EDirection.LEFT) == BoardPacked.NONE && board.neighbour(cell, EDirection.RIGHT) == BoardPacked.NONE) {
+				tunnels[cell] |= TUNNEL_VERTICAL;
+			}
+			if (board.neighbour(cell, EDirection.UP) == BoardPacked.NONE && board.neighbour(cell, EDirection.DOWN) == BoardPacked.NONE) {
+				tunnels[cell] |= TUNNEL_HORIZONTAL;
+			}
+		}
+
+		// ROOMS: areas of non-tunnel cells
+		rooms = new int[cells];
+		Arrays.fill(rooms, -1);
+		roomCount = 0;
+		int[] queue = new int[cells];
+		for (int start = 0; start < cells; ++start) {
+			if (tunnels[start] != 0 || rooms[start] >= 0) continue;
+			int head = 0;
+			int tail = 0;
+			rooms[start] = roomCount;
+			queue[tail++] = start;
+			while (head < tail) {
+				int cell = queue[head++];
+				for (EDirection dir : EDirection.arrows()) {
+					int next = board.neighbour(cell, dir);
+					if (next == BoardPacked.NONE || tunnels[next] != 0 || rooms[next] >= 0) continue;
+					rooms[next] = roomCount;
+					queue[tail++] = next;
+				}
+			}
+			++roomCount;
+		}
+
+		computeArticulations();
+	}
+
+	private void computeDeadCells() {
+		deadCells = new boolean[board.cellCount()];
+		for (int cell = 0; cell < deadCells.length; ++cell) {
+			deadCells[cell] = distances.minDistance(cell) >= PushDistances.INFINITE;
+		}
+	}
+
+	/**
+	 * Tarjan's low-link DFS over the cell graph, iterative (levels may have long corridors).
+	 */
+	private void computeArticulations() {
+		int cells = board.cellCount();
+		articulations = new boolean[cells];
+		int[] order = new int[cells];
+		int[] low = new int[cells];
+		int[] parent = new int[cells];
+		int[] nextDir = new int[cells];
+		int[] stack = new int[cells];
+		Arrays.fill(order, -1);
+		int counter = 0;
+		EDirection[] arrows = EDirection.arrows();
+
+		for (int root = 0; root < cells; ++root) {
+			if (order[root] >= 0) continue;
+			int rootChildren = 0;
+			int top = 0;
+			stack[top++] = root;
+			order[root] = low[root] = counter++;
+			parent[root] = -1;
+			nextDir[root] = 0;
+			while (top > 0) {
+				int cell = stack[top - 1];
+				if (nextDir[cell] < arrows.length) {
+					int next = board.neighbour(cell, arrows[nextDir[cell]++]);
+					if (next == BoardPacked.NONE) continue;
+					if (order[next] < 0) {
+						order[next] = low[next] = counter++;
+						parent[next] = cell;
+						nextDir[next] = 0;
+						stack[top++] = next;
+						if (cell == root) ++rootChildren;
+					} else if (next != parent[cell]) {
+						low[cell] = Math.min(low[cell], order[next]);
+					}
+					continue;
+				}
+				--top;
+				int up = parent[cell];
+				if (up < 0) continue;
+				low[up] = Math.min(low[up], low[cell]);
+				if (up != root && low[cell] >= order[up]) articulations[up] = true;
+			}
+			if (rootChildren > 1) articulations[root] = true;
+		}
+	}
+
+	// =====
+	// CACHE
+	// =====
+
+	private boolean load(DataInputStream input) throws IOException {
+		int cells = board.cellCount();
+		if (input.readInt() != MAGIC || input.readLong() != levelHash) return false;
+		if (input.readShort() != board.width() || input.readShort() != board.height() || input.readInt() != cells) return false;
+
+		int[] goals = new int[input.readShort()];
+		if (goals.length != board.goalCount()) return false;
+		for (int i = 0; i < goals.length; ++i) {
+			goals[i] = input.readShort();
+			if (goals[i] < 0 || goals[i] >= cells || !board.isGoal(goals[i])) return false;
+		}
+
+		// distances fit a byte (255 for infinite) or a short (-1 for infinite)
+		boolean wide = input.readBoolean();
+		int[][] tables = new int[goals.length][cells];
+		for (int[] table : tables) {
+			for (int cell = 0; cell < cells; ++cell) {
+				int value = wide ? input.readShort() : input.readUnsignedByte();
+				table[cell] = value == (wide ? -1 : 255) ? PushDistances.INFINITE : value;
+			}
+		}
+		byte[] sideAreas = new byte[cells * 4];
+		input.readFully(sideAreas);
+
+		byte[] tunnels = new byte[cells];
+		input.readFully(tunnels);
+		int roomCount = input.readShort();
+		int[] rooms = new int[cells];
+		for (int cell = 0; cell < cells; ++cell) rooms[cell] = input.readShort();
+		byte[] bits = new byte[(cells + 7) / 8];
+		input.readFully(bits);
+		boolean[] articulations = new boolean[cells];
+		for (int cell = 0; cell < cells; ++cell) articulations[cell] = (bits[cell >> 3] & (1 << (cell & 7))) != 0;
+
+		this.goals = goals;
+		this.distances = new PushDistances(board, goals, tables, sideAreas);
+		this.tunnels = tunnels;
+		this.roomCount = roomCount;
+		this.rooms = rooms;
+		this.articulations = articulations;
+		computeDeadCells();
+		return true;
+	}
+
+	private void store(File file) {
+		int cells = board.cellCount();
+		int[][] tables = distances.distanceTables();
+		boolean wide = isWide(tables);
+		CacheFiles.write(file, "level analysis", output -> {
+			output.writeInt(MAGIC);
+			output.writeLong(levelHash);
+			output.writeShort(board.width());
+			output.writeShort(board.height());
+			output.writeInt(cells);
+			output.writeShort(goals.length);
+			for (int goal : goals) output.writeShort(goal);
+			output.writeBoolean(wide);
+			for (int[] table : tables) {
+				for (int value : table) {
+					if (wide) output.writeShort(value >= PushDistances.INFINITE ? -1 : value);
+					else output.writeByte(value >= PushDistances.INFINITE ? 255 : value);
+				}
+			}
+			output.write(distances.sideAreas());
+			output.write(tunnels);
+			output.writeShort(roomCount);
+			for (int room : rooms) output.writeShort(room);
+			byte[] bits = new byte[(cells + 7) / 8];
+			for (int cell = 0; cell < cells; ++cell) {
+				if (articulations[cell]) bits[cell >> 3] |= 1 << (cell & 7);
+			}
+			output.write(bits);
+		});
+	}
+
+	/**
+	 * Whether some finite distance does not fit a byte.
+	 */
+	private static boolean isWide(int[][] tables) {
+		for (int[] table : tables) {
+			for (int value : table) {
+				if (value < PushDistances.INFINITE && value >= 255) return true;
+			}
+		}
+		return false;
+	}
+
+}
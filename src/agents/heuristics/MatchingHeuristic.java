@@ -0,0 +1,275 @@
+package agents.heuristics;
+
+import java.util.Arrays;
+
+import game.board.packed.StatePacked;
+
+/**
+ * Admissible heuristic assigning every box its own goal so that the sum of {@link PushDistances} is minimal
+ * (minimum-cost bipartite matching solved by the Hungarian algorithm).
+ * Levels may have more goals than boxes; the matrix is then padded by dummy boxes matching any goal at zero cost,
+ * so it stays square and the incremental updates below stay exact.
+ *
+ * Unlike summing the distances to the nearest goal, boxes competing for the same goal are not all counted as if they could reach it.
+ *
+ * Search should call {@link #rebase(StatePacked)} for the state being expanded (full O(n^3) solve) and then {@link #estimate(StatePacked)}
+ * for its successors: states with the same boxes reuse the base value and states where a single box moved are re-solved
+ * from the base solution by one augmenting path in O(n^2). Any other state is solved from scratch.
+ *
+ * Searches that do not use {@link StatePacked} can pass sorted arrays of box cells instead, see {@link #rebase(int[])}.
+ *
+ * Not thread-safe; use one instance per search thread.
+ */
+public class MatchingHeuristic {
+
+	private static final long INF = Long.MAX_VALUE / 4;
+
+	private final PushDistances distances;
+
+	/**
+	 * Size of the (square) matrix, the number of goals.
+	 */
+	private final int n;
+
+	/**
+	 * Number of real boxes, rows 1..boxCount; the rest are the dummy ones.
+	 */
+	private final int boxCount;
+
+	// BASE SOLUTION (1-based as the rows/cols of the Hungarian algorithm, index 0 is the auxiliary one)
+
+	private final int[] baseCells;
+	private final long[] baseU;
+	private final long[] baseV;
+	private final int[] baseRowOf;
+	private boolean hasBase = false;
+	private int baseValue;
+
+	// WORKING ARRAYS
+
+	private final int[] cells;
+	private final long[] u;
+	private final long[] v;
+	private final int[] rowOf;
+	private final int[] way;
+	private final long[] minV;
+	private final boolean[] used;
+	private int newCell;
+
+	/**
+	 * Boxes of the state passed as {@link StatePacked}.
+	 */
+	private final int[] stateBoxes;
+
+	/**
+	 * @param distances
+	 * @param boxCount number of boxes of the level; if there are more boxes than goals, every estimate is {@link PushDistances#INFINITE}
+	 */
+	public MatchingHeuristic(PushDistances distances, int boxCount) {
+		this.distances = distances;
+		this.n = distances.goals().length;
+		this.boxCount = boxCount;
+		baseCells = new int[n + 1];
+		baseU = new long[n + 1];
+		baseV = new long[n + 1];
+		baseRowOf = new int[n + 1];
+		cells = new int[n + 1];
+		u = new long[n + 1];
+		v = new long[n + 1];
+		rowOf = new int[n + 1];
+		way = new int[n + 1];
+		minV = new long[n + 1];
+		used = new boolean[n + 1];
+		stateBoxes = new int[boxCount];
+	}
+
+	public PushDistances getDistances() {
+		return distances;
+	}
+
+	/**
+	 * Solves 'state' from scratch and remembers it as the base for subsequent {@link #estimate(StatePacked)} calls;
+	 * no-op if the base already has the same boxes.
+	 * @param state
+	 * @return minimal sum of distances or {@link PushDistances#INFINITE} if boxes cannot be matched with goals
+	 */
+	public int rebase(StatePacked state) {
+		return rebase(boxesOf(state));
+	}
+
+	/**
+	 * Same as {@link #rebase(StatePacked)} for boxes given as cells.
+	 * @param boxes cells of all boxes sorted in ascending order
+	 * @return
+	 */
+	public int rebase(int[] boxes) {
+		if (hasBase && changedRow(boxes) == 0) return baseValue;
+		return solve(boxes);
+	}
+
+	private int[] boxesOf(StatePacked state) {
+		for (int i = 0; i < boxCount; ++i) stateBoxes[i] = state.box(i);
+		return stateBoxes;
+	}
+
+	private int solve(int[] boxes) {
+		if (boxCount > n) return PushDistances.INFINITE;
+		for (int i = 1; i <= boxCount; ++i) cells[i] = boxes[i - 1];
+		Arrays.fill(u, 0);
+		Arrays.fill(v, 0);
+		Arrays.fill(rowOf, 0);
+		for (int row = 1; row <= n; ++row) {
+			augment(row);
+		}
+		baseValue = value();
+
+		System.arraycopy(cells, 0, baseCells, 0, n + 1);
+		System.arraycopy(u, 0, baseU, 0, n + 1);
+		System.arraycopy(v, 0, baseV, 0, n + 1);
+		System.arraycopy(rowOf, 0, baseRowOf, 0, n + 1);
+		hasBase = true;
+		return baseValue;
+	}
+
+	/**
+	 * Estimates 'state', incrementally if it differs from the base state in at most one box.
+	 * @param state
+	 * @return minimal sum of distances or {@link PushDistances#INFINITE} if boxes cannot be matched with goals
+	 */
+	public int estimate(StatePacked state) {
+		return estimate(boxesOf(state));
+	}
+
+	/**
+	 * Same as {@link #estimate(StatePacked)} for boxes given as cells.
+	 * @param boxes cells of all boxes sorted in ascending order
+	 * @return
+	 */
+	public int estimate(int[] boxes) {
+		if (!hasBase) return solve(boxes);
+
+		int row = changedRow(boxes);
+		if (row == 0) return baseValue;
+		if (row < 0) return solve(boxes);
+
+		System.arraycopy(baseCells, 0, cells, 0, n + 1);
+		System.arraycopy(baseU, 0, u, 0, n + 1);
+		System.arraycopy(baseV, 0, v, 0, n + 1);
+		System.arraycopy(baseRowOf, 0, rowOf, 0, n + 1);
+
+		// the box of 'row' moved: drop its assignment and restore feasibility of its potential
+		cells[row] = newCell;
+		for (int col = 1; col <= n; ++col) {
+			if (rowOf[col] == row) rowOf[col] = 0;
+		}
+		long min = INF;
+		for (int col = 1; col <= n; ++col) {
+			min = Math.min(min, cost(row, col) - v[col]);
+		}
+		u[row] = min;
+
+		augment(row);
+		return value();
+	}
+
+	/**
+	 * Index of the goal the box at 'cell' is matched with by the base solution (the last {@link #rebase(int[])}).
+	 * @param cell
+	 * @return goal index (see {@link PushDistances#goals()}) or -1 if there is no such box within the base
+	 */
+	public int matchedGoal(int cell) {
+		if (!hasBase) return -1;
+		for (int col = 1; col <= n; ++col) {
+			if (baseRowOf[col] <= boxCount && baseCells[baseRowOf[col]] == cell) return col - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns 0 if 'boxes' are the same as the base, the (1-based) base row of the single moved box (its new cell is stored to {@link #newCell}),
+	 * or -1 if more boxes differ.
+	 */
+	private int changedRow(int[] boxes) {
+		// both the base rows and the boxes of the state are sorted by cells
+		int row = 0;
+		int added = -1;
+		int i = 1;
+		int j = 0;
+		while (i <= boxCount || j < boxCount) {
+			int baseCell = i <= boxCount ? baseCells[i] : Integer.MAX_VALUE;
+			int cell = j < boxCount ? boxes[j] : Integer.MAX_VALUE;
+			if (baseCell == cell) {
+				++i;
+				++j;
+			} else if (baseCell < cell) {
+				if (row != 0) return -1;
+				row = i++;
+			} else {
+				if (added >= 0) return -1;
+				added = cell;
+				++j;
+			}
+		}
+		if (row == 0) return 0;
+		newCell = added;
+		return row;
+	}
+
+	private long cost(int row, int col) {
+		if (row > boxCount) return 0;
+		return distances.distance(col - 1, cells[row]);
+	}
+
+	/**
+	 * Finds the shortest augmenting path for the free 'row' and updates the potentials (e-maxx formulation of the Hungarian algorithm).
+	 */
+	private void augment(int row) {
+		rowOf[0] = row;
+		int col0 = 0;
+		Arrays.fill(minV, INF);
+		Arrays.fill(used, false);
+		do {
+			used[col0] = true;
+			int row0 = rowOf[col0];
+			long delta = INF;
+			int col1 = 0;
+			for (int col = 1; col <= n; ++col) {
+				if (used[col]) continue;
+				long current = cost(row0, col) - u[row0] - v[col];
+				if (current < minV[col]) {
+					minV[col] = current;
+					way[col] = col0;
+				}
+				if (minV[col] < delta) {
+					delta = minV[col];
+					col1 = col;
+				}
+			}
+			for (int col = 0; col <= n; ++col) {
+				if (used[col]) {
+					u[rowOf[col]] += delta;
+					v[col] -= delta;
+				} else {
+					minV[col] -= delta;
+				}
+			}
+			col0 = col1;
+		} while (rowOf[col0] != 0);
+		do {
+			int col1 = way[col0];
+			rowOf[col0] = rowOf[col1];
+			col0 = col1;
+		} while (col0 != 0);
+	}
+
+	private int value() {
+		long sum = 0;
+		for (int col = 1; col <= n; ++col) {
+			long cost = cost(rowOf[col], col);
+			if (cost >= PushDistances.INFINITE) return PushDistances.INFINITE;
+			sum += cost;
+		}
+		return sum >= PushDistances.INFINITE ? PushDistances.INFINITE : (int)sum;
+	}
+
+}
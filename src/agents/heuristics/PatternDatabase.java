@@ -0,0 +1,427 @@
+package agents.heuristics;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import game.CancellationToken;
+import game.actions.EDirection;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Additive pattern database: for every combination of {@link #size()} boxes on live cells (cells a box can be pushed to a goal from),
+ * the number of pushes needed to bring just these boxes onto any of the goals, other boxes ignored.
+ *
+ * The table is built once per level by a retrograde BFS over pulls from all placements of the boxes on goals (with the player
+ * in any of the regions left free), states being the box combination + the top-left cell of the player region.
+ * The entry of a combination is the minimum over player regions, so a lookup needs just the boxes.
+ *
+ * {@link #estimate(StatePacked)} splits the (sorted) boxes of a state into disjoint groups of {@link #size()} boxes and sums their entries;
+ * a push moves a single box, so the sum is admissible. Boxes left over are estimated by {@link PushDistances#minDistance(int)}.
+ * Unlike {@link MatchingHeuristic}, boxes of a group getting in the way of each other are accounted for, so searches should take the max of both.
+ *
+ * Building polls a {@link CancellationToken}, so it can be given just a share of the time budget; a cancelled build yields no table.
+ * Tables depend on walls and goals only; {@link #forLevel(BoardPacked, PushDistances, int, File, CancellationToken)} stores them within a cache directory
+ * keyed by their hash, so later runs over the same levels load them instead of building them again.
+ *
+ * Thread-safe for lookups.
+ */
+public class PatternDatabase {
+
+	public static final int MAX_PATTERN_SIZE = 4;
+
+	/**
+	 * Limit on the number of BFS entries (box combinations x player cells); the pattern size is decreased till it fits.
+	 * The BFS takes a byte per entry and its frontiers up to 4 bytes per entry each.
+	 */
+	public static final long MAX_ENTRIES = 1L << 23;
+
+	/**
+	 * "pdb" within the cache root ({@link CacheFiles#ROOT}).
+	 */
+	public static final File DEFAULT_CACHE_DIRECTORY = CacheFiles.directory("pdb");
+
+	/**
+	 * "PDB" + version of the file format.
+	 */
+	private static final int MAGIC = 0x50444201;
+
+	private static final int UNREACHED = 255;
+
+	/**
+	 * Deepest distance stored; deeper ones are cut to it (which keeps them admissible).
+	 */
+	private static final int MAX_DISTANCE = 254;
+
+	private final BoardPacked board;
+
+	private final PushDistances distances;
+
+	private final int size;
+
+	/**
+	 * [cell] -> index among live cells or -1.
+	 */
+	private final int[] liveIndex;
+
+	private final int[] liveCells;
+
+	/**
+	 * [n][k] -> n choose k.
+	 */
+	private final long[][] binomial;
+
+	/**
+	 * [rank of the box combination] -> pushes or {@link #UNREACHED}.
+	 */
+	private byte[] table;
+
+	private boolean fromCache;
+
+	// BUILDING (flood marks)
+
+	private int[] marks;
+
+	private int mark;
+
+	/**
+	 * Same as {@link #forLevel(BoardPacked, PushDistances, int, File, CancellationToken)}, never cancelled.
+	 * @param board
+	 * @param distances
+	 * @param size
+	 * @param cacheDirectory
+	 * @return
+	 */
+	public static PatternDatabase forLevel(BoardPacked board, PushDistances distances, int size, File cacheDirectory) {
+		return forLevel(board, distances, size, cacheDirectory, CancellationToken.noDeadline());
+	}
+
+	/**
+	 * Pattern database of 'size' boxes (or fewer, see {@link #MAX_ENTRIES}) for the level of 'distances' (see {@link PushDistances#forPushing(BoardPacked, int[])}),
+	 * loaded from 'cacheDirectory' if it has been built before, otherwise built and stored there.
+	 * @param board
+	 * @param distances
+	 * @param size [2; {@link #MAX_PATTERN_SIZE}]
+	 * @param cacheDirectory null not to cache
+	 * @param cancellation polled while building
+	 * @return the database or null if the build was cancelled
+	 */
+	public static PatternDatabase forLevel(BoardPacked board, PushDistances distances, int size, File cacheDirectory, CancellationToken cancellation) {
+		PatternDatabase database = new PatternDatabase(board, distances, size);
+		File file = cacheDirectory == null ? null : new File(cacheDirectory, "pdb-" + database.key() + ".bin");
+		if (file != null && CacheFiles.read(file, database::load)) {
+			database.fromCache = true;
+			return database;
+		}
+		if (!database.build(cancellation)) return null;
+		if (file != null) database.store(file);
+		return database;
+	}
+
+	private PatternDatabase(BoardPacked board, PushDistances distances, int size) {
+		if (size < 2 || size > MAX_PATTERN_SIZE) throw new RuntimeException("Pattern size must be within [2; " + MAX_PATTERN_SIZE + "], got: " + size);
+		this.board = board;
+		this.distances = distances;
+
+		this.liveIndex = new int[board.cellCount()];
+		int live = 0;
+		for (int cell = 0; cell < board.cellCount(); ++cell) {
+			liveIndex[cell] = distances.minDistance(cell) < PushDistances.INFINITE ? live++ : -1;
+		}
+		this.liveCells = new int[live];
+		for (int cell = 0; cell < board.cellCount(); ++cell) {
+			if (liveIndex[cell] >= 0) liveCells[liveIndex[cell]] = cell;
+		}
+
+		this.binomial = new long[live + 1][MAX_PATTERN_SIZE + 1];
+		for (int n = 0; n <= live; ++n) {
+			binomial[n][0] = 1;
+			for (int k = 1; k <= MAX_PATTERN_SIZE && k <= n; ++k) {
+				binomial[n][k] = binomial[n - 1][k - 1] + (k <= n - 1 ? binomial[n - 1][k] : 0);
+			}
+		}
+
+		// as many boxes as fit and as there are goals
+		int fitting = Math.min(size, board.goalCount());
+		while (fitting > 1 && binomial[live][fitting] * board.cellCount() > MAX_ENTRIES) --fitting;
+		this.size = fitting;
+	}
+
+	/**
+	 * Number of boxes per pattern (may be lower than asked for, see {@link #MAX_ENTRIES}); patterns of 1 box are not stored,
+	 * {@link PushDistances} serve them.
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether the table was loaded from the cache directory rather than built.
+	 * @return
+	 */
+	public boolean isFromCache() {
+		return fromCache;
+	}
+
+	/**
+	 * Number of table entries (box combinations).
+	 * @return
+	 */
+	public int entries() {
+		return table == null ? 0 : table.length;
+	}
+
+	/**
+	 * Admissible number of pushes to bring all boxes of 'state' onto goals.
+	 * @param state
+	 * @return pushes or {@link PushDistances#INFINITE} if a group of boxes can never reach goals
+	 */
+	public int estimate(StatePacked state) {
+		int[] boxes = new int[state.boxCount()];
+		for (int i = 0; i < boxes.length; ++i) boxes[i] = state.box(i);
+		return estimate(boxes);
+	}
+
+	/**
+	 * Same as {@link #estimate(StatePacked)}.
+	 * @param boxes box cells in ascending order
+	 * @return
+	 */
+	public int estimate(int[] boxes) {
+		int sum = 0;
+		int i = 0;
+		if (table != null) {
+			for (; i + size <= boxes.length; i += size) {
+				long rank = 0;
+				for (int j = 0; j < size; ++j) {
+					int live = liveIndex[boxes[i + j]];
+					if (live < 0) return PushDistances.INFINITE;
+					rank += binomial[live][j + 1];
+				}
+				int pushes = table[(int)rank] & 0xFF;
+				if (pushes == UNREACHED) return PushDistances.INFINITE;
+				sum += pushes;
+			}
+		}
+		for (; i < boxes.length; ++i) {
+			int pushes = distances.minDistance(boxes[i]);
+			if (pushes >= PushDistances.INFINITE) return PushDistances.INFINITE;
+			sum += pushes;
+		}
+		return sum;
+	}
+
+	// ========
+	// BUILDING
+	// ========
+
+	/**
+	 * @return false if cancelled (no table is built then)
+	 */
+	private boolean build(CancellationToken cancellation) {
+		if (size < 2) return true;
+		int cells = board.cellCount();
+		int combinations = (int)binomial[liveCells.length][size];
+		byte[] visited = new byte[combinations * cells];
+		Arrays.fill(visited, (byte)UNREACHED);
+		marks = new int[cells];
+		mark = 0;
+
+		int[] boxes = new int[size];
+		int[] pulled = new int[size];
+		long polled = 0;
+		boolean[] hasBox = new boolean[cells];
+		int[] flood = new int[cells];
+		int[] current = new int[64];
+		int currentSize = 0;
+
+		// ROOTS: boxes on any 'size' goals, the player within any region left free
+		int[] goals = new int[board.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < cells; ++cell) {
+			if (board.isGoal(cell)) goals[index++] = cell;
+		}
+		int[] subset = new int[size];
+		for (int i = 0; i < size; ++i) subset[i] = i;
+		while (true) {
+			for (int i = 0; i < size; ++i) boxes[i] = goals[subset[i]];
+			long rank = rank(boxes);
+			if (rank >= 0) {
+				for (int box : boxes) hasBox[box] = true;
+				for (int cell = 0; cell < cells; ++cell) {
+					if (hasBox[cell]) continue;
+					int state = (int)(rank * cells + region(cell, hasBox, flood, null));
+					if (visited[state] != (byte)UNREACHED) continue;
+					visited[state] = 0;
+					if (currentSize == current.length) current = Arrays.copyOf(current, currentSize * 2);
+					current[currentSize++] = state;
+				}
+				for (int box : boxes) hasBox[box] = false;
+			}
+			if (!nextSubset(subset, goals.length)) break;
+		}
+
+		// RETROGRADE BFS: the player stands next to a box and steps away from it, pulling it along
+		int[] next = new int[64];
+		int[] reached = new int[cells];
+		for (int depth = 1; currentSize > 0; ++depth) {
+			int nextSize = 0;
+			byte stored = (byte)Math.min(depth, MAX_DISTANCE);
+			for (int s = 0; s < currentSize; ++s) {
+				int state = current[s];
+				if (cancellation.isCancelled(++polled)) {
+					marks = null;
+					return false;
+				}
+				unrank(state / cells, boxes);
+				for (int box : boxes) hasBox[box] = true;
+				int reachedCount = region(state % cells, hasBox, flood, reached);
+				for (int r = 0; r < reachedCount; ++r) {
+					int player = reached[r];
+					for (EDirection dir : EDirection.arrows()) {
+						int box = board.neighbour(player, dir);
+						if (box == BoardPacked.NONE || !hasBox[box]) continue;
+						int to = board.neighbour(player, dir.opposite());
+						if (to == BoardPacked.NONE || hasBox[to] || liveIndex[player] < 0) continue;
+						hasBox[box] = false;
+						hasBox[player] = true;
+						for (int i = 0; i < size; ++i) {
+							pulled[i] = boxes[i] == box ? player : boxes[i];
+						}
+						Arrays.sort(pulled);
+						int successor = (int)(rank(pulled) * cells + region(to, hasBox, flood, null));
+						hasBox[player] = false;
+						hasBox[box] = true;
+						if (visited[successor] != (byte)UNREACHED) continue;
+						visited[successor] = stored;
+						if (nextSize == next.length) next = Arrays.copyOf(next, nextSize * 2);
+						next[nextSize++] = successor;
+					}
+				}
+				for (int box : boxes) hasBox[box] = false;
+			}
+			int[] swap = current;
+			current = next;
+			next = swap;
+			currentSize = nextSize;
+		}
+
+		// TABLE: minimum over player regions
+		table = new byte[combinations];
+		for (int combination = 0; combination < combinations; ++combination) {
+			int best = UNREACHED;
+			for (int player = 0; player < cells; ++player) {
+				best = Math.min(best, visited[combination * cells + player] & 0xFF);
+			}
+			table[combination] = (byte)best;
+		}
+		marks = null;
+		return true;
+	}
+
+	/**
+	 * Floods the region of 'start' avoiding boxes.
+	 * @param reached receives the cells of the region if not null
+	 * @return top-left (lowest) cell of the region, or the number of its cells if 'reached' is given
+	 */
+	private int region(int start, boolean[] hasBox, int[] queue, int[] reached) {
+		++mark;
+		int head = 0;
+		int tail = 0;
+		int lowest = start;
+		marks[start] = mark;
+		queue[tail++] = start;
+		while (head < tail) {
+			int cell = queue[head++];
+			if (cell < lowest) lowest = cell;
+			for (EDirection dir : EDirection.arrows()) {
+				int next = board.neighbour(cell, dir);
+				if (next == BoardPacked.NONE || marks[next] == mark || hasBox[next]) continue;
+				marks[next] = mark;
+				queue[tail++] = next;
+			}
+		}
+		if (reached == null) return lowest;
+		System.arraycopy(queue, 0, reached, 0, tail);
+		return tail;
+	}
+
+	/**
+	 * Rank of the combination of box cells (ascending) in the combinatorial number system of live cells.
+	 * @return rank or -1 if a box is not on a live cell
+	 */
+	private long rank(int[] boxes) {
+		long rank = 0;
+		for (int i = 0; i < boxes.length; ++i) {
+			int live = liveIndex[boxes[i]];
+			if (live < 0) return -1;
+			rank += binomial[live][i + 1];
+		}
+		return rank;
+	}
+
+	private void unrank(long rank, int[] boxes) {
+		int live = liveCells.length - 1;
+		for (int i = boxes.length - 1; i >= 0; --i) {
+			while (binomial[live][i + 1] > rank) --live;
+			rank -= binomial[live][i + 1];
+			boxes[i] = liveCells[live];
+			--live;
+		}
+	}
+
+	private static boolean nextSubset(int[] subset, int n) {
+		int i = subset.length - 1;
+		while (i >= 0 && subset[i] == n - subset.length + i) --i;
+		if (i < 0) return false;
+		++subset[i];
+		for (int j = i + 1; j < subset.length; ++j) subset[j] = subset[j - 1] + 1;
+		return true;
+	}
+
+	// =====
+	// CACHE
+	// =====
+
+	/**
+	 * Hash of walls, goals and the pattern size (FNV-1a, 64 bits) as a hex string.
+	 * @return
+	 */
+	public String key() {
+		long hash = 0xcbf29ce484222325L;
+		int[] values = new int[] { board.width(), board.height(), size };
+		for (int value : values) hash = (hash ^ value) * 0x100000001b3L;
+		for (int y = 0; y < board.height(); ++y) {
+			for (int x = 0; x < board.width(); ++x) {
+				int cell = board.cell(x, y);
+				int value = cell == BoardPacked.NONE ? 0 : (board.isGoal(cell) ? 2 : 1);
+				hash = (hash ^ value) * 0x100000001b3L;
+			}
+		}
+		return String.format("%016x", hash);
+	}
+
+	private boolean load(DataInputStream input) throws IOException {
+		if (input.readInt() != MAGIC || input.readInt() != size || input.readInt() != liveCells.length) return false;
+		int length = input.readInt();
+		if (length != (size < 2 ? 0 : binomial[liveCells.length][size])) return false;
+		byte[] loaded = new byte[length];
+		input.readFully(loaded);
+		table = length == 0 ? null : loaded;
+		return true;
+	}
+
+	private void store(File file) {
+		CacheFiles.write(file, "pattern database", output -> {
+			output.writeInt(MAGIC);
+			output.writeInt(size);
+			output.writeInt(liveCells.length);
+			output.writeInt(table == null ? 0 : table.length);
+			if (table != null) output.write(table);
+		});
+	}
+
+}
@@ -0,0 +1,254 @@
+package agents.heuristics;
+
+import java.util.Arrays;
+
+import game.actions.EDirection;
+import game.board.packed.BoardPacked;
+
+/**
+ * Per-goal tables of the number of pushes (or pulls) needed to bring a single box from any cell onto the goal, computed once per level.
+ *
+ * Other boxes are ignored, walls and the side of the box the player has to stand on are respected: the player may only change sides
+ * of a box if he can walk around it. Distances are therefore admissible estimates; {@link #INFINITE} marks cells
+ * from which the box can never reach the goal.
+ *
+ * Use {@link #forPushing(BoardPacked, int[])} for forward (pushing) search and {@link #forPulling(BoardPacked, int[])} for reverse (pulling) search.
+ */
+public class PushDistances {
+
+	public static final int INFINITE = Integer.MAX_VALUE / 4;
+
+	private final BoardPacked board;
+
+	private final int[] goals;
+
+	/**
+	 * [goal index][cell] -> number of pushes/pulls
+	 */
+	private final int[][] distances;
+
+	/**
+	 * [cell] -> minimum over all goals
+	 */
+	private final int[] minDistances;
+
+	/**
+	 * [cell * 4 + side] -> id of the area the neighbour of the cell at 'side' belongs to when the cell is blocked by a box
+	 */
+	private final byte[] sideAreas;
+
+	/**
+	 * Distances for boxes being pushed onto 'goals'.
+	 * @param board
+	 * @param goals
+	 * @return
+	 */
+	public static PushDistances forPushing(BoardPacked board, int[] goals) {
+		return new PushDistances(board, goals, true);
+	}
+
+	/**
+	 * Distances for boxes being pulled onto 'goals'.
+	 * @param board
+	 * @param goals
+	 * @return
+	 */
+	public static PushDistances forPulling(BoardPacked board, int[] goals) {
+		return new PushDistances(board, goals, false);
+	}
+
+	private PushDistances(BoardPacked board, int[] goals, boolean pushing) {
+		this.board = board;
+		this.goals = goals.clone();
+		this.sideAreas = computeSideAreas(board);
+		this.distances = new int[goals.length][];
+		this.minDistances = new int[board.cellCount()];
+		Arrays.fill(minDistances, INFINITE);
+
+		int[] queue = new int[board.cellCount() * 4];
+		for (int i = 0; i < goals.length; ++i) {
+			distances[i] = computeDistances(goals[i], pushing, queue);
+			for (int cell = 0; cell < minDistances.length; ++cell) {
+				minDistances[cell] = Math.min(minDistances[cell], distances[i][cell]);
+			}
+		}
+	}
+
+	/**
+	 * Distances restored from tables computed before ({@link #distanceTables()}, {@link #sideAreas()}), see {@link LevelAnalysis}.
+	 */
+	PushDistances(BoardPacked board, int[] goals, int[][] distances, byte[] sideAreas) {
+		this.board = board;
+		this.goals = goals.clone();
+		this.sideAreas = sideAreas;
+		this.distances = distances;
+		this.minDistances = new int[board.cellCount()];
+		Arrays.fill(minDistances, INFINITE);
+		for (int i = 0; i < goals.length; ++i) {
+			for (int cell = 0; cell < minDistances.length; ++cell) {
+				minDistances[cell] = Math.min(minDistances[cell], distances[i][cell]);
+			}
+		}
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	/**
+	 * Goal cells in the order used by {@link #distance(int, int)}.
+	 * @return
+	 */
+	public int[] goals() {
+		return goals;
+	}
+
+	/**
+	 * Pushes (pulls) needed to bring the box from 'cell' onto the 'goalIndex'-th goal.
+	 * @param goalIndex
+	 * @param cell
+	 * @return
+	 */
+	public int distance(int goalIndex, int cell) {
+		return distances[goalIndex][cell];
+	}
+
+	/**
+	 * Pushes (pulls) needed to bring the box from 'cell' onto the nearest goal.
+	 * @param cell
+	 * @return
+	 */
+	public int minDistance(int cell) {
+		return minDistances[cell];
+	}
+
+	/**
+	 * [goal index][cell] -> distance; not to be modified.
+	 */
+	int[][] distanceTables() {
+		return distances;
+	}
+
+	/**
+	 * [cell * 4 + side] -> area id, see {@link #sidesConnected(int, EDirection, EDirection)}; not to be modified.
+	 */
+	byte[] sideAreas() {
+		return sideAreas;
+	}
+
+	/**
+	 * Can the player walk from 'fromSide' of 'cell' to its 'toSide' while there is a box at 'cell' (other boxes ignored)?
+	 * @param cell
+	 * @param fromSide
+	 * @param toSide
+	 * @return
+	 */
+	public boolean sidesConnected(int cell, EDirection fromSide, EDirection toSide) {
+		byte from = sideAreas[cell * 4 + fromSide.index];
+		return from >= 0 && from == sideAreas[cell * 4 + toSide.index];
+	}
+
+	/**
+	 * BFS over [box cell, player side] states starting with the box at 'goal' going backwards, i.e.,
+	 * pulling when computing distances for pushing and vice versa.
+	 */
+	private int[] computeDistances(int goal, boolean pushing, int[] queue) {
+		int[] stateDistances = new int[board.cellCount() * 4];
+		Arrays.fill(stateDistances, INFINITE);
+
+		int head = 0;
+		int tail = 0;
+		for (EDirection side : EDirection.arrows()) {
+			if (board.neighbour(goal, side) == BoardPacked.NONE) continue;
+			tail = reach(goal, side, 0, stateDistances, queue, tail);
+		}
+
+		while (head < tail) {
+			int state = queue[head++];
+			int cell = state >> 2;
+			EDirection side = EDirection.forIndex(state & 3);
+			int playerCell = board.neighbour(cell, side);
+			int next;
+			if (pushing) {
+				// reverse push == pull: the player steps away from the box dragging it along
+				if (board.neighbour(playerCell, side) == BoardPacked.NONE) continue;
+				next = playerCell;
+			} else {
+				// reverse pull == push: the box moves away from the player
+				next = board.neighbour(cell, side.opposite());
+				if (next == BoardPacked.NONE) continue;
+			}
+			if (stateDistances[next * 4 + side.index] != INFINITE) continue;
+			tail = reach(next, side, stateDistances[state] + 1, stateDistances, queue, tail);
+		}
+
+		int[] result = new int[board.cellCount()];
+		for (int cell = 0; cell < result.length; ++cell) {
+			int min = INFINITE;
+			for (int side = 0; side < 4; ++side) {
+				min = Math.min(min, stateDistances[cell * 4 + side]);
+			}
+			result[cell] = min;
+		}
+		return result;
+	}
+
+	/**
+	 * Marks the player at 'side' of the box at 'cell' and all sides he can walk to as reached at 'distance'.
+	 */
+	private int reach(int cell, EDirection side, int distance, int[] stateDistances, int[] queue, int tail) {
+		for (EDirection other : EDirection.arrows()) {
+			int state = cell * 4 + other.index;
+			if (stateDistances[state] != INFINITE) continue;
+			if (other != side && !sidesConnected(cell, side, other)) continue;
+			stateDistances[state] = distance;
+			queue[tail++] = state;
+		}
+		return tail;
+	}
+
+	private static byte[] computeSideAreas(BoardPacked board) {
+		byte[] result = new byte[board.cellCount() * 4];
+		Arrays.fill(result, (byte)-1);
+
+		int[] stamp = new int[board.cellCount()];
+		int[] queue = new int[board.cellCount()];
+		int generation = 0;
+
+		for (int cell = 0; cell < board.cellCount(); ++cell) {
+			byte area = 0;
+			for (EDirection side : EDirection.arrows()) {
+				int start = board.neighbour(cell, side);
+				if (start == BoardPacked.NONE || result[cell * 4 + side.index] >= 0) continue;
+
+				// flood fill from 'start' with 'cell' blocked
+				++generation;
+				stamp[cell] = generation;
+				stamp[start] = generation;
+				int head = 0;
+				int tail = 0;
+				queue[tail++] = start;
+				while (head < tail) {
+					int current = queue[head++];
+					for (EDirection dir : EDirection.arrows()) {
+						int next = board.neighbour(current, dir);
+						if (next == BoardPacked.NONE || stamp[next] == generation) continue;
+						stamp[next] = generation;
+						queue[tail++] = next;
+					}
+				}
+
+				for (EDirection other : EDirection.arrows()) {
+					int neighbour = board.neighbour(cell, other);
+					if (neighbour != BoardPacked.NONE && neighbour != cell && stamp[neighbour] == generation
+							&& result[cell * 4 + other.index] < 0) {
+						result[cell * 4 + other.index] = area;
+					}
+				}
+				++area;
+			}
+		}
+		return result;
+	}
+
+}
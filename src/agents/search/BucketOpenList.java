@@ -0,0 +1,158 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * {@link IOpenList} for small non-negative integer f-values (as in Sokoban, where f counts moves or pushes): an array of buckets
+ * indexed by f, every bucket being an int stack (or an array of them indexed by the tie-break value), so add and poll take O(1)
+ * amortized instead of the O(log n) of a binary heap and nodes are stored as plain ints.
+ *
+ * Within a single f, nodes are polled either in the LIFO order ({@link ETieBreak#LIFO}), which makes the search go deeper among
+ * equally good nodes, or by the lowest tie-break value first (LIFO among equal ones, {@link ETieBreak#LOWEST}); pass h as the tie-break
+ * to prefer nodes closer to the goal.
+ */
+public class BucketOpenList implements IOpenList {
+
+	public enum ETieBreak {
+		LIFO,
+		LOWEST
+	}
+
+	private static final int INITIAL_BUCKETS = 64;
+
+	private final ETieBreak tieBreak;
+
+	/**
+	 * [f] -> bucket of nodes; null if no node of such f was ever added.
+	 */
+	private Bucket[] buckets = new Bucket[INITIAL_BUCKETS];
+
+	/**
+	 * No node has f lower than this one.
+	 */
+	private int minF = Integer.MAX_VALUE;
+
+	private long size;
+
+	public BucketOpenList(ETieBreak tieBreak) {
+		this.tieBreak = tieBreak;
+	}
+
+	public ETieBreak getTieBreak() {
+		return tieBreak;
+	}
+
+	@Override
+	public void add(int node, int f, int tieBreak) {
+		if (f < 0) throw new RuntimeException("f must not be negative, got: " + f);
+		if (f >= buckets.length) {
+			buckets = Arrays.copyOf(buckets, Math.max(buckets.length * 2, f + 1));
+		}
+		Bucket bucket = buckets[f];
+		if (bucket == null) {
+			bucket = buckets[f] = new Bucket();
+		}
+		bucket.add(node, this.tieBreak == ETieBreak.LIFO ? 0 : tieBreak);
+		++size;
+		if (f < minF) minF = f;
+	}
+
+	@Override
+	public int poll() {
+		if (size == 0) return NONE;
+		int node = buckets[minF()].poll();
+		--size;
+		return node;
+	}
+
+	@Override
+	public int minF() {
+		if (size == 0) return Integer.MAX_VALUE;
+		while (buckets[minF] == null || buckets[minF].size == 0) ++minF;
+		return minF;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		for (Bucket bucket : buckets) {
+			if (bucket != null) bucket.clear();
+		}
+		minF = Integer.MAX_VALUE;
+		size = 0;
+	}
+
+	// ======
+	// BUCKET
+	// ======
+
+	/**
+	 * Nodes of the same f; stacks indexed by the tie-break value.
+	 */
+	private static class Bucket {
+
+		private IntStack[] stacks = new IntStack[1];
+
+		private int minTieBreak = Integer.MAX_VALUE;
+
+		private int size;
+
+		void add(int node, int tieBreak) {
+			if (tieBreak < 0) throw new RuntimeException("Tie-break must not be negative, got: " + tieBreak);
+			if (tieBreak >= stacks.length) {
+				stacks = Arrays.copyOf(stacks, Math.max(stacks.length * 2, tieBreak + 1));
+			}
+			IntStack stack = stacks[tieBreak];
+			if (stack == null) {
+				stack = stacks[tieBreak] = new IntStack();
+			}
+			stack.push(node);
+			++size;
+			if (tieBreak < minTieBreak) minTieBreak = tieBreak;
+		}
+
+		int poll() {
+			while (stacks[minTieBreak] == null || stacks[minTieBreak].size == 0) ++minTieBreak;
+			--size;
+			int node = stacks[minTieBreak].pop();
+			if (size == 0) minTieBreak = Integer.MAX_VALUE;
+			return node;
+		}
+
+		void clear() {
+			for (IntStack stack : stacks) {
+				if (stack != null) stack.size = 0;
+			}
+			minTieBreak = Integer.MAX_VALUE;
+			size = 0;
+		}
+
+	}
+
+	private static class IntStack {
+
+		private int[] items = new int[16];
+
+		private int size;
+
+		void push(int item) {
+			if (size == items.length) items = Arrays.copyOf(items, size * 2);
+			items[size++] = item;
+		}
+
+		int pop() {
+			return items[--size];
+		}
+
+	}
+
+}
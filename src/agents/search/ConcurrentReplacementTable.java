@@ -0,0 +1,79 @@
+package agents.search;
+
+/**
+ * Thread-safe {@link ReplacementTable}: the keys are split among {@link #STRIPES} independent tables (by high bits of the key),
+ * each guarded by its own lock, so threads rarely wait for each other and no state object nor boxed g is allocated per visit.
+ *
+ * Replacement works per stripe exactly as within {@link ReplacementTable}; {@link #nextIteration()} and {@link #clear()}
+ * must not run concurrently with {@link #visit(long, int)}, i.e., they are meant to be called between parallel iterations.
+ */
+public class ConcurrentReplacementTable {
+
+	public static final int STRIPES = 64;
+
+	private static final int STRIPE_SHIFT = 64 - Integer.numberOfTrailingZeros(STRIPES);
+
+	private final ReplacementTable[] stripes = new ReplacementTable[STRIPES];
+
+	/**
+	 * @param slots number of slots of all stripes together
+	 */
+	public ConcurrentReplacementTable(int slots) {
+		for (int i = 0; i < STRIPES; ++i) {
+			stripes[i] = new ReplacementTable(slots / STRIPES);
+		}
+	}
+
+	/**
+	 * Table taking at most 'bytes' of heap.
+	 * @param bytes
+	 * @return
+	 */
+	public static ConcurrentReplacementTable forBudget(long bytes) {
+		return new ConcurrentReplacementTable((int)Math.min(1 << 30, Math.max(STRIPES * ReplacementTable.BUCKET_SIZE, bytes / ReplacementTable.BYTES_PER_SLOT)));
+	}
+
+	public int capacity() {
+		int capacity = 0;
+		for (ReplacementTable stripe : stripes) capacity += stripe.capacity();
+		return capacity;
+	}
+
+	/**
+	 * Number of occupied slots.
+	 */
+	public long size() {
+		long size = 0;
+		for (ReplacementTable stripe : stripes) {
+			synchronized(stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * See {@link ReplacementTable#nextIteration()}.
+	 */
+	public void nextIteration() {
+		for (ReplacementTable stripe : stripes) stripe.nextIteration();
+	}
+
+	/**
+	 * See {@link ReplacementTable#visit(long, int)}.
+	 * @param key
+	 * @param g
+	 * @return whether the state should be searched
+	 */
+	public boolean visit(long key, int g) {
+		ReplacementTable stripe = stripes[(int)(key >>> STRIPE_SHIFT)];
+		synchronized(stripe) {
+			return stripe.visit(key, g);
+		}
+	}
+
+	public void clear() {
+		for (ReplacementTable stripe : stripes) stripe.clear();
+	}
+
+}
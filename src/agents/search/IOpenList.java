@@ -0,0 +1,40 @@
+package agents.search;
+
+/**
+ * Open list (frontier) of a best-first search holding search nodes identified by int indices (e.g., into a node pool),
+ * polled in the order of increasing f.
+ */
+public interface IOpenList {
+
+	/**
+	 * Returned by {@link #poll()} if the list is empty.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * Adds 'node' with cost 'f'; nodes of the same f are ordered by 'tieBreak' (lower first) if the implementation supports it.
+	 * @param node
+	 * @param f
+	 * @param tieBreak
+	 */
+	public void add(int node, int f, int tieBreak);
+
+	/**
+	 * Removes the node with the lowest f.
+	 * @return the node or {@link #NONE}
+	 */
+	public int poll();
+
+	/**
+	 * Lowest f of nodes within the list or {@link Integer#MAX_VALUE} if the list is empty.
+	 * @return
+	 */
+	public int minF();
+
+	public boolean isEmpty();
+
+	public long size();
+
+	public void clear();
+
+}
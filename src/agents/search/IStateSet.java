@@ -0,0 +1,38 @@
+package agents.search;
+
+import game.board.packed.StatePacked;
+
+/**
+ * Set of already visited {@link StatePacked} states (closed set) of a search.
+ */
+public interface IStateSet extends AutoCloseable {
+
+	/**
+	 * Adds 'state' into the set.
+	 * @param state
+	 * @return false if the state was already present
+	 */
+	public boolean add(StatePacked state);
+
+	public boolean contains(StatePacked state);
+
+	/**
+	 * Number of states stored.
+	 * @return
+	 */
+	public long size();
+
+	/**
+	 * Ratio of occupied slots to all slots of the underlying storage.
+	 * @return
+	 */
+	public double loadFactor();
+
+	/**
+	 * Releases resources held outside of the JVM heap (files, mappings), if any; the set must not be used afterwards.
+	 */
+	@Override
+	public default void close() {
+	}
+
+}
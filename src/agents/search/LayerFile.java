@@ -0,0 +1,298 @@
+package agents.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * File of records of {@link #words} longs each, written in ascending (lexicographic, signed) order and streamed through
+ * a {@link FileChannel} in blocks of {@link #BLOCK_BYTES}.
+ *
+ * Records are delta-compressed against the previous one: the index of the first word that differs (varint), the difference
+ * of that word (varint, positive as records ascend) and the remaining words (varints). Sorted neighbouring states share most
+ * of their words, so a record mostly takes a few bytes. Words must not be negative.
+ */
+public class LayerFile {
+
+	public static final int BLOCK_BYTES = 1 << 16;
+
+	/**
+	 * Ranges of at most this many records are sorted by insertion by {@link #sort(long[], int, int)}.
+	 */
+	private static final int INSERTION_SORT = 16;
+
+	private final File file;
+
+	private final int words;
+
+	private long records;
+
+	public LayerFile(File file, int words) {
+		this.file = file;
+		this.words = words;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int words() {
+		return words;
+	}
+
+	/**
+	 * Number of records written by the last {@link #writer()}.
+	 * @return
+	 */
+	public long records() {
+		return records;
+	}
+
+	public long bytes() {
+		return file.length();
+	}
+
+	public Writer writer() {
+		records = 0;
+		return new Writer();
+	}
+
+	public Reader reader() {
+		return new Reader();
+	}
+
+	public void delete() {
+		if (!file.delete() && file.exists()) {
+			throw new RuntimeException("Failed to delete the layer file: " + file);
+		}
+	}
+
+	/**
+	 * Compares records of 'words' longs stored within 'a' at 'aOffset' and 'b' at 'bOffset'.
+	 * @param a
+	 * @param aOffset
+	 * @param b
+	 * @param bOffset
+	 * @param words
+	 * @return
+	 */
+	public static int compare(long[] a, int aOffset, long[] b, int bOffset, int words) {
+		for (int i = 0; i < words; ++i) {
+			int result = Long.compare(a[aOffset + i], b[bOffset + i]);
+			if (result != 0) return result;
+		}
+		return 0;
+	}
+
+	/**
+	 * Sorts the first 'count' records of 'words' longs stored within 'records' in place (as {@link #compare(long[], int, long[], int, int)});
+	 * rows are swapped within the array, nothing is allocated but a pivot record.
+	 * @param records
+	 * @param count
+	 * @param words
+	 */
+	public static void sort(long[] records, int count, int words) {
+		if (words == 1) {
+			Arrays.sort(records, 0, count);
+			return;
+		}
+		sort(records, 0, count - 1, words, new long[words]);
+	}
+
+	/**
+	 * Quicksort of records [low; high], median of three pivots; recurses into the smaller part only, so the stack stays logarithmic.
+	 */
+	private static void sort(long[] records, int low, int high, int words, long[] pivot) {
+		while (high - low >= INSERTION_SORT) {
+			int middle = (low + high) >>> 1;
+			if (compare(records, middle * words, records, low * words, words) < 0) swap(records, middle, low, words);
+			if (compare(records, high * words, records, low * words, words) < 0) swap(records, high, low, words);
+			if (compare(records, high * words, records, middle * words, words) < 0) swap(records, high, middle, words);
+			System.arraycopy(records, middle * words, pivot, 0, words);
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compare(records, i * words, pivot, 0, words) < 0) ++i;
+				while (compare(records, j * words, pivot, 0, words) > 0) --j;
+				if (i <= j) swap(records, i++, j--, words);
+			}
+			if (j - low < high - i) {
+				sort(records, low, j, words, pivot);
+				low = i;
+			} else {
+				sort(records, i, high, words, pivot);
+				high = j;
+			}
+		}
+		for (int i = low + 1; i <= high; ++i) {
+			for (int j = i; j > low && compare(records, j * words, records, (j - 1) * words, words) < 0; --j) swap(records, j, j - 1, words);
+		}
+	}
+
+	private static void swap(long[] records, int a, int b, int words) {
+		for (int i = 0, x = a * words, y = b * words; i < words; ++i, ++x, ++y) {
+			long swap = records[x];
+			records[x] = records[y];
+			records[y] = swap;
+		}
+	}
+
+	// ======
+	// WRITER
+	// ======
+
+	public class Writer implements AutoCloseable {
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+
+		private final long[] previous = new long[words];
+
+		private boolean first = true;
+
+		private Writer() {
+			try {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to open the layer file for writing: " + file, e);
+			}
+		}
+
+		/**
+		 * Appends the record at 'offset' of 'record'; it must be greater than the previous one.
+		 * @param record
+		 * @param offset
+		 */
+		public void write(long[] record, int offset) {
+			if (buffer.remaining() < 10 * (words + 1)) flush();
+			int differs = 0;
+			if (!first) {
+				while (differs < words && record[offset + differs] == previous[differs]) ++differs;
+				if (differs == words || record[offset + differs] < previous[differs]) {
+					throw new RuntimeException("Records of the layer file must be written in ascending order: " + file);
+				}
+			}
+			putVarint(differs);
+			putVarint(record[offset + differs] - (first ? 0 : previous[differs]));
+			for (int i = differs + 1; i < words; ++i) putVarint(record[offset + i]);
+			System.arraycopy(record, offset, previous, 0, words);
+			first = false;
+			++records;
+		}
+
+		private void putVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				buffer.put((byte)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte)value);
+		}
+
+		private void flush() {
+			buffer.flip();
+			try {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to write the layer file: " + file, e);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() {
+			flush();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to close the layer file: " + file, e);
+			}
+		}
+
+	}
+
+	// ======
+	// READER
+	// ======
+
+	public class Reader implements AutoCloseable {
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+
+		private final long[] current = new long[words];
+
+		private boolean eof;
+
+		private Reader() {
+			try {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to open the layer file for reading: " + file, e);
+			}
+			buffer.flip();
+		}
+
+		/**
+		 * Reads the next record into {@link #current()}.
+		 * @return false if there are no more records
+		 */
+		public boolean next() {
+			if (buffer.remaining() < 10 * (words + 1) && !eof) fill();
+			if (!buffer.hasRemaining()) return false;
+			int differs = (int)getVarint();
+			current[differs] += getVarint();
+			for (int i = differs + 1; i < words; ++i) current[i] = getVarint();
+			return true;
+		}
+
+		/**
+		 * The record read by the last {@link #next()}; overwritten by the next one.
+		 * @return
+		 */
+		public long[] current() {
+			return current;
+		}
+
+		private long getVarint() {
+			long value = 0;
+			int shift = 0;
+			while (true) {
+				byte b = buffer.get();
+				value |= (long)(b & 0x7F) << shift;
+				if (b >= 0) return value;
+				shift += 7;
+			}
+		}
+
+		private void fill() {
+			buffer.compact();
+			try {
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer) < 0) {
+						eof = true;
+						break;
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to read the layer file: " + file, e);
+			}
+			buffer.flip();
+		}
+
+		@Override
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to close the layer file: " + file, e);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,305 @@
+package agents.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import game.board.packed.StatePacked;
+
+/**
+ * Off-heap {@link IStateSet}: an open-addressing (linear probing) table of slots stored within a file of a temp directory
+ * mapped into memory by {@link FileChannel#map(FileChannel.MapMode, long, long)}, so the states take no JVM heap and the GC never walks them;
+ * once the table outgrows physical RAM, the OS pages the cold parts of it out to the disk instead of the JVM running out of memory.
+ *
+ * Every slot is the 64-bit {@link StatePacked#key()} followed by the packed state ({@link StatePacked#length()} shorts) to tell apart states
+ * with colliding keys. The file is mapped in segments of at most {@link #SEGMENT_BYTES} (a single mapping cannot exceed 2 GB),
+ * slots never cross segments.
+ *
+ * Once {@link #MAX_LOAD} is exceeded, the table continues within a new file twice as large; the old slots are then migrated in chunks
+ * of {@link #MIGRATION_CHUNK} during subsequent {@link #add(StatePacked)} calls (as within {@link TranspositionTable}), so a resize never stalls
+ * the search on rehashing the whole file.
+ *
+ * The old file is deleted once migrated; where a file still mapped cannot be deleted (Windows, till its buffers are garbage collected),
+ * it is left for {@link #close()}. That deletes the files and the directory, anything
+ * that cannot be deleted yet is deleted on JVM exit; mapped memory itself is released as soon as the buffers are garbage collected.
+ */
+public class MappedStateSet implements IStateSet {
+
+	public static final long DEFAULT_CAPACITY = 1 << 20;
+
+	public static final double MAX_LOAD = 0.5;
+
+	private static final int SEGMENT_BYTES = 1 << 30;
+
+	private static final int MIGRATION_CHUNK = 64;
+
+	private final int stateLength;
+
+	/**
+	 * Bytes per slot: key (8) + state (2 per short).
+	 */
+	private final int slotBytes;
+
+	private final Path directory;
+
+	private final short[] buffer;
+
+	private Slots slots;
+
+	/**
+	 * Table being migrated into {@link #slots}; null if no resize is in progress.
+	 */
+	private Slots old;
+
+	private long migrated;
+
+	/**
+	 * Files of former tables that could not be deleted yet.
+	 */
+	private final List<File> retired = new ArrayList<File>();
+
+	private long size;
+
+	private int files;
+
+	/**
+	 * Table within a new temp directory of 'parent'.
+	 * @param capacity initial number of slots, rounded up to the power of 2
+	 * @param stateLength {@link StatePacked#length()} of stored states
+	 * @param parent where to create the temp directory; null for the default temp directory (java.io.tmpdir)
+	 */
+	public MappedStateSet(long capacity, int stateLength, File parent) {
+		this.stateLength = stateLength;
+		this.slotBytes = 8 + 2 * stateLength;
+		this.buffer = new short[stateLength];
+		try {
+			this.directory = parent == null ? Files.createTempDirectory("sokoban-visited") : Files.createTempDirectory(parent.toPath(), "sokoban-visited");
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create the directory for the off-heap closed set.", e);
+		}
+		this.slots = new Slots(Math.max(16, Long.highestOneBit(Math.max(1, capacity - 1)) << 1));
+	}
+
+	public MappedStateSet(int stateLength) {
+		this(DEFAULT_CAPACITY, stateLength, null);
+	}
+
+	@Override
+	public boolean add(StatePacked state) {
+		long key = OpenAddressing.keyOf(state);
+		if (old != null) {
+			if (old.find(key, state) >= 0) return false;
+			migrate();
+		}
+		long slot = slots.find(key, state);
+		if (slot >= 0) return false;
+		slots.put(-slot - 1, key, state);
+		++size;
+		if (old == null && slots.used > slots.capacity * MAX_LOAD) {
+			grow();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(StatePacked state) {
+		long key = OpenAddressing.keyOf(state);
+		if (slots.find(key, state) >= 0) return true;
+		return old != null && old.find(key, state) >= 0;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public double loadFactor() {
+		return (double)slots.used / slots.capacity;
+	}
+
+	public long capacity() {
+		return slots.capacity;
+	}
+
+	/**
+	 * Directory holding the table file.
+	 * @return
+	 */
+	public File getDirectory() {
+		return directory.toFile();
+	}
+
+	/**
+	 * Deletes the table files and their directory, or marks them to be deleted on JVM exit if still mapped; the set must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (slots == null) return;
+		retired.add(slots.file);
+		if (old != null) retired.add(old.file);
+		slots = null;
+		old = null;
+		List<File> left = new ArrayList<File>();
+		for (File file : retired) {
+			if (!file.delete() && file.exists()) left.add(file);
+		}
+		retired.clear();
+		if (left.isEmpty()) {
+			try {
+				Files.deleteIfExists(directory);
+				return;
+			} catch (IOException e) {
+				// not empty or locked, leave it to the JVM exit
+			}
+		}
+		// deleted in the reverse order: files first, the directory last
+		directory.toFile().deleteOnExit();
+		for (File file : left) file.deleteOnExit();
+	}
+
+	private void grow() {
+		old = slots;
+		migrated = 0;
+		slots = new Slots(old.capacity << 1);
+	}
+
+	/**
+	 * Moves next {@link #MIGRATION_CHUNK} slots from {@link #old} into {@link #slots}; deletes the old file once done.
+	 */
+	private void migrate() {
+		long end = Math.min(old.capacity, migrated + MIGRATION_CHUNK);
+		for (; migrated < end; ++migrated) {
+			if (old.key(migrated) == OpenAddressing.EMPTY) continue;
+			slots.copyFrom(old, migrated);
+		}
+		if (migrated == old.capacity) {
+			Slots done = old;
+			old = null;
+			if (!done.delete()) retired.add(done.file);
+		}
+	}
+
+	// =====
+	// SLOTS
+	// =====
+
+	private class Slots {
+
+		final long capacity;
+
+		final long mask;
+
+		final int shift;
+
+		/**
+		 * Slots per segment, the power of 2.
+		 */
+		final int segmentSlots;
+
+		final int segmentBits;
+
+		final MappedByteBuffer[] segments;
+
+		final File file;
+
+		long used;
+
+		Slots(long capacity) {
+			this.capacity = capacity;
+			this.mask = capacity - 1;
+			this.shift = OpenAddressing.shift(capacity);
+			this.segmentSlots = (int)Math.min(capacity, Integer.highestOneBit(SEGMENT_BYTES / slotBytes));
+			this.segmentBits = Integer.numberOfTrailingZeros(segmentSlots);
+			this.segments = new MappedByteBuffer[(int)(capacity / segmentSlots)];
+			this.file = directory.resolve("visited-" + (files++) + ".bin").toFile();
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				// sparse file, pages are allocated once written to
+				raf.setLength(capacity * slotBytes);
+				FileChannel channel = raf.getChannel();
+				long segmentBytes = (long)segmentSlots * slotBytes;
+				for (int i = 0; i < segments.length; ++i) {
+					segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Failed to map the off-heap closed set file: " + file, e);
+			}
+		}
+
+		MappedByteBuffer segment(long slot) {
+			return segments[(int)(slot >>> segmentBits)];
+		}
+
+		int offset(long slot) {
+			return (int)(slot & (segmentSlots - 1)) * slotBytes;
+		}
+
+		long key(long slot) {
+			return segment(slot).getLong(offset(slot));
+		}
+
+		/**
+		 * @return slot of the state or (-insertionSlot - 1) if not present
+		 */
+		long find(long key, StatePacked state) {
+			long slot = OpenAddressing.index(key, shift, mask);
+			while (true) {
+				MappedByteBuffer segment = segment(slot);
+				int offset = offset(slot);
+				long stored = segment.getLong(offset);
+				if (stored == OpenAddressing.EMPTY) return -slot - 1;
+				if (stored == key && stateEquals(segment, offset + 8, state)) return slot;
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		boolean stateEquals(MappedByteBuffer segment, int offset, StatePacked state) {
+			for (int i = 0; i < stateLength; ++i) {
+				buffer[i] = segment.getShort(offset + 2 * i);
+			}
+			return state.equalsTo(buffer, 0);
+		}
+
+		void put(long slot, long key, StatePacked state) {
+			MappedByteBuffer segment = segment(slot);
+			int offset = offset(slot);
+			state.writeTo(buffer, 0);
+			for (int i = 0; i < stateLength; ++i) {
+				segment.putShort(offset + 8 + 2 * i, buffer[i]);
+			}
+			segment.putLong(offset, key);
+			++used;
+		}
+
+		void copyFrom(Slots from, long fromSlot) {
+			MappedByteBuffer fromSegment = from.segment(fromSlot);
+			int fromOffset = from.offset(fromSlot);
+			long key = fromSegment.getLong(fromOffset);
+			long slot = OpenAddressing.index(key, shift, mask);
+			while (key(slot) != OpenAddressing.EMPTY) slot = (slot + 1) & mask;
+			MappedByteBuffer segment = segment(slot);
+			int offset = offset(slot);
+			for (int i = 0; i < stateLength; ++i) {
+				segment.putShort(offset + 8 + 2 * i, fromSegment.getShort(fromOffset + 8 + 2 * i));
+			}
+			segment.putLong(offset, key);
+			++used;
+		}
+
+		/**
+		 * Deletes the file; the mapping stays valid till the buffers are collected. Where a mapped file cannot be deleted (Windows), fails.
+		 * @return whether the file is gone
+		 */
+		boolean delete() {
+			return file.delete() || !file.exists();
+		}
+
+	}
+
+}
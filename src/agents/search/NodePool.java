@@ -0,0 +1,210 @@
+package agents.search;
+
+import java.util.Arrays;
+
+import game.board.ZobristTable;
+import game.board.packed.StatePacked;
+
+/**
+ * Arena of search nodes stored within parallel primitive arrays instead of node objects; a node is just its int index,
+ * as used by {@link IOpenList}.
+ *
+ * Every node holds its parent index, the action that led to it (a byte whose meaning is up to the search), g, the player cell
+ * (the actual one, if states are normalized) and the {@link StatePacked} written into the state arena at the offset
+ * node * {@link StatePacked#length()} (states of a level have the same length, so offsets need not be stored).
+ * That is {@link #FIXED_BYTES_PER_NODE} + 2 bytes per box and player cell; solutions are reconstructed by walking {@link #parent(int)}.
+ * Player steps from the start take {@link #STEPS_BYTES_PER_NODE} more and are stored only by pools created with them.
+ *
+ * Arrays are allocated in pages of {@link #PAGE_SIZE} nodes, so the pool never copies what it already holds.
+ */
+public class NodePool {
+
+	/**
+	 * Parent of the root nodes and action of the root nodes.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * Bytes per node apart from the state: parent (4), action (1), g (2), player (2).
+	 */
+	public static final int FIXED_BYTES_PER_NODE = 4 + 1 + 2 + 2;
+
+	/**
+	 * Bytes per node taken by player steps, see {@link #NodePool(int, boolean)}.
+	 */
+	public static final int STEPS_BYTES_PER_NODE = 4;
+
+	private static final int PAGE_BITS = 16;
+
+	public static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final int stateLength;
+
+	private final boolean withSteps;
+
+	private int[][] parents = new int[0][];
+
+	private byte[][] actions = new byte[0][];
+
+	private short[][] gs = new short[0][];
+
+	private short[][] players = new short[0][];
+
+	/**
+	 * No pages if steps are not stored.
+	 */
+	private int[][] steps = new int[0][];
+
+	private short[][] states = new short[0][];
+
+	private int size;
+
+	/**
+	 * @param stateLength {@link StatePacked#length()} of all states to be stored
+	 */
+	public NodePool(int stateLength) {
+		this(stateLength, false);
+	}
+
+	/**
+	 * @param stateLength {@link StatePacked#length()} of all states to be stored
+	 * @param withSteps whether player steps from the start are stored per node, see {@link #steps(int)}
+	 */
+	public NodePool(int stateLength, boolean withSteps) {
+		this.stateLength = stateLength;
+		this.withSteps = withSteps;
+	}
+
+	/**
+	 * Stores a new node without player steps.
+	 * @param state
+	 * @param parent index of the parent node or {@link #NONE}
+	 * @param action action leading from the parent, [-128; 127] or {@link #NONE}
+	 * @param g cost from the start, [0; {@link Short#MAX_VALUE}]
+	 * @param player cell the player actually stands at
+	 * @return index of the node
+	 */
+	public int add(StatePacked state, int parent, int action, int g, int player) {
+		return add(state, parent, action, g, player, 0);
+	}
+
+	/**
+	 * Stores a new node.
+	 * @param state
+	 * @param parent index of the parent node or {@link #NONE}
+	 * @param action action leading from the parent, [-128; 127] or {@link #NONE}
+	 * @param g cost from the start, [0; {@link Short#MAX_VALUE}]
+	 * @param player cell the player actually stands at
+	 * @param playerSteps player steps from the start; ignored unless the pool stores them
+	 * @return index of the node
+	 */
+	public int add(StatePacked state, int parent, int action, int g, int player, int playerSteps) {
+		if (g > Short.MAX_VALUE) throw new RuntimeException("g does not fit the node pool: " + g);
+		if (size == Integer.MAX_VALUE) throw new RuntimeException("Node pool is full.");
+		int node = size;
+		int page = node >>> PAGE_BITS;
+		if (page == parents.length) addPage();
+		int slot = node & PAGE_MASK;
+		parents[page][slot] = parent;
+		actions[page][slot] = (byte)action;
+		gs[page][slot] = (short)g;
+		players[page][slot] = (short)player;
+		if (withSteps) steps[page][slot] = playerSteps;
+		state.writeTo(states[page], slot * stateLength);
+		++size;
+		return node;
+	}
+
+	private void addPage() {
+		int pages = parents.length + 1;
+		parents = Arrays.copyOf(parents, pages);
+		actions = Arrays.copyOf(actions, pages);
+		gs = Arrays.copyOf(gs, pages);
+		players = Arrays.copyOf(players, pages);
+		states = Arrays.copyOf(states, pages);
+		parents[pages - 1] = new int[PAGE_SIZE];
+		actions[pages - 1] = new byte[PAGE_SIZE];
+		gs[pages - 1] = new short[PAGE_SIZE];
+		players[pages - 1] = new short[PAGE_SIZE];
+		states[pages - 1] = new short[PAGE_SIZE * stateLength];
+		if (withSteps) {
+			steps = Arrays.copyOf(steps, pages);
+			steps[pages - 1] = new int[PAGE_SIZE];
+		}
+	}
+
+	public int parent(int node) {
+		return parents[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	public int action(int node) {
+		return actions[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	public int g(int node) {
+		return gs[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	public int player(int node) {
+		return players[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * Player steps from the start; requires the pool to store them.
+	 * @param node
+	 * @return
+	 */
+	public int steps(int node) {
+		if (!withSteps) throw new RuntimeException("Player steps are not stored by this node pool.");
+		return steps[node >>> PAGE_BITS][node & PAGE_MASK];
+	}
+
+	/**
+	 * Reads the state of 'node' from the arena (a new {@link StatePacked} is created).
+	 * @param node
+	 * @param zobrist table the state was hashed with
+	 * @return
+	 */
+	public StatePacked state(int node, ZobristTable zobrist) {
+		return StatePacked.read(states[node >>> PAGE_BITS], (node & PAGE_MASK) * stateLength, stateLength, zobrist);
+	}
+
+	/**
+	 * Whether 'node' holds 'state' (compared within the arena, nothing is allocated).
+	 * @param node
+	 * @param state
+	 * @return
+	 */
+	public boolean stateEquals(int node, StatePacked state) {
+		return state.equalsTo(states[node >>> PAGE_BITS], (node & PAGE_MASK) * stateLength);
+	}
+
+	/**
+	 * Number of nodes stored.
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Bytes taken per node, states included.
+	 * @return
+	 */
+	public int bytesPerNode() {
+		return FIXED_BYTES_PER_NODE + (withSteps ? STEPS_BYTES_PER_NODE : 0) + 2 * stateLength;
+	}
+
+	public void clear() {
+		parents = new int[0][];
+		actions = new byte[0][];
+		gs = new short[0][];
+		players = new short[0][];
+		steps = new int[0][];
+		states = new short[0][];
+		size = 0;
+	}
+
+}
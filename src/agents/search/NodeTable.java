@@ -0,0 +1,172 @@
+package agents.search;
+
+import game.board.packed.StatePacked;
+
+/**
+ * Open-addressing (linear probing) map from states to nodes of a {@link NodePool} keyed by {@link StatePacked#key()}, for searches that
+ * may reach a state again by a cheaper path and need its node (and so its best g), e.g., A* with reopening.
+ *
+ * A slot holds just the key and the node index (12 bytes); the state itself is not duplicated, colliding keys are told apart
+ * by comparing with the state stored within the pool. Once {@link #MAX_LOAD} is exceeded, the table doubles; rehashing moves
+ * keys and indices only. Holds at most {@link #MAX_CAPACITY} slots, exceeding {@link #MAX_LOAD} of that throws a {@link RuntimeException}.
+ *
+ * A table may also be shared by two searches with pools of their own (e.g., the sides of a bidirectional search), see
+ * {@link #NodeTable(int, NodePool, NodePool)}: nodes of the other pool are stored as {@link #other(int)}, i.e., below {@link NodePool#NONE}.
+ *
+ * Not thread-safe.
+ */
+public class NodeTable {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	public static final int MAX_CAPACITY = 1 << 30;
+
+	public static final double MAX_LOAD = 0.5;
+
+	private final NodePool nodes;
+
+	/**
+	 * Pool of the values below {@link NodePool#NONE}; null if the table has a single pool.
+	 */
+	private final NodePool others;
+
+	private long[] keys;
+
+	private int[] values;
+
+	private int mask;
+
+	private int shift;
+
+	private int size;
+
+	/**
+	 * @param capacity initial number of slots, rounded up to the power of 2
+	 * @param nodes pool holding the nodes (and states) the table points to
+	 */
+	public NodeTable(int capacity, NodePool nodes) {
+		this(capacity, nodes, null);
+	}
+
+	/**
+	 * @param capacity initial number of slots, rounded up to the power of 2
+	 * @param nodes pool of the nodes stored as they are
+	 * @param others pool of the nodes stored as {@link #other(int)}
+	 */
+	public NodeTable(int capacity, NodePool nodes, NodePool others) {
+		this.nodes = nodes;
+		this.others = others;
+		allocate((int)Math.max(16, Math.min(MAX_CAPACITY, (long)Integer.highestOneBit(Math.max(1, capacity - 1)) << 1)));
+	}
+
+	/**
+	 * Value stored for a node of the other pool and vice versa (the mapping is its own inverse).
+	 * @param node
+	 * @return
+	 */
+	public static int other(int node) {
+		return NodePool.NONE - 1 - node;
+	}
+
+	/**
+	 * Node stored for 'state'.
+	 * @param state
+	 * @return the node (as stored, see {@link #other(int)}) or {@link NodePool#NONE}
+	 */
+	public int get(StatePacked state) {
+		int slot = find(OpenAddressing.keyOf(state), state);
+		return slot >= 0 ? values[slot] : NodePool.NONE;
+	}
+
+	/**
+	 * Stores 'node' for 'state', replacing the node stored before (if any).
+	 * @param state
+	 * @param node node of the pool holding 'state'
+	 */
+	public void put(StatePacked state, int node) {
+		long key = OpenAddressing.keyOf(state);
+		int slot = find(key, state);
+		if (slot >= 0) {
+			values[slot] = node;
+			return;
+		}
+		slot = -slot - 1;
+		keys[slot] = key;
+		values[slot] = node;
+		++size;
+		if (size > keys.length * MAX_LOAD) grow();
+	}
+
+	/**
+	 * Stores 'node' for 'state' unless some node is stored for it already.
+	 * @param state
+	 * @param node node holding 'state' (as stored, see {@link #other(int)})
+	 * @return the node stored before or {@link NodePool#NONE} if 'node' has been stored
+	 */
+	public int putIfAbsent(StatePacked state, int node) {
+		long key = OpenAddressing.keyOf(state);
+		int slot = find(key, state);
+		if (slot >= 0) return values[slot];
+		slot = -slot - 1;
+		keys[slot] = key;
+		values[slot] = node;
+		++size;
+		if (size > keys.length * MAX_LOAD) grow();
+		return NodePool.NONE;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return keys.length;
+	}
+
+	public void clear() {
+		allocate(16);
+		size = 0;
+	}
+
+	/**
+	 * @return slot of the state or (-insertionSlot - 1) if not present
+	 */
+	private int find(long key, StatePacked state) {
+		int slot = (int)OpenAddressing.index(key, shift, mask);
+		while (true) {
+			long stored = keys[slot];
+			if (stored == OpenAddressing.EMPTY) return -slot - 1;
+			if (stored == key && holds(values[slot], state)) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean holds(int node, StatePacked state) {
+		return node >= 0 ? nodes.stateEquals(node, state) : others.stateEquals(other(node), state);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		shift = OpenAddressing.shift(capacity);
+	}
+
+	private void grow() {
+		if (keys.length >= MAX_CAPACITY) {
+			throw new RuntimeException("Node table is full, cannot grow beyond " + MAX_CAPACITY + " slots; " + size + " states stored.");
+		}
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length << 1);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			long key = oldKeys[i];
+			if (key == OpenAddressing.EMPTY) continue;
+			int slot = (int)OpenAddressing.index(key, shift, mask);
+			while (keys[slot] != OpenAddressing.EMPTY) slot = (slot + 1) & mask;
+			keys[slot] = key;
+			values[slot] = oldValues[i];
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package agents.search;
+
+import game.board.packed.StatePacked;
+
+/**
+ * Key normalisation and slot hashing shared by the open-addressing tables of this package ({@link TranspositionTable}, {@link NodeTable},
+ * {@link MappedStateSet}, {@link ReplacementTable}); probing stays with each table, as it depends on how the table stores its slots.
+ */
+final class OpenAddressing {
+
+	/**
+	 * Key of empty slots (arrays and fresh file pages read as zeros); states whose key is 0 are stored under {@link #ZERO_KEY}.
+	 */
+	static final long EMPTY = 0;
+
+	static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * 2^64 / golden ratio, odd.
+	 */
+	private static final long FIBONACCI = 0x9E3779B97F4A7C15L;
+
+	private OpenAddressing() {
+	}
+
+	/**
+	 * {@link StatePacked#key()} of 'state', never {@link #EMPTY}.
+	 * @param state
+	 * @return
+	 */
+	static long keyOf(StatePacked state) {
+		return keyOf(state.key());
+	}
+
+	/**
+	 * 'key' unless it is {@link #EMPTY}, {@link #ZERO_KEY} then.
+	 * @param key
+	 * @return
+	 */
+	static long keyOf(long key) {
+		return key == EMPTY ? ZERO_KEY : key;
+	}
+
+	/**
+	 * Shift for {@link #index(long, int, long)} of a table of 'capacity' slots.
+	 * @param capacity power of 2
+	 * @return
+	 */
+	static int shift(long capacity) {
+		return 64 - Long.numberOfTrailingZeros(capacity);
+	}
+
+	/**
+	 * Home slot of 'key': fibonacci hashing takes the top bits of the key times {@link #FIBONACCI}, which spreads keys even if their low bits are poor.
+	 * @param key
+	 * @param shift {@link #shift(long)} of the capacity
+	 * @param mask capacity - 1 (a table of a single slot has the shift of 64, which Java takes as 0)
+	 * @return
+	 */
+	static long index(long key, int shift, long mask) {
+		return ((key * FIBONACCI) >>> shift) & mask;
+	}
+
+}
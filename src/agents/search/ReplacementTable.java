@@ -0,0 +1,143 @@
+package agents.search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table keeping the best known g (cost from the start) per state key, for memory-bounded searches like IDA*.
+ *
+ * Slots are grouped into buckets of {@link #BUCKET_SIZE}; a key may live in any slot of its bucket. Once the bucket is full,
+ * the new entry replaces the one written in the oldest iteration and, among those, the one with the highest g
+ * (entries close to the root guard larger subtrees). The table never grows: memory is given by {@link #forBudget(long)}.
+ *
+ * Keys are assumed unique per state (e.g., Zobrist keys), colliding states are considered the same state.
+ */
+public class ReplacementTable {
+
+	public static final int BUCKET_SIZE = 4;
+
+	/**
+	 * Memory taken by a single slot: the key and the packed [iteration, g] data.
+	 */
+	public static final int BYTES_PER_SLOT = 8 + 4;
+
+	private static final int G_BITS = 16;
+
+	private static final int G_MASK = (1 << G_BITS) - 1;
+
+	private final long[] keys;
+
+	/**
+	 * [slot] -> (iteration << {@link #G_BITS}) | g
+	 */
+	private final int[] data;
+
+	private final int bucketMask;
+
+	private final int bucketShift;
+
+	private int iteration = 1;
+
+	private long size;
+
+	/**
+	 * @param slots number of slots, rounded down to the power of 2 (at least one bucket)
+	 */
+	public ReplacementTable(int slots) {
+		int capacity = Math.max(BUCKET_SIZE, Integer.highestOneBit(Math.max(1, slots)));
+		this.keys = new long[capacity];
+		this.data = new int[capacity];
+		this.bucketMask = capacity / BUCKET_SIZE - 1;
+		this.bucketShift = OpenAddressing.shift(capacity / BUCKET_SIZE);
+	}
+
+	/**
+	 * Table taking at most 'bytes' of heap.
+	 * @param bytes
+	 * @return
+	 */
+	public static ReplacementTable forBudget(long bytes) {
+		return new ReplacementTable((int)Math.min(1 << 30, Math.max(BUCKET_SIZE, bytes / BYTES_PER_SLOT)));
+	}
+
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Number of occupied slots.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Starts a new search iteration: entries of older iterations are kept as bounds but preferred for replacement.
+	 */
+	public void nextIteration() {
+		++iteration;
+		if (iteration > (Integer.MAX_VALUE >>> G_BITS)) {
+			// wrap-around: forget the order of older iterations
+			iteration = 2;
+			for (int slot = 0; slot < data.length; ++slot) {
+				if (keys[slot] != OpenAddressing.EMPTY) data[slot] = (1 << G_BITS) | (data[slot] & G_MASK);
+			}
+		}
+	}
+
+	/**
+	 * Records that the state 'key' was reached with cost 'g' unless the search should not continue from it, which is when it was reached
+	 * with a lower g before, or with the same g within the current iteration (its subtree is being / was already searched).
+	 * @param key
+	 * @param g
+	 * @return whether the state should be searched
+	 */
+	public boolean visit(long key, int g) {
+		key = OpenAddressing.keyOf(key);
+		if (g > G_MASK) return true;
+
+		int base = bucket(key);
+		int victim = -1;
+		int victimIteration = Integer.MAX_VALUE;
+		int victimG = -1;
+		for (int slot = base; slot < base + BUCKET_SIZE; ++slot) {
+			long stored = keys[slot];
+			if (stored == key) {
+				int storedG = data[slot] & G_MASK;
+				int storedIteration = data[slot] >>> G_BITS;
+				if (storedG < g || (storedG == g && storedIteration == iteration)) return false;
+				data[slot] = (iteration << G_BITS) | g;
+				return true;
+			}
+			if (stored == OpenAddressing.EMPTY) {
+				if (victimIteration > 0) {
+					victim = slot;
+					victimIteration = 0;
+				}
+				continue;
+			}
+			int storedIteration = data[slot] >>> G_BITS;
+			int storedG = data[slot] & G_MASK;
+			if (storedIteration < victimIteration || (storedIteration == victimIteration && storedG > victimG)) {
+				victim = slot;
+				victimIteration = storedIteration;
+				victimG = storedG;
+			}
+		}
+		if (keys[victim] == OpenAddressing.EMPTY) ++size;
+		keys[victim] = key;
+		data[victim] = (iteration << G_BITS) | g;
+		return true;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, OpenAddressing.EMPTY);
+		Arrays.fill(data, 0);
+		iteration = 1;
+		size = 0;
+	}
+
+	private int bucket(long key) {
+		return (int)OpenAddressing.index(key, bucketShift, bucketMask) * BUCKET_SIZE;
+	}
+
+}
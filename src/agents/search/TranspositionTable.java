@@ -0,0 +1,184 @@
+package agents.search;
+
+import game.board.packed.StatePacked;
+
+/**
+ * Open-addressing (linear probing) {@link IStateSet} keyed by {@link StatePacked#key()}, which is stored within a single long[].
+ *
+ * If 'verify' is set, the packed state is stored within a parallel short[] as well and states with colliding keys are told apart;
+ * otherwise two states sharing the key are considered the same state.
+ *
+ * Once {@link #MAX_LOAD} is exceeded, the table doubles; the old slots are then migrated in chunks of {@link #MIGRATION_CHUNK}
+ * during subsequent {@link #add(StatePacked)} calls, so a resize never stalls the search on rehashing the whole table.
+ *
+ * Verification states are kept in pages of {@link #PAGE_SLOTS} slots, so their total length is not limited by the maximal length of a single array.
+ * The table holds at most {@link #MAX_CAPACITY} slots; exceeding {@link #MAX_LOAD} of that throws a {@link RuntimeException}.
+ */
+public class TranspositionTable implements IStateSet {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	public static final int MAX_CAPACITY = 1 << 30;
+
+	public static final double MAX_LOAD = 0.5;
+
+	private static final int MIGRATION_CHUNK = 64;
+
+	private static final int PAGE_BITS = 16;
+
+	private static final int PAGE_SLOTS = 1 << PAGE_BITS;
+
+	private final int stateLength;
+
+	private final boolean verify;
+
+	private Slots slots;
+
+	/**
+	 * Table being migrated into {@link #slots}; null if no resize is in progress.
+	 */
+	private Slots old;
+
+	private int migrated;
+
+	private long size;
+
+	/**
+	 * @param capacity initial number of slots, rounded up to the power of 2
+	 * @param stateLength {@link StatePacked#length()} of stored states
+	 * @param verify whether to store full states to resolve key collisions
+	 */
+	public TranspositionTable(int capacity, int stateLength, boolean verify) {
+		this.stateLength = stateLength;
+		this.verify = verify;
+		this.slots = new Slots((int)Math.max(16, Math.min(MAX_CAPACITY, (long)Integer.highestOneBit(Math.max(1, capacity - 1)) << 1)));
+	}
+
+	@Override
+	public boolean add(StatePacked state) {
+		long key = OpenAddressing.keyOf(state);
+		if (old != null) {
+			if (old.find(key, state) >= 0) return false;
+			migrate();
+		}
+		int slot = slots.find(key, state);
+		if (slot >= 0) return false;
+		slots.put(-slot - 1, key, state);
+		++size;
+		if (old == null && slots.used > slots.keys.length * MAX_LOAD) {
+			grow();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(StatePacked state) {
+		long key = OpenAddressing.keyOf(state);
+		if (slots.find(key, state) >= 0) return true;
+		return old != null && old.find(key, state) >= 0;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public double loadFactor() {
+		return (double)slots.used / slots.keys.length;
+	}
+
+	public int capacity() {
+		return slots.keys.length;
+	}
+
+	private void grow() {
+		if (slots.keys.length >= MAX_CAPACITY) {
+			throw new RuntimeException("Transposition table is full, cannot grow beyond " + MAX_CAPACITY + " slots; " + size + " states stored.");
+		}
+		old = slots;
+		migrated = 0;
+		slots = new Slots(old.keys.length << 1);
+	}
+
+	/**
+	 * Moves next {@link #MIGRATION_CHUNK} slots from {@link #old} into {@link #slots}.
+	 */
+	private void migrate() {
+		int end = Math.min(old.keys.length, migrated + MIGRATION_CHUNK);
+		for (; migrated < end; ++migrated) {
+			long key = old.keys[migrated];
+			if (key == OpenAddressing.EMPTY) continue;
+			slots.copyFrom(old, migrated);
+		}
+		if (migrated == old.keys.length) {
+			old = null;
+		}
+	}
+
+	private class Slots {
+
+		final long[] keys;
+
+		/**
+		 * Verification states in pages of {@link #PAGE_SLOTS} slots; null if not verifying.
+		 */
+		final short[][] states;
+
+		final int mask;
+
+		final int shift;
+
+		int used;
+
+		Slots(int capacity) {
+			keys = new long[capacity];
+			states = verify ? newPages(capacity) : null;
+			mask = capacity - 1;
+			shift = OpenAddressing.shift(capacity);
+		}
+
+		/**
+		 * @return slot of the state or (-insertionSlot - 1) if not present
+		 */
+		int find(long key, StatePacked state) {
+			int slot = (int)OpenAddressing.index(key, shift, mask);
+			while (true) {
+				long stored = keys[slot];
+				if (stored == OpenAddressing.EMPTY) return -slot - 1;
+				if (stored == key && (states == null || state.equalsTo(states[slot >>> PAGE_BITS], offset(slot)))) return slot;
+				slot = (slot + 1) & mask;
+			}
+		}
+
+		void put(int slot, long key, StatePacked state) {
+			keys[slot] = key;
+			if (states != null) state.writeTo(states[slot >>> PAGE_BITS], offset(slot));
+			++used;
+		}
+
+		void copyFrom(Slots from, int fromSlot) {
+			long key = from.keys[fromSlot];
+			int slot = (int)OpenAddressing.index(key, shift, mask);
+			while (keys[slot] != OpenAddressing.EMPTY) slot = (slot + 1) & mask;
+			keys[slot] = key;
+			if (states != null) System.arraycopy(from.states[fromSlot >>> PAGE_BITS], offset(fromSlot), states[slot >>> PAGE_BITS], offset(slot), stateLength);
+			++used;
+		}
+
+		short[][] newPages(int capacity) {
+			int pageSlots = Math.min(capacity, PAGE_SLOTS);
+			short[][] pages = new short[capacity / pageSlots][];
+			for (int i = 0; i < pages.length; ++i) {
+				pages[i] = new short[pageSlots * stateLength];
+			}
+			return pages;
+		}
+
+		int offset(int slot) {
+			return (slot & (PAGE_SLOTS - 1)) * stateLength;
+		}
+
+	}
+
+}
@@ -0,0 +1,109 @@
+package game;
+
+/**
+ * Tells a running search whether it should give up: either it was cancelled ({@link #cancel()}, e.g., the game was stopped)
+ * or its deadline passed.
+ * 
+ * Meant to be polled from search loops; {@link #isCancelled(long)} reads the clock only every {@link #POLL_INTERVAL} calls,
+ * so it may be called on every expansion.
+ */
+public class CancellationToken {
+
+	/**
+	 * Expansions between two checks of the clock within {@link #isCancelled(long)}; a power of 2.
+	 */
+	public static final int POLL_INTERVAL = 1024;
+	
+	private static final int POLL_MASK = POLL_INTERVAL - 1;
+	
+	/**
+	 * Deadline as {@link System#currentTimeMillis()}; non-positive == no deadline.
+	 */
+	private final long deadlineMillis;
+	
+	/**
+	 * Token this one is cancelled along with, see {@link #limitedTo(long)}; null if none.
+	 */
+	private final CancellationToken parent;
+	
+	private volatile boolean cancelled;
+	
+	/**
+	 * @param deadlineMillis time as {@link System#currentTimeMillis()} after which the token is cancelled; non-positive == no deadline
+	 */
+	public CancellationToken(long deadlineMillis) {
+		this(deadlineMillis, null);
+	}
+	
+	private CancellationToken(long deadlineMillis, CancellationToken parent) {
+		this.deadlineMillis = deadlineMillis;
+		this.parent = parent;
+	}
+	
+	/**
+	 * Token without a deadline, cancelled only via {@link #cancel()}.
+	 * @return
+	 */
+	public static CancellationToken noDeadline() {
+		return new CancellationToken(0);
+	}
+	
+	/**
+	 * Token cancelled along with this one or once 'deadlineMillis' passes, whichever comes first; meant for a step
+	 * that may take just a share of the time, e.g., building a heuristic before the search.
+	 * Cancelling the returned token does not cancel this one.
+	 * @param deadlineMillis time as {@link System#currentTimeMillis()}; non-positive == just this token's deadline
+	 * @return
+	 */
+	public CancellationToken limitedTo(long deadlineMillis) {
+		long deadline = deadlineMillis <= 0 ? this.deadlineMillis : (this.deadlineMillis <= 0 ? deadlineMillis : Math.min(deadlineMillis, this.deadlineMillis));
+		return new CancellationToken(deadline, this);
+	}
+	
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Whether the search should stop (checks the clock).
+	 * @return
+	 */
+	public boolean isCancelled() {
+		if (cancelled) return true;
+		if (parent != null && parent.isCancelled()) {
+			cancelled = true;
+			return true;
+		}
+		if (deadlineMillis > 0 && System.currentTimeMillis() >= deadlineMillis) {
+			cancelled = true;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Cheap variant of {@link #isCancelled()} to be called on every expansion: the clock is checked only
+	 * if 'expansions' is a multiple of {@link #POLL_INTERVAL}.
+	 * @param expansions number of expansions so far
+	 * @return
+	 */
+	public boolean isCancelled(long expansions) {
+		return cancelled || ((expansions & POLL_MASK) == 0 && isCancelled());
+	}
+	
+	/**
+	 * @return deadline as {@link System#currentTimeMillis()}; non-positive == none
+	 */
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+	
+	/**
+	 * @return milliseconds left till the deadline (at least 0), {@link Long#MAX_VALUE} if there is none
+	 */
+	public long remainingMillis() {
+		if (deadlineMillis <= 0) return Long.MAX_VALUE;
+		return Math.max(0, deadlineMillis - System.currentTimeMillis());
+	}
+	
+}
@@ -23,6 +23,17 @@ public interface IAgent {
 	 */
 	public EDirection act();
 	
+	/**
+	 * As {@link #act()}, but the agent may park the caller for up to 'maxWaitMillis' until it knows the next action
+	 * (e.g., while it is still planning) instead of returning null right away; {@link Long#MAX_VALUE} == wait as long as needed.
+	 * By default, the agent does not wait at all.
+	 * @param maxWaitMillis
+	 * @return
+	 */
+	public default EDirection act(long maxWaitMillis) {
+		return act();
+	}
+	
 	/**
 	 * Agent managed to finish the level.
 	 */
@@ -0,0 +1,14 @@
+package game;
+
+/**
+ * Optional interface of an {@link IAgent} reporting on its last search, used by benchmarks.
+ */
+public interface IAgentStatistics {
+
+	/**
+	 * How many search nodes the agent expanded while thinking about the last level.
+	 * @return
+	 */
+	public long getSearchedNodes();
+
+}
@@ -0,0 +1,16 @@
+package game;
+
+/**
+ * {@link IAgent} whose thinking can be bounded in time: the game tells it the deadline of the level before {@link IAgent#newLevel()},
+ * and the agent is expected to poll a {@link CancellationToken} honouring both the deadline and {@link IAgent#stop()},
+ * so that it stops searching (and releases its memory) promptly instead of running past the end of the game.
+ */
+public interface ICancellableAgent extends IAgent {
+
+	/**
+	 * Time the agent has to finish the next level by.
+	 * @param deadlineMillis as {@link System#currentTimeMillis()}; non-positive == no deadline
+	 */
+	public void setDeadline(long deadlineMillis);
+	
+}
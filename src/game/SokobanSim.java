@@ -74,6 +74,9 @@ public class SokobanSim implements ISokobanGame, Runnable {
 			startTime = System.currentTimeMillis();
 			
 			try {
+				if (agent instanceof ICancellableAgent) {
+					((ICancellableAgent)agent).setDeadline(config.timeoutMillis > 0 ? startTime + config.timeoutMillis : 0);
+				}
 				agent.newLevel();
 			} catch (Exception e) {
 				onAgentException(e);
@@ -83,9 +86,10 @@ public class SokobanSim implements ISokobanGame, Runnable {
 			while (shouldRun && !Thread.interrupted()) {
 
 				// TIMEOUT?
+				long timeLeftMillis = Long.MAX_VALUE;
 				if (config.timeoutMillis > 0) {
 					long now = System.currentTimeMillis();
-					long timeLeftMillis = config.timeoutMillis - (now - startTime);
+					timeLeftMillis = config.timeoutMillis - (now - startTime);
 					if (timeLeftMillis <= 0) {						
 						onTimeout();
 						return;
@@ -108,8 +112,8 @@ public class SokobanSim implements ISokobanGame, Runnable {
 					observe = false;
 				}
 									
-				// GET AGENT ACTION
-				EDirection whereToMove = agent.act();
+				// GET AGENT ACTION (parks until the agent knows it or the time is up)
+				EDirection whereToMove = agent.act(timeLeftMillis);
 				
 				if (whereToMove == null) continue;
                 
@@ -1,19 +1,21 @@
 package game.actions;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 public enum EDirection {
 	
 	NONE(-1, 0, 0), UP(0, 0, -1), RIGHT(1, 1, 0), DOWN(2, 0, 1), LEFT(3, -1, 0);
 	
-	private static EDirection[] arrows = new EDirection[]{UP, RIGHT, DOWN, LEFT};
+	private static final EDirection[] arrows = new EDirection[]{UP, RIGHT, DOWN, LEFT};
 	
-	private static List<EDirection> arrowsList = null;
+	private static final List<EDirection> arrowsList = new ArrayList<EDirection>(Arrays.asList(arrows));
 	
-	private static Map<Integer, EDirection> indices = null;
+	/**
+	 * [index] -> direction; filled eagerly (not on first use) so that concurrent agents need no synchronization.
+	 */
+	private static final EDirection[] indices = new EDirection[]{UP, RIGHT, DOWN, LEFT};
 	
 	public final int index;
 	public final int dX;
@@ -58,16 +60,13 @@ public enum EDirection {
 		return null;
 	}
 	
+	/**
+	 * @param directionIndex
+	 * @return direction of the {@link #index} or {@link #NONE} if there is no such direction
+	 */
 	public static EDirection forIndex(int directionIndex) {
-		if (indices == null) {
-			indices = new HashMap<Integer, EDirection>();
-			for (EDirection dir : values()) {
-				indices.put(dir.index, dir);
-			}
-		}
-		EDirection dir = indices.get(directionIndex);
-		if (dir == null) return NONE;
-		return dir;
+		if (directionIndex < 0 || directionIndex >= indices.length) return NONE;
+		return indices[directionIndex];
 	}
 	
 	/**
@@ -83,12 +82,6 @@ public enum EDirection {
 	 * @return
 	 */
 	public static List<EDirection> arrowsList() {
-		if (arrowsList == null) {
-			arrowsList = new ArrayList<EDirection>(4);
-			for (EDirection d : arrows) {
-				arrowsList.add(d);
-			}
-		}
 		return arrowsList;
 	}
 	
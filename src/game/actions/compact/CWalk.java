@@ -30,6 +30,22 @@ public class CWalk extends CAction {
 		this.path = path;
 	}
 
+	/**
+	 * X-coordinate of the tile the walk ends at.
+	 * @return
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Y-coordinate of the tile the walk ends at.
+	 * @return
+	 */
+	public int getY() {
+		return y;
+	}
+
 	@Override
 	public EActionType getType() {
 		return EActionType.WALK;
@@ -23,6 +23,14 @@ public class CWalkPush extends CAction {
 		return EActionType.WALK_AND_PUSH;
 	}
 
+	public CWalk getWalk() {
+		return walk;
+	}
+
+	public CPush getPush() {
+		return push;
+	}
+
 	public EDirection getPushDirection() {
 		return push.getDirection();
 	}
@@ -0,0 +1,143 @@
+package game.board;
+
+import java.util.Random;
+
+import game.actions.EDirection;
+import game.actions.compact.CAction;
+import game.actions.compact.CMove;
+import game.actions.compact.CPush;
+import game.actions.compact.CWalk;
+import game.actions.compact.CWalkPush;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+import game.board.packed.BoardPacked;
+
+/**
+ * 64-bit Zobrist keys (see https://en.wikipedia.org/wiki/Zobrist_hashing) for a box and for the player standing at every {@link BoardPacked} cell.
+ *
+ * Keys are generated from the given seed, so the same level and seed always yield the same hashes (node counts are comparable
+ * across runs and builds). The table is immutable once created and can be shared between threads.
+ *
+ * Incremental update methods expect the hash and the player cell BEFORE the action and return the hash AFTER it; they do not validate the action.
+ */
+public class ZobristTable {
+
+	public static final long DEFAULT_SEED = 0x5EED_50C0_BA17L;
+
+	private final BoardPacked board;
+
+	private final long seed;
+
+	private final long[] boxKeys;
+
+	private final long[] playerKeys;
+
+	public ZobristTable(BoardPacked board) {
+		this(board, DEFAULT_SEED);
+	}
+
+	public ZobristTable(BoardPacked board, long seed) {
+		this.board = board;
+		this.seed = seed;
+		Random random = new Random(seed);
+		boxKeys = new long[board.cellCount()];
+		playerKeys = new long[board.cellCount()];
+		for (int cell = 0; cell < boxKeys.length; ++cell) {
+			boxKeys[cell] = random.nextLong();
+			playerKeys[cell] = random.nextLong();
+		}
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long box(int cell) {
+		return boxKeys[cell];
+	}
+
+	public long player(int cell) {
+		return playerKeys[cell];
+	}
+
+	// ==========
+	// FULL HASH
+	// ==========
+
+	public long hash(int player, int[] boxes) {
+		long hash = playerKeys[player];
+		for (int box : boxes) hash ^= boxKeys[box];
+		return hash;
+	}
+
+	public long hash(BoardCompact compact) {
+		long hash = playerKeys[board.cell(compact.playerX, compact.playerY)];
+		for (int x = 0; x < compact.width(); ++x) {
+			for (int y = 0; y < compact.height(); ++y) {
+				if (CTile.isSomeBox(compact.tile(x, y))) hash ^= boxKeys[board.cell(x, y)];
+			}
+		}
+		return hash;
+	}
+
+	// ==================
+	// INCREMENTAL UPDATE
+	// ==================
+
+	public long move(long hash, int player, EDirection dir) {
+		return hash ^ playerKeys[player] ^ playerKeys[board.neighbour(player, dir)];
+	}
+
+	public long push(long hash, int player, EDirection dir) {
+		int box = board.neighbour(player, dir);
+		return hash ^ playerKeys[player] ^ playerKeys[box] ^ boxKeys[box] ^ boxKeys[board.neighbour(box, dir)];
+	}
+
+	/**
+	 * Player steps in 'dir' dragging the box from behind him (reverse of {@link #push(long, int, EDirection)}).
+	 */
+	public long pull(long hash, int player, EDirection dir) {
+		int box = board.neighbour(player, dir.opposite());
+		return hash ^ playerKeys[player] ^ playerKeys[board.neighbour(player, dir)] ^ boxKeys[box] ^ boxKeys[player];
+	}
+
+	public long walk(long hash, int player, int target) {
+		return hash ^ playerKeys[player] ^ playerKeys[target];
+	}
+
+	public long update(long hash, int player, CMove move) {
+		return move(hash, player, move.getDirection());
+	}
+
+	public long update(long hash, int player, CPush push) {
+		return push(hash, player, push.getDirection());
+	}
+
+	public long update(long hash, int player, CWalk walk) {
+		return walk(hash, player, board.cell(walk.getX(), walk.getY()));
+	}
+
+	public long update(long hash, int player, CWalkPush walkPush) {
+		int target = board.cell(walkPush.getWalk().getX(), walkPush.getWalk().getY());
+		return push(walk(hash, player, target), target, walkPush.getPushDirection());
+	}
+
+	/**
+	 * Dispatches to the update method of the concrete action type.
+	 */
+	public long update(long hash, int player, CAction action) {
+		switch (action.getType()) {
+		case MOVE:          return update(hash, player, (CMove) action);
+		case PUSH:          return update(hash, player, (CPush) action);
+		case WALK:          return update(hash, player, (CWalk) action);
+		case WALK_AND_PUSH: return update(hash, player, (CWalkPush) action);
+		default:
+			throw new RuntimeException("Unsupported action: " + action);
+		}
+	}
+
+}
@@ -33,6 +33,11 @@ public class BoardCompact implements Cloneable {
 	
 	public int boxCount;
 	public int boxInPlaceCount;
+
+	/**
+	 * Hash of the level text the board was loaded from ({@link Board#levelHash}), 0 if unknown.
+	 */
+	public long levelHash;
 	
 	private BoardCompact() {
 	}
@@ -59,6 +64,7 @@ public class BoardCompact implements Cloneable {
 		result.playerY = playerY;
 		result.boxCount = boxCount;
 		result.boxInPlaceCount = boxInPlaceCount;
+		result.levelHash = levelHash;
 		return result;
 	}
 	
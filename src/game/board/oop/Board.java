@@ -28,6 +28,11 @@ public class Board implements Cloneable {
 	 * Auto-Filled if initialized via {@link #fromFileS4JL(File)}.
 	 */
 	public String level;
+
+	/**
+	 * Hash of the level text ({@link TextLevelS4JL#textHash()}) if initialized from a level file, 0 otherwise.
+	 */
+	public long levelHash;
 	
 	public PlayerEntity player;
 	
@@ -86,6 +91,7 @@ public class Board implements Cloneable {
 		Board result = new Board(width, height);
 		
 		result.level = level;
+		result.levelHash = levelHash;
 		
 		result.boxes = new ArrayList<BoxEntity>(boxes.size());
 		
@@ -148,6 +154,7 @@ public class Board implements Cloneable {
 		
 		result.playerX = player.getTileX();
 		result.playerY = player.getTileY();
+		result.levelHash = levelHash;
 		
 		result.boxCount = 0;
 		result.boxInPlaceCount = 0;
@@ -353,6 +360,7 @@ public class Board implements Cloneable {
 		Board board = new Board(level.getWidth(), level.getHeight());
 		
 		board.level = level.getName();
+		board.levelHash = level.textHash();
 		
 		for (int y = 0; y < level.getHeight(); ++y) {
 			String line = level.getMaze().get(y);
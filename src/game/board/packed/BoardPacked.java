@@ -0,0 +1,161 @@
+package game.board.packed;
+
+import game.actions.EDirection;
+import game.board.compact.BoardCompact;
+import game.board.compact.CTile;
+
+/**
+ * Static part of the level (walls and box places) where every non-wall tile of the {@link BoardCompact} gets a dense cell index.
+ *
+ * Used together with {@link StatePacked}, which then stores positions as such cell indices only.
+ *
+ * Cannot be used with multicolored-boxes.
+ */
+public class BoardPacked {
+
+	/**
+	 * Cell index of walls and of tiles outside of the board.
+	 */
+	public static final int NONE = -1;
+
+	private final int width;
+	private final int height;
+
+	/**
+	 * [x][y] -> cell index or {@link #NONE} for walls.
+	 */
+	private final int[][] cells;
+
+	private final int[] cellX;
+	private final int[] cellY;
+
+	/**
+	 * [cell * 4 + direction index] -> neighbouring cell or {@link #NONE}.
+	 */
+	private final int[] neighbours;
+
+	private final boolean[] goals;
+
+	private final int goalCount;
+
+	public BoardPacked(BoardCompact board) {
+		width = board.width();
+		height = board.height();
+		cells = new int[width][height];
+
+		int count = 0;
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				cells[x][y] = CTile.isWall(board.tile(x, y)) ? NONE : count++;
+			}
+		}
+
+		cellX = new int[count];
+		cellY = new int[count];
+		goals = new boolean[count];
+		neighbours = new int[count * 4];
+
+		int goalCount = 0;
+		for (int x = 0; x < width; ++x) {
+			for (int y = 0; y < height; ++y) {
+				int cell = cells[x][y];
+				if (cell == NONE) continue;
+				cellX[cell] = x;
+				cellY[cell] = y;
+				if (CTile.forSomeBox(board.tile(x, y))) {
+					goals[cell] = true;
+					++goalCount;
+				}
+				for (EDirection dir : EDirection.arrows()) {
+					neighbours[cell * 4 + dir.index] = cell(x + dir.dX, y + dir.dY);
+				}
+			}
+		}
+		this.goalCount = goalCount;
+	}
+
+	public int width() {
+		return width;
+	}
+
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * Number of non-wall tiles == upper bound (exclusive) of cell indices.
+	 * @return
+	 */
+	public int cellCount() {
+		return cellX.length;
+	}
+
+	/**
+	 * Cell index of the tile [x,y] or {@link #NONE} if it is a wall or outside of the board.
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int cell(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) return NONE;
+		return cells[x][y];
+	}
+
+	public int x(int cell) {
+		return cellX[cell];
+	}
+
+	public int y(int cell) {
+		return cellY[cell];
+	}
+
+	/**
+	 * Cell one step from 'cell' in 'dir' or {@link #NONE} if there is a wall.
+	 * @param cell
+	 * @param dir
+	 * @return
+	 */
+	public int neighbour(int cell, EDirection dir) {
+		return neighbours[cell * 4 + dir.index];
+	}
+
+	/**
+	 * Is there a place for a box at 'cell'?
+	 * @param cell
+	 * @return
+	 */
+	public boolean isGoal(int cell) {
+		return goals[cell];
+	}
+
+	/**
+	 * Box places indexed by cells; do not modify.
+	 * @return
+	 */
+	public boolean[] goals() {
+		return goals;
+	}
+
+	public int goalCount() {
+		return goalCount;
+	}
+
+	/**
+	 * Cells of all boxes currently present on 'board'.
+	 * @param board
+	 * @return
+	 */
+	public int[] findBoxes(BoardCompact board) {
+		int[] boxes = new int[board.boxCount];
+		int index = 0;
+		for (int x = 0; x < width; ++x) {
+			for (int y = 0; y < height; ++y) {
+				if (CTile.isSomeBox(board.tile(x, y))) {
+					boxes[index++] = cells[x][y];
+				}
+			}
+		}
+		return boxes;
+	}
+
+}
@@ -0,0 +1,112 @@
+package game.board.packed;
+
+import java.util.Arrays;
+
+import game.actions.EDirection;
+import game.board.ZobristTable;
+
+/**
+ * Flood fill of cells the player can walk to within a {@link StatePacked} (boxes block the way).
+ *
+ * As cells are numbered row-major, the smallest reachable cell is the top-left one; {@link #normalizedPlayer(StatePacked)} uses it
+ * to identify the whole player-reachable region, so states differing only by the player walking around are the same.
+ *
+ * Working arrays are generation-stamped, nothing is cleared between calls. Not thread-safe; use one instance per search thread.
+ */
+public class Reachability {
+
+	private final BoardPacked board;
+
+	private final int[] stamps;
+
+	private final int[] queue;
+
+	private int generation = 0;
+
+	private int count;
+
+	public Reachability(BoardPacked board) {
+		this.board = board;
+		this.stamps = new int[board.cellCount()];
+		this.queue = new int[board.cellCount()];
+	}
+
+	public BoardPacked getBoard() {
+		return board;
+	}
+
+	/**
+	 * Finds all cells reachable from 'player'.
+	 * @param state boxes blocking the player
+	 * @param player
+	 * @return top-left (smallest) reachable cell
+	 */
+	public int flood(StatePacked state, int player) {
+		if (++generation == 0) {
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+		int min = player;
+		int head = 0;
+		count = 0;
+		stamps[player] = generation;
+		queue[count++] = player;
+		while (head < count) {
+			int cell = queue[head++];
+			for (EDirection dir : EDirection.arrows()) {
+				int next = board.neighbour(cell, dir);
+				if (next == BoardPacked.NONE || stamps[next] == generation || state.hasBox(next)) continue;
+				stamps[next] = generation;
+				queue[count++] = next;
+				if (next < min) min = next;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Top-left cell of the player-reachable region of 'state'.
+	 * @param state
+	 * @return
+	 */
+	public int normalizedPlayer(StatePacked state) {
+		return flood(state, state.player());
+	}
+
+	/**
+	 * Returns 'state' with the player moved to {@link #normalizedPlayer(StatePacked)}.
+	 * @param state
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked normalize(StatePacked state, ZobristTable zobrist) {
+		return state.walk(normalizedPlayer(state), zobrist);
+	}
+
+	/**
+	 * Was 'cell' reached by the last flood?
+	 * @param cell
+	 * @return
+	 */
+	public boolean isReached(int cell) {
+		return stamps[cell] == generation;
+	}
+
+	/**
+	 * Number of cells reached by the last flood.
+	 * @return
+	 */
+	public int reachedCount() {
+		return count;
+	}
+
+	/**
+	 * 'index'-th cell reached by the last flood (in BFS order).
+	 * @param index
+	 * @return
+	 */
+	public int reached(int index) {
+		return queue[index];
+	}
+
+}
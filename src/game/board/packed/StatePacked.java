@@ -0,0 +1,288 @@
+package game.board.packed;
+
+import java.util.Arrays;
+
+import game.actions.EDirection;
+import game.actions.compact.CAction;
+import game.actions.oop.EActionType;
+import game.board.ZobristTable;
+
+/**
+ * Runtime-part of the Sokoban game state stored within a single primitive array of {@link BoardPacked} cell indices.
+ *
+ * Unlike sets of coordinate objects, the state costs one object, one short[] and a 64-bit Zobrist hash, which is
+ * updated incrementally by {@link #move(EDirection, ZobristTable)}, {@link #push(EDirection, ZobristTable)}
+ * and {@link #pull(EDirection, ZobristTable)} using the {@link ZobristTable} of the level.
+ *
+ * Cannot be used with multicolored-boxes.
+ */
+public class StatePacked {
+
+	/**
+	 * PLAYER
+	 * [0] = player cell
+	 *
+	 * BOXES (for n>0)
+	 * [n] = box cells sorted in ascending order
+	 */
+	private final short[] positions;
+
+	private final long hash;
+
+	private StatePacked(short[] positions, long hash) {
+		this.positions = positions;
+		this.hash = hash;
+	}
+
+	/**
+	 * Creates the state from the player cell and (unsorted) box cells.
+	 * @param player
+	 * @param boxes
+	 * @param zobrist
+	 * @return
+	 */
+	public static StatePacked create(int player, int[] boxes, ZobristTable zobrist) {
+		short[] positions = new short[boxes.length + 1];
+		positions[0] = (short)player;
+		for (int i = 0; i < boxes.length; ++i) {
+			positions[i + 1] = (short)boxes[i];
+		}
+		Arrays.sort(positions, 1, positions.length);
+		return new StatePacked(positions, zobrist.hash(player, boxes));
+	}
+
+	/**
+	 * Reads the state written by {@link #writeTo(short[], int)}; the hash is recomputed.
+	 * @param array
+	 * @param offset
+	 * @param length {@link #length()} of the state
+	 * @param zobrist
+	 * @return
+	 */
+	public static StatePacked read(short[] array, int offset, int length, ZobristTable zobrist) {
+		short[] positions = Arrays.copyOfRange(array, offset, offset + length);
+		long hash = zobrist.player(positions[0]);
+		for (int i = 1; i < length; ++i) hash ^= zobrist.box(positions[i]);
+		return new StatePacked(positions, hash);
+	}
+
+	/**
+	 * Key of the state to be used by hash tables (the 64-bit Zobrist hash).
+	 * @return
+	 */
+	public long key() {
+		return hash;
+	}
+
+	/**
+	 * Length of the packed representation, see {@link #writeTo(short[], int)}.
+	 * @return
+	 */
+	public int length() {
+		return positions.length;
+	}
+
+	/**
+	 * Writes {@link #length()} shorts of the packed representation into 'array' starting at 'offset'.
+	 * @param array
+	 * @param offset
+	 */
+	public void writeTo(short[] array, int offset) {
+		System.arraycopy(positions, 0, array, offset, positions.length);
+	}
+
+	/**
+	 * Whether 'array' holds this state at 'offset' as written by {@link #writeTo(short[], int)}.
+	 * @param array
+	 * @param offset
+	 * @return
+	 */
+	public boolean equalsTo(short[] array, int offset) {
+		for (int i = 0; i < positions.length; ++i) {
+			if (positions[i] != array[offset + i]) return false;
+		}
+		return true;
+	}
+
+	public int player() {
+		return positions[0];
+	}
+
+	public int boxCount() {
+		return positions.length - 1;
+	}
+
+	/**
+	 * Cell of the 'index'-th box (0-based) in ascending order of cells.
+	 * @param index
+	 * @return
+	 */
+	public int box(int index) {
+		return positions[index + 1];
+	}
+
+	public boolean hasBox(int cell) {
+		return Arrays.binarySearch(positions, 1, positions.length, (short)cell) >= 0;
+	}
+
+	/**
+	 * Whether all boxes stand on cells marked within 'targets'.
+	 * @param targets
+	 * @return
+	 */
+	public boolean isVictory(boolean[] targets) {
+		for (int i = 1; i < positions.length; ++i) {
+			if (!targets[positions[i]]) return false;
+		}
+		return true;
+	}
+
+	// =======
+	// ACTIONS
+	// =======
+
+	public boolean canMove(BoardPacked board, EDirection dir) {
+		int target = board.neighbour(positions[0], dir);
+		return target != BoardPacked.NONE && !hasBox(target);
+	}
+
+	public boolean canPush(BoardPacked board, EDirection dir) {
+		int box = board.neighbour(positions[0], dir);
+		if (box == BoardPacked.NONE || !hasBox(box)) return false;
+		int target = board.neighbour(box, dir);
+		return target != BoardPacked.NONE && !hasBox(target);
+	}
+
+	/**
+	 * Can the player step in 'dir' while dragging the box standing behind him?
+	 * @param board
+	 * @param dir
+	 * @return
+	 */
+	public boolean canPull(BoardPacked board, EDirection dir) {
+		if (!canMove(board, dir)) return false;
+		int box = board.neighbour(positions[0], dir.opposite());
+		return box != BoardPacked.NONE && hasBox(box);
+	}
+
+	/**
+	 * Returns {@link #canPush(BoardPacked, EDirection)} for {@link EActionType#PUSH}, {@link #canMove(BoardPacked, EDirection)} otherwise.
+	 * @param action
+	 * @param board
+	 * @return
+	 */
+	public boolean isPossible(CAction action, BoardPacked board) {
+		if (action.getType() == EActionType.PUSH) return canPush(board, action.getDirection());
+		return canMove(board, action.getDirection());
+	}
+
+	/**
+	 * Returns new state with the 'action' ({@link EActionType#MOVE} or {@link EActionType#PUSH}) performed; no validation.
+	 * @param action
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked perform(CAction action, ZobristTable zobrist) {
+		if (action.getType() == EActionType.PUSH) return push(action.getDirection(), zobrist);
+		return move(action.getDirection(), zobrist);
+	}
+
+	/**
+	 * Returns new state with the player moved in 'dir'; no validation.
+	 * @param dir
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked move(EDirection dir, ZobristTable zobrist) {
+		int from = positions[0];
+		short[] result = positions.clone();
+		result[0] = (short)zobrist.getBoard().neighbour(from, dir);
+		return new StatePacked(result, zobrist.move(hash, from, dir));
+	}
+
+	/**
+	 * Returns new state with the player teleported to 'target' (boxes stay); no validation.
+	 * @param target
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked walk(int target, ZobristTable zobrist) {
+		if (target == positions[0]) return this;
+		short[] result = positions.clone();
+		result[0] = (short)target;
+		return new StatePacked(result, zobrist.walk(hash, positions[0], target));
+	}
+
+	/**
+	 * Returns new state with the box in front of the player pushed in 'dir'; no validation.
+	 * @param dir
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked push(EDirection dir, ZobristTable zobrist) {
+		BoardPacked board = zobrist.getBoard();
+		int from = positions[0];
+		int box = board.neighbour(from, dir);
+		short[] result = positions.clone();
+		result[0] = (short)box;
+		moveBox(result, box, board.neighbour(box, dir));
+		return new StatePacked(result, zobrist.push(hash, from, dir));
+	}
+
+	/**
+	 * Returns new state with the player moved in 'dir' dragging the box from behind him; no validation.
+	 * @param dir
+	 * @param zobrist
+	 * @return
+	 */
+	public StatePacked pull(EDirection dir, ZobristTable zobrist) {
+		BoardPacked board = zobrist.getBoard();
+		int from = positions[0];
+		short[] result = positions.clone();
+		result[0] = (short)board.neighbour(from, dir);
+		moveBox(result, board.neighbour(from, dir.opposite()), from);
+		return new StatePacked(result, zobrist.pull(hash, from, dir));
+	}
+
+	/**
+	 * Replaces 'from' with 'to' within the box part of 'positions' keeping it sorted.
+	 */
+	private static void moveBox(short[] positions, int from, int to) {
+		int index = Arrays.binarySearch(positions, 1, positions.length, (short)from);
+		if (to > from) {
+			while (index + 1 < positions.length && positions[index + 1] < to) {
+				positions[index] = positions[index + 1];
+				++index;
+			}
+		} else {
+			while (index - 1 > 0 && positions[index - 1] > to) {
+				positions[index] = positions[index - 1];
+				--index;
+			}
+		}
+		positions[index] = (short)to;
+	}
+
+	// ======
+	// Object
+	// ======
+
+	@Override
+	public int hashCode() {
+		return (int)(hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof StatePacked)) return false;
+		StatePacked other = (StatePacked) obj;
+		return hash == other.hash && Arrays.equals(positions, other.positions);
+	}
+
+	@Override
+	public String toString() {
+		return "StatePacked[" + Arrays.toString(positions) + "]";
+	}
+
+}
@@ -0,0 +1,100 @@
+package tournament;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import game.SokobanResultType;
+
+/**
+ * Aggregated measurements of one level played several times by {@link BenchmarkSokobanLevels}; one line of the benchmark CSV file.
+ *
+ * Times, nodes and heap are medians over the measured runs; nodes are -1 if the agent does not implement {@link game.IAgentStatistics}.
+ */
+public class BenchmarkResult {
+
+    static final String Headers =
+        "id;levelFile;level;result;runs;wallMillis;minWallMillis;nodes;nodesPerSec;peakHeapBytes;steps";
+
+    public String id;
+    public String levelFile;
+    public int level;
+    public SokobanResultType result;
+    public int runs;
+    public long wallMillis;
+    public long minWallMillis;
+    public long nodes;
+    public double nodesPerSec;
+    public long peakHeapBytes;
+    public int steps;
+
+    public BenchmarkResult() {
+    }
+
+    BenchmarkResult(String line) {
+        String[] fields = line.split(";");
+        id = fields[0];
+        levelFile = fields[1];
+        level = Integer.parseInt(fields[2]);
+        result = SokobanResultType.valueOf(fields[3]);
+        runs = Integer.parseInt(fields[4]);
+        wallMillis = Long.parseLong(fields[5]);
+        minWallMillis = Long.parseLong(fields[6]);
+        nodes = Long.parseLong(fields[7]);
+        nodesPerSec = Double.parseDouble(fields[8]);
+        peakHeapBytes = Long.parseLong(fields[9]);
+        steps = Integer.parseInt(fields[10]);
+    }
+
+    /**
+     * Key identifying the level regardless of the agent.
+     */
+    public String levelKey() {
+        return levelFile + "#" + level;
+    }
+
+    public boolean solved() {
+        return result == SokobanResultType.VICTORY;
+    }
+
+    String toLine() {
+        return id + ";" + levelFile + ";" + level + ";" + result + ";" + runs + ";" +
+               wallMillis + ";" + minWallMillis + ";" + nodes + ";" + String.format(Locale.ROOT, "%.1f", nodesPerSec) + ";" +
+               peakHeapBytes + ";" + steps;
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkResult[" + levelKey() + "|" + result + "]";
+    }
+
+    public static void write(File file, List<BenchmarkResult> results) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) dir.mkdirs();
+        try (PrintWriter writer = new PrintWriter(new FileOutputStream(file))) {
+            writer.println(Headers);
+            for (BenchmarkResult result : results) {
+                writer.println(result.toLine());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the benchmark file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    public static List<BenchmarkResult> read(File file) {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            if (line == null || !line.equals(Headers))
+                throw new RuntimeException("Incompatible benchmark file format: " + file.getAbsolutePath());
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                results.add(new BenchmarkResult(line));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read the benchmark file: " + file.getAbsolutePath(), e);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,172 @@
+package tournament;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+
+import game.*;
+
+/**
+ * Runs an agent over whole level sets within THIS JVM, every level several times after some warmup runs, and records
+ * wall time, expanded nodes, nodes/sec, peak heap and solution length of every level (see {@link BenchmarkResult}).
+ *
+ * A fresh agent instance is created for every run. Results can be stored into a CSV file and compared against such a file
+ * from an earlier run (the baseline) via {@link #compare(List, List, double)}.
+ *
+ * Unlike {@link RunSokobanLevels}, all levels are played no matter whether the agent fails on some of them.
+ */
+public class BenchmarkSokobanLevels {
+    private SokobanConfig config;
+    private String agentClass;
+    private List<String> levelsets;
+    private int level;
+    private int warmup;
+    private int runs;
+
+    /**
+     * @param config timeout, optimality and id to use
+     * @param agentClass class of the agent to instantiate for every run
+     * @param levelsets level files to play
+     * @param level level to play within every level file; 0 == all levels
+     * @param warmup number of runs whose results are thrown away
+     * @param runs number of measured runs
+     */
+    public BenchmarkSokobanLevels(SokobanConfig config, String agentClass, List<String> levelsets,
+                                  int level, int warmup, int runs) {
+        if (runs <= 0) throw new RuntimeException("runs must be positive, got: " + runs);
+        this.config = config;
+        this.agentClass = agentClass;
+        this.levelsets = levelsets;
+        this.level = level;
+        this.warmup = warmup;
+        this.runs = runs;
+    }
+
+    String idOrAgentClass() {
+        return config.id == null ? agentClass : config.id;
+    }
+
+    public List<BenchmarkResult> run() {
+        List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+        for (String levelset : levelsets) {
+            int count = SokobanLevel.getLevelCount(Sokoban.findFile(levelset));
+            int from = level > 0 ? level : 1;
+            int to = level > 0 ? level : count;
+            for (int i = from; i <= to; ++i) {
+                BenchmarkResult result = benchmarkLevel(levelset, i);
+                System.out.printf(Locale.ROOT, "%s level %d: %s, %d ms, %d nodes, %.0f nodes/sec, %.1f MB, %d steps\n",
+                                  levelset, i, result.result, result.wallMillis, result.nodes, result.nodesPerSec,
+                                  result.peakHeapBytes / (1024.0 * 1024.0), result.steps);
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private BenchmarkResult benchmarkLevel(String levelset, int levelNumber) {
+        for (int i = 0; i < warmup; ++i) {
+            runLevel(levelset, levelNumber, new long[3]);
+        }
+
+        long[] wallMillis = new long[runs];
+        long[] nodes = new long[runs];
+        long[] peakHeap = new long[runs];
+        SokobanResult last = null;
+        for (int i = 0; i < runs; ++i) {
+            long[] measured = new long[3];
+            last = runLevel(levelset, levelNumber, measured);
+            wallMillis[i] = measured[0];
+            nodes[i] = measured[1];
+            peakHeap[i] = measured[2];
+        }
+
+        BenchmarkResult result = new BenchmarkResult();
+        result.id = idOrAgentClass();
+        result.levelFile = levelset;
+        result.level = levelNumber;
+        result.result = last.getResult();
+        result.runs = runs;
+        result.wallMillis = median(wallMillis);
+        result.minWallMillis = Arrays.stream(wallMillis).min().getAsLong();
+        result.nodes = median(nodes);
+        result.nodesPerSec = result.nodes < 0 ? -1 : result.nodes * 1000.0 / Math.max(1, result.wallMillis);
+        result.peakHeapBytes = median(peakHeap);
+        result.steps = last.getResult() == SokobanResultType.VICTORY ? last.getSteps() : -1;
+        return result;
+    }
+
+    /**
+     * Plays the level once with a fresh agent; stores [wall millis, nodes, peak heap bytes] into 'measured'.
+     */
+    private SokobanResult runLevel(String levelset, int levelNumber, long[] measured) {
+        IAgent agent;
+        try {
+            agent = (IAgent) Class.forName(agentClass).getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to instantiate agent: " + agentClass, e);
+        }
+        agent.init(config.requireOptimal, false);
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heapPools.add(pool);
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools) pool.resetPeakUsage();
+
+        long start = System.nanoTime();
+        SokobanResult result = Sokoban.simAgentLevel(
+            idOrAgentClass(), levelset, levelNumber, (int) config.timeoutMillis, agent, false, config.requireOptimal);
+        measured[0] = (System.nanoTime() - start) / 1000000;
+
+        measured[1] = agent instanceof IAgentStatistics ? ((IAgentStatistics) agent).getSearchedNodes() : -1;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) peak += pool.getPeakUsage().getUsed();
+        measured[2] = peak;
+
+        return result;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Prints levels on which 'current' got worse than 'baseline': the level is no longer solved, the solution got longer,
+     * or wall time / nodes grew by more than 'tolerance' (0.1 == 10%). Levels missing in the baseline are ignored.
+     *
+     * @return number of regressions found
+     */
+    public static int compare(List<BenchmarkResult> current, List<BenchmarkResult> baseline, double tolerance) {
+        Map<String, BenchmarkResult> base = new HashMap<String, BenchmarkResult>();
+        for (BenchmarkResult result : baseline) base.put(result.levelKey(), result);
+
+        int regressions = 0;
+        for (BenchmarkResult now : current) {
+            BenchmarkResult before = base.get(now.levelKey());
+            if (before == null || !before.solved()) continue;
+
+            List<String> problems = new ArrayList<String>();
+            if (!now.solved()) {
+                problems.add(now.result + " (baseline solved in " + before.wallMillis + " ms)");
+            } else {
+                if (now.steps > before.steps)
+                    problems.add("steps " + before.steps + " -> " + now.steps);
+                if (now.wallMillis > before.wallMillis * (1 + tolerance))
+                    problems.add("wall time " + before.wallMillis + " -> " + now.wallMillis + " ms");
+                if (before.nodes >= 0 && now.nodes > before.nodes * (1 + tolerance))
+                    problems.add("nodes " + before.nodes + " -> " + now.nodes);
+            }
+            if (!problems.isEmpty()) {
+                ++regressions;
+                System.out.println("REGRESSION " + now.levelKey() + ": " + String.join(", ", problems));
+            }
+        }
+        System.out.println(regressions == 0 ? "No regressions against the baseline." : regressions + " regression(s) against the baseline.");
+        return regressions;
+    }
+}
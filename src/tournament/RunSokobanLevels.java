@@ -6,12 +6,19 @@ import java.lang.management.RuntimeMXBean;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import game.*;
 
 /**
  * Runs levels executing a SEPARATE JVM for every level sequentially.
  * Stops executing levels once an agent fails to solve the level.
+ * 
+ * Alternatively (threads > 0), levels are played within THIS JVM on a pool of 'threads' threads, several levels at once,
+ * every level by a fresh agent instance; the level timeout is enforced by the simulation stopping the agent (see {@link IAgent#stop()}).
+ * Results are still reported (and written into levels.csv) in the order of levels, so both modes produce the same output.
  *  
  * @author Jimmy
  */
@@ -21,14 +28,24 @@ public class RunSokobanLevels {
 	private File resultDir;
 	private SokobanConfig config;
     private int maxFail;
+    private int threads;
 	
 	public RunSokobanLevels(SokobanConfig config, String agentClass, String levelset,
 			                File resultDir, int maxFail) {
+		this(config, agentClass, levelset, resultDir, maxFail, 0);
+    }
+
+    /**
+     * @param threads number of levels played at once in-process; 0 == separate JVM for every level
+     */
+	public RunSokobanLevels(SokobanConfig config, String agentClass, String levelset,
+			                File resultDir, int maxFail, int threads) {
 		this.config = config;
 		this.agentClass = agentClass;
 		this.levelset = levelset;
 		this.resultDir = resultDir;
         this.maxFail = maxFail;
+        this.threads = threads;
     }
     
     String idOrAgentClass() {
@@ -99,6 +116,73 @@ public class RunSokobanLevels {
         return p.exitValue() == 0;
     }
 
+    // ==========
+    // IN-PROCESS
+    // ==========
+
+    /**
+     * Plays levels 1..count on the pool of {@link #threads}, reporting them in the order of levels;
+     * levels not started yet are cancelled once {@link #maxFail} levels (in that order) failed.
+     */
+    void solveLevelsInProcess(int count) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<SokobanResult>> levels = new ArrayList<Future<SokobanResult>>();
+        try {
+            for (int i = 1; i <= count; ++i) {
+                final int level = i;
+                levels.add(pool.submit(() -> playLevel(level)));
+            }
+
+            int failed = 0;
+            for (int i = 1; i <= count; ++i) {
+                SokobanResult result;
+                try {
+                    result = levels.get(i - 1).get();
+                } catch (Exception e) {
+                    System.out.printf("solving level %d... FAILED (%s)\n", i, e.getCause() == null ? e : e.getCause());
+                    result = null;
+                }
+                if (result != null) report(result);
+                if ((result == null || result.getResult() != SokobanResultType.VICTORY) && ++failed == maxFail) {
+                    for (Future<SokobanResult> level : levels) level.cancel(true);
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays the level with a fresh agent instance.
+     */
+    SokobanResult playLevel(int level) throws Exception {
+        IAgent agent = (IAgent) Class.forName(agentClass).getConstructor().newInstance();
+        agent.init(config.requireOptimal, config.verbose);
+        return Sokoban.simAgentLevel(idOrAgentClass(), levelset, level, (int) config.timeoutMillis,
+                                     agent, config.verbose, config.requireOptimal);
+    }
+
+    /**
+     * Prints the result as the level run in a separate JVM would and appends it to the result file.
+     */
+    void report(SokobanResult result) {
+        SokobanResultType resultType = result.getResult();
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("solving level %d... %s in %.1f ms", result.getLevel(),
+                                  resultType == SokobanResultType.VICTORY ? "solved" :
+                                  resultType == SokobanResultType.TIMEOUT ? "TIMEOUT" : "FAILED",
+                                  (double) result.getSimTimeMillis()));
+        if (resultType == SokobanResultType.VICTORY)
+            line.append(String.format(" (%d steps)", result.getSteps()));
+        if (result.message != null)
+            line.append(String.format(" (%s)", result.message));
+        System.out.println(line);
+
+        if (resultDir != null)
+            result.outputResult(resultDir.getAbsolutePath());
+    }
+
 	public void run() {
         System.setProperty("java.util.logging.SimpleFormatter.format", "[%4$s] %1$tT.%1$tL %5$s%n");
         LocalDateTime start = LocalDateTime.now();
@@ -106,9 +190,13 @@ public class RunSokobanLevels {
         int count = SokobanLevel.getLevelCount(Sokoban.findFile(levelset));
         int failed = 0;
 		
-		for (int i = 1; i <= count; ++i) {			
-            if (!solveLevel(i) && ++failed == maxFail)
-	    		break;
+		if (threads > 0) {
+            solveLevelsInProcess(count);
+        } else {
+            for (int i = 1; i <= count; ++i) {			
+                if (!solveLevel(i) && ++failed == maxFail)
+                    break;
+            }
         }
         
         if (resultDir == null)
@@ -67,6 +67,21 @@ public class TextLevelS4JL {
 		this.comments = comments;
 	}
 
+	/**
+	 * 64-bit hash (FNV-1a) of the maze lines, identifies the level regardless of its name and comments.
+	 * @return
+	 */
+	public long textHash() {
+		long hash = 0xcbf29ce484222325L;
+		for (String line : getMaze()) {
+			for (int i = 0; i < line.length(); ++i) {
+				hash = (hash ^ line.charAt(i)) * 0x100000001b3L;
+			}
+			hash = (hash ^ '\n') * 0x100000001b3L;
+		}
+		return hash;
+	}
+
 	public void validate() {
         if (getWidth() < 4 || getWidth() < 4)
             throw new RuntimeException(
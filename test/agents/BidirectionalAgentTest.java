@@ -0,0 +1,110 @@
+package agents;
+
+import java.util.List;
+
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+public class BidirectionalAgentTest {
+
+	private static final String[][] LEVELS = {
+		{
+			"#######",
+			"#     #",
+			"# $$$ #",
+			"#  @  #",
+			"#. .. #",
+			"#######",
+		},
+		{
+			"#######",
+			"#.  # #",
+			"# $$  #",
+			"#  $ .#",
+			"#. @  #",
+			"#######",
+		},
+		{
+			"########",
+			"#. #   #",
+			"# $$$  #",
+			"#  #. .#",
+			"#  @   #",
+			"########",
+		},
+	};
+
+	/**
+	 * More goals than boxes: no solved state has a box on every goal.
+	 */
+	private static final String[][] SPARE_GOALS = {
+		{
+			"#######",
+			"#@ $ .#",
+			"#    .#",
+			"#######",
+		},
+		{
+			"########",
+			"#.  .  #",
+			"# $$ # #",
+			"#.  @ .#",
+			"########",
+		},
+	};
+
+	private static final String[] SOLVED = {
+		"######",
+		"#@ * #",
+		"#    #",
+		"######",
+	};
+
+	public void testSolves() {
+		for (String[] maze : LEVELS) {
+			checkSolves(maze);
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	public void testMoreGoalsThanBoxes() {
+		for (String[] maze : SPARE_GOALS) {
+			checkSolves(maze);
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	public void testAlreadySolved() {
+		List<EDirection> solution = new BidirectionalAgent().think(SokobanLevels.compact(SOLVED));
+		SokobanLevels.check(solution != null && solution.isEmpty(), "solved level must need no moves, got " + solution);
+		System.out.println("---// TEST OK //---");
+	}
+
+	private static void checkSolves(String[] maze) {
+		BoardCompact board = SokobanLevels.compact(maze);
+		SokobanLevels.check(SokobanLevels.optimalPushes(board) > 0, "test level must be solvable");
+		List<EDirection> solution = new BidirectionalAgent().think(board.clone());
+		SokobanLevels.check(solution != null, "no solution found");
+
+		BoardPacked packed = new BoardPacked(board);
+		ZobristTable zobrist = new ZobristTable(packed);
+		StatePacked state = SokobanLevels.state(packed, zobrist, board);
+		for (EDirection dir : solution) {
+			state = SokobanLevels.step(packed, zobrist, state, dir);
+			SokobanLevels.check(state != null, "solution makes an impossible move");
+		}
+		SokobanLevels.check(state.isVictory(packed.goals()), "solution does not solve the level");
+		System.out.println("Moves: " + solution.size());
+	}
+
+	public static void main(String[] args) {
+		BidirectionalAgentTest test = new BidirectionalAgentTest();
+		test.testSolves();
+		test.testMoreGoalsThanBoxes();
+		test.testAlreadySolved();
+	}
+
+}
@@ -0,0 +1,73 @@
+package agents;
+
+import java.util.List;
+
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+public class ExternalBFSAgentTest {
+
+	private static final String[][] LEVELS = {
+		{
+			"#######",
+			"#     #",
+			"# $$$ #",
+			"#  @  #",
+			"#. .. #",
+			"#######",
+		},
+		{
+			"#######",
+			"#.  # #",
+			"# $$  #",
+			"#  $ .#",
+			"#. @  #",
+			"#######",
+		},
+		{
+			"########",
+			"#. #   #",
+			"# $$$  #",
+			"#  #. .#",
+			"#  @   #",
+			"########",
+		},
+	};
+
+	/**
+	 * The external search must find a valid solution as short as the one of a plain in-memory BFS; tiny chunks make every layer
+	 * be sorted in many runs and merged.
+	 */
+	public void testMatchesInMemoryBFS() {
+		for (String[] maze : LEVELS) {
+			BoardCompact board = SokobanLevels.compact(maze);
+			int optimal = SokobanLevels.optimalMoves(board);
+			SokobanLevels.check(optimal > 0, "test level must be solvable");
+
+			ExternalBFSAgent agent = new ExternalBFSAgent();
+			agent.chunkStates = 7;
+			List<EDirection> solution = agent.think(board.clone());
+			SokobanLevels.check(solution != null, "no solution found");
+			SokobanLevels.check(solution.size() == optimal, "solution of " + solution.size() + " moves, the optimum is " + optimal);
+
+			BoardPacked packed = new BoardPacked(board);
+			ZobristTable zobrist = new ZobristTable(packed);
+			StatePacked state = SokobanLevels.state(packed, zobrist, board);
+			for (EDirection dir : solution) {
+				state = SokobanLevels.step(packed, zobrist, state, dir);
+				SokobanLevels.check(state != null, "solution makes an impossible move");
+			}
+			SokobanLevels.check(state.isVictory(packed.goals()), "solution does not solve the level");
+			System.out.println("Moves: " + optimal);
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	public static void main(String[] args) {
+		new ExternalBFSAgentTest().testMatchesInMemoryBFS();
+	}
+
+}
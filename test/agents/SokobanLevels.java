@@ -0,0 +1,220 @@
+package agents;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.oop.Board;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+/**
+ * Small levels given as maze lines (.sok symbols) and helpers shared by the agent tests.
+ */
+public class SokobanLevels {
+
+	public static BoardCompact compact(String... maze) {
+		String text = "1\n" + String.join("\n", maze) + "\n";
+		return Board.fromReaderSok("test", new StringReader(text), 1).makeBoardCompact();
+	}
+
+	public static BoardCompact compact(String levelFile, int levelNumber) {
+		return Board.fromFileSok(new File("levels/" + levelFile), levelNumber).makeBoardCompact();
+	}
+
+	/**
+	 * Minimal number of pushes solving 'board' by a plain breadth-first search over push states.
+	 * @param board
+	 * @return -1 if unsolvable
+	 */
+	public static int optimalPushes(BoardCompact board) {
+		BoardPacked packed = new BoardPacked(board);
+		ZobristTable zobrist = new ZobristTable(packed);
+		return optimalPushes(zobrist, state(packed, zobrist, board));
+	}
+
+	/**
+	 * Minimal number of pushes bringing all boxes of 'state' onto goals of the board of 'zobrist' (there may be more goals than boxes).
+	 * @param zobrist
+	 * @param state
+	 * @return -1 if unsolvable
+	 */
+	public static int optimalPushes(ZobristTable zobrist, StatePacked state) {
+		BoardPacked packed = zobrist.getBoard();
+		boolean[] goals = packed.goals();
+
+		StatePacked start = canonical(zobrist, state);
+		Map<StatePacked, Integer> pushes = new HashMap<StatePacked, Integer>();
+		ArrayDeque<StatePacked> queue = new ArrayDeque<StatePacked>();
+		pushes.put(start, 0);
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			StatePacked current = queue.poll();
+			int g = pushes.get(current);
+			if (current.isVictory(goals)) return g;
+			boolean[] reached = reach(packed, current);
+			for (int cell = 0; cell < reached.length; ++cell) {
+				if (!reached[cell]) continue;
+				for (EDirection dir : EDirection.arrows()) {
+					int box = packed.neighbour(cell, dir);
+					if (box == BoardPacked.NONE || !current.hasBox(box)) continue;
+					int target = packed.neighbour(box, dir);
+					if (target == BoardPacked.NONE || current.hasBox(target)) continue;
+					StatePacked next = canonical(zobrist, current.walk(cell, zobrist).push(dir, zobrist));
+					if (pushes.containsKey(next)) continue;
+					pushes.put(next, g + 1);
+					queue.add(next);
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Minimal number of pushes to solve every push state reachable from 'start' (canonical states, see {@link #canonical(ZobristTable, StatePacked)}),
+	 * by a backward BFS from the solved ones over the whole state graph.
+	 * @param zobrist
+	 * @param start
+	 * @return [state] -> pushes, -1 for states the level cannot be solved from
+	 */
+	public static Map<StatePacked, Integer> pushesToSolve(ZobristTable zobrist, StatePacked start) {
+		BoardPacked packed = zobrist.getBoard();
+		boolean[] goals = packed.goals();
+
+		// forward: all states and their predecessors
+		Map<StatePacked, List<StatePacked>> predecessors = new HashMap<StatePacked, List<StatePacked>>();
+		ArrayDeque<StatePacked> queue = new ArrayDeque<StatePacked>();
+		start = canonical(zobrist, start);
+		predecessors.put(start, new ArrayList<StatePacked>());
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			StatePacked current = queue.poll();
+			boolean[] reached = reach(packed, current);
+			for (int cell = 0; cell < reached.length; ++cell) {
+				if (!reached[cell]) continue;
+				for (EDirection dir : EDirection.arrows()) {
+					int box = packed.neighbour(cell, dir);
+					if (box == BoardPacked.NONE || !current.hasBox(box)) continue;
+					int target = packed.neighbour(box, dir);
+					if (target == BoardPacked.NONE || current.hasBox(target)) continue;
+					StatePacked next = canonical(zobrist, current.walk(cell, zobrist).push(dir, zobrist));
+					List<StatePacked> list = predecessors.get(next);
+					if (list == null) {
+						list = new ArrayList<StatePacked>();
+						predecessors.put(next, list);
+						queue.add(next);
+					}
+					list.add(current);
+				}
+			}
+		}
+
+		// backward: from the solved states
+		Map<StatePacked, Integer> pushes = new HashMap<StatePacked, Integer>();
+		for (StatePacked state : predecessors.keySet()) {
+			if (!state.isVictory(goals)) continue;
+			pushes.put(state, 0);
+			queue.add(state);
+		}
+		while (!queue.isEmpty()) {
+			StatePacked current = queue.poll();
+			int g = pushes.get(current);
+			for (StatePacked previous : predecessors.get(current)) {
+				if (pushes.containsKey(previous)) continue;
+				pushes.put(previous, g + 1);
+				queue.add(previous);
+			}
+		}
+		for (StatePacked state : predecessors.keySet()) pushes.putIfAbsent(state, -1);
+		return pushes;
+	}
+
+	/**
+	 * Minimal number of moves (steps, pushes included) solving 'board' by a plain breadth-first search over player + boxes states.
+	 * @param board
+	 * @return -1 if unsolvable
+	 */
+	public static int optimalMoves(BoardCompact board) {
+		BoardPacked packed = new BoardPacked(board);
+		ZobristTable zobrist = new ZobristTable(packed);
+		boolean[] goals = packed.goals();
+
+		StatePacked start = state(packed, zobrist, board);
+		Map<StatePacked, Integer> moves = new HashMap<StatePacked, Integer>();
+		ArrayDeque<StatePacked> queue = new ArrayDeque<StatePacked>();
+		moves.put(start, 0);
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			StatePacked state = queue.poll();
+			int g = moves.get(state);
+			if (state.isVictory(goals)) return g;
+			for (EDirection dir : EDirection.arrows()) {
+				StatePacked next = step(packed, zobrist, state, dir);
+				if (next == null || moves.containsKey(next)) continue;
+				moves.put(next, g + 1);
+				queue.add(next);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * State after the player of 'state' moves or pushes in 'dir'.
+	 * @return null if not possible
+	 */
+	public static StatePacked step(BoardPacked packed, ZobristTable zobrist, StatePacked state, EDirection dir) {
+		int target = packed.neighbour(state.player(), dir);
+		if (target == BoardPacked.NONE) return null;
+		if (!state.hasBox(target)) return state.move(dir, zobrist);
+		int beyond = packed.neighbour(target, dir);
+		if (beyond == BoardPacked.NONE || state.hasBox(beyond)) return null;
+		return state.push(dir, zobrist);
+	}
+
+	public static StatePacked state(BoardPacked packed, ZobristTable zobrist, BoardCompact board) {
+		return StatePacked.create(packed.cell(board.playerX, board.playerY), packed.findBoxes(board), zobrist);
+	}
+
+	/**
+	 * Cells the player of 'state' can walk to.
+	 */
+	public static boolean[] reach(BoardPacked packed, StatePacked state) {
+		boolean[] reached = new boolean[packed.cellCount()];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		reached[state.player()] = true;
+		queue.add(state.player());
+		while (!queue.isEmpty()) {
+			int cell = queue.poll();
+			for (EDirection dir : EDirection.arrows()) {
+				int next = packed.neighbour(cell, dir);
+				if (next == BoardPacked.NONE || reached[next] || state.hasBox(next)) continue;
+				reached[next] = true;
+				queue.add(next);
+			}
+		}
+		return reached;
+	}
+
+	/**
+	 * Same boxes with the player moved to the lowest cell it can reach, so push states compare equal regardless of the player walk.
+	 */
+	public static StatePacked canonical(ZobristTable zobrist, StatePacked state) {
+		boolean[] reached = reach(zobrist.getBoard(), state);
+		for (int cell = 0; cell < reached.length; ++cell) {
+			if (reached[cell]) return state.walk(cell, zobrist);
+		}
+		return state;
+	}
+
+	public static void check(boolean condition, String message) {
+		if (!condition) throw new RuntimeException(message);
+	}
+
+}
@@ -0,0 +1,170 @@
+package agents.deadlocks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import agents.SokobanLevels;
+import game.actions.EDirection;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+public class FreezeDeadlockDetectorTest {
+
+	/**
+	 * The middle box has just been pushed up; both its neighbours are examined, neither is frozen (free cells above and below),
+	 * so the cluster is not a deadlock.
+	 */
+	private static final String[] MOVABLE_CLUSTER = {
+		"########",
+		"#  #   #",
+		"# $$$  #",
+		"#  @   #",
+		"#.. .  #",
+		"########",
+	};
+
+	/**
+	 * The right box has just been pushed right; it is held horizontally by the wall and vertically by the box above,
+	 * which is held by the wall above it; neither is on a goal.
+	 */
+	private static final String[] FROZEN_CLUSTER = {
+		"#######",
+		"#    $#",
+		"#   @$#",
+		"#     #",
+		"#..   #",
+		"#######",
+	};
+
+	private static final String[][] SWEEP_LEVELS = {
+		{
+			"#######",
+			"#     #",
+			"# $$$ #",
+			"#  @  #",
+			"#. .. #",
+			"#######",
+		},
+		{
+			"#######",
+			"#.  # #",
+			"# $$  #",
+			"#  $ .#",
+			"#. @  #",
+			"#######",
+		},
+		{
+			"########",
+			"#  .   #",
+			"# $$ # #",
+			"#. $$ .#",
+			"#  @.  #",
+			"########",
+		},
+		{
+			"########",
+			"#. #   #",
+			"# $$$  #",
+			"#  #. .#",
+			"#  @   #",
+			"########",
+		},
+	};
+
+	public void testMovableCluster() {
+		BoardCompact board = SokobanLevels.compact(MOVABLE_CLUSTER);
+		BoardPacked packed = new BoardPacked(board);
+		StatePacked state = SokobanLevels.state(packed, new ZobristTable(packed), board);
+		SokobanLevels.check(SokobanLevels.optimalPushes(board) >= 0, "the level must be solvable");
+		SokobanLevels.check(!FreezeDeadlockDetector.create(packed).isDeadlockAfterPush(state, EDirection.UP), "movable cluster reported as a freeze deadlock");
+		System.out.println("---// TEST OK //---");
+	}
+
+	public void testFrozenCluster() {
+		BoardCompact board = SokobanLevels.compact(FROZEN_CLUSTER);
+		BoardPacked packed = new BoardPacked(board);
+		StatePacked state = SokobanLevels.state(packed, new ZobristTable(packed), board);
+		SokobanLevels.check(FreezeDeadlockDetector.create(packed).isDeadlockAfterPush(state, EDirection.RIGHT), "frozen cluster not reported");
+		System.out.println("---// TEST OK //---");
+	}
+
+	/**
+	 * Explores all push states of small levels; every push the detector reports must lead to a state the level cannot be solved from,
+	 * and the detector must be reusable across checks (no marks left over from a previous check).
+	 */
+	public void testSoundness() {
+		for (String[] maze : SWEEP_LEVELS) {
+			BoardCompact board = SokobanLevels.compact(maze);
+			BoardPacked packed = new BoardPacked(board);
+			ZobristTable zobrist = new ZobristTable(packed);
+			FreezeDeadlockDetector detector = FreezeDeadlockDetector.create(packed);
+			boolean[] goals = packed.goals();
+
+			// forward: all push states and their predecessors
+			StatePacked start = SokobanLevels.canonical(zobrist, SokobanLevels.state(packed, zobrist, board));
+			Map<StatePacked, List<StatePacked>> predecessors = new HashMap<StatePacked, List<StatePacked>>();
+			List<StatePacked> reported = new ArrayList<StatePacked>();
+			ArrayDeque<StatePacked> queue = new ArrayDeque<StatePacked>();
+			predecessors.put(start, new ArrayList<StatePacked>());
+			queue.add(start);
+			while (!queue.isEmpty()) {
+				StatePacked state = queue.poll();
+				boolean[] reached = SokobanLevels.reach(packed, state);
+				for (int cell = 0; cell < reached.length; ++cell) {
+					if (!reached[cell]) continue;
+					for (EDirection dir : EDirection.arrows()) {
+						int box = packed.neighbour(cell, dir);
+						if (box == BoardPacked.NONE || !state.hasBox(box)) continue;
+						int target = packed.neighbour(box, dir);
+						if (target == BoardPacked.NONE || state.hasBox(target)) continue;
+						StatePacked pushed = state.walk(cell, zobrist).push(dir, zobrist);
+						StatePacked next = SokobanLevels.canonical(zobrist, pushed);
+						if (detector.isDeadlockAfterPush(pushed, dir)) reported.add(next);
+						List<StatePacked> list = predecessors.get(next);
+						if (list == null) {
+							list = new ArrayList<StatePacked>();
+							predecessors.put(next, list);
+							queue.add(next);
+						}
+						list.add(state);
+					}
+				}
+			}
+
+			// backward: states the level can be solved from
+			Set<StatePacked> solvable = new HashSet<StatePacked>();
+			for (StatePacked state : predecessors.keySet()) {
+				if (state.isVictory(goals)) {
+					solvable.add(state);
+					queue.add(state);
+				}
+			}
+			while (!queue.isEmpty()) {
+				for (StatePacked previous : predecessors.get(queue.poll())) {
+					if (solvable.add(previous)) queue.add(previous);
+				}
+			}
+			SokobanLevels.check(solvable.contains(start), "sweep level must be solvable");
+			for (StatePacked deadlock : reported) {
+				SokobanLevels.check(!solvable.contains(deadlock), "reported deadlock is solvable: " + deadlock);
+			}
+			System.out.println("States: " + predecessors.size() + ", solvable: " + solvable.size() + ", reported deadlocks: " + reported.size());
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	public static void main(String[] args) {
+		FreezeDeadlockDetectorTest test = new FreezeDeadlockDetectorTest();
+		test.testMovableCluster();
+		test.testFrozenCluster();
+		test.testSoundness();
+	}
+
+}
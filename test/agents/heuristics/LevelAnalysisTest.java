@@ -0,0 +1,108 @@
+package agents.heuristics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import agents.SokobanLevels;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+
+public class LevelAnalysisTest {
+
+	private static final String[][] MAZES = {
+		{
+			"#######",
+			"#.  # #",
+			"# $$  #",
+			"#  $ .#",
+			"#. @  #",
+			"#######",
+		},
+		{
+			"##########",
+			"#.  #    #",
+			"#   $  # #",
+			"### ## ###",
+			"#  $  @  #",
+			"#.   #   #",
+			"##########",
+		},
+	};
+
+	/**
+	 * Levels from the level files: larger, with distances that may not fit a byte.
+	 */
+	private static final Object[][] LEVEL_FILES = {
+		{ "Aymeric_Medium.sok", 1 },
+		{ "Aymeric_Medium.sok", 5 },
+		{ "Aymeric_Hard.sok", 1 },
+	};
+
+	/**
+	 * An analysis loaded from the cache equals a freshly computed one: goals, distance tables, side areas, dead cells,
+	 * tunnels, rooms and articulations; a damaged cache file is computed again.
+	 */
+	public void testCacheRoundTrip() throws IOException {
+		File directory = Files.createTempDirectory("analysis-test").toFile();
+		try {
+			for (String[] maze : MAZES) {
+				checkRoundTrip(SokobanLevels.compact(maze), directory);
+			}
+			for (Object[] level : LEVEL_FILES) {
+				checkRoundTrip(SokobanLevels.compact((String)level[0], (Integer)level[1]), directory);
+			}
+		} finally {
+			File[] files = directory.listFiles();
+			if (files != null) for (File file : files) file.delete();
+			directory.delete();
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	private static void checkRoundTrip(BoardCompact board, File directory) throws IOException {
+		BoardPacked packed = new BoardPacked(board);
+		SokobanLevels.check(board.levelHash != 0, "level without hash is not cached");
+		LevelAnalysis computed = LevelAnalysis.forLevel(board, packed, directory);
+		SokobanLevels.check(!computed.isFromCache(), "first analysis must be computed");
+		LevelAnalysis loaded = LevelAnalysis.forLevel(board, packed, directory);
+		SokobanLevels.check(loaded.isFromCache(), "second analysis must be loaded from the cache");
+		LevelAnalysis fresh = LevelAnalysis.forLevel(board, packed, null);
+		SokobanLevels.check(!fresh.isFromCache(), "analysis without cache directory must be computed");
+		checkEqual(loaded, fresh);
+		checkEqual(computed, fresh);
+
+		// truncate the file: it must be computed again
+		File file = new File(directory, String.format("level-%016x.bin", board.levelHash));
+		SokobanLevels.check(file.exists(), "cache file not stored: " + file);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() / 2);
+		}
+		LevelAnalysis recomputed = LevelAnalysis.forLevel(board, packed, directory);
+		SokobanLevels.check(!recomputed.isFromCache(), "damaged cache file must not be loaded");
+		checkEqual(recomputed, fresh);
+		System.out.println("Cells: " + packed.cellCount() + ", goals: " + fresh.goals().length + ", rooms: " + fresh.roomCount());
+	}
+
+	private static void checkEqual(LevelAnalysis actual, LevelAnalysis expected) {
+		SokobanLevels.check(Arrays.equals(actual.goals(), expected.goals()), "goals differ");
+		SokobanLevels.check(Arrays.deepEquals(actual.distances().distanceTables(), expected.distances().distanceTables()), "distance tables differ");
+		SokobanLevels.check(Arrays.equals(actual.distances().sideAreas(), expected.distances().sideAreas()), "side areas differ");
+		SokobanLevels.check(actual.roomCount() == expected.roomCount(), "room count " + actual.roomCount() + " != " + expected.roomCount());
+		for (int cell = 0; cell < expected.getBoard().cellCount(); ++cell) {
+			SokobanLevels.check(actual.distances().minDistance(cell) == expected.distances().minDistance(cell), "min distance differs at " + cell);
+			SokobanLevels.check(actual.isDead(cell) == expected.isDead(cell), "dead cell differs at " + cell);
+			SokobanLevels.check(actual.tunnel(cell) == expected.tunnel(cell), "tunnel differs at " + cell);
+			SokobanLevels.check(actual.room(cell) == expected.room(cell), "room differs at " + cell);
+			SokobanLevels.check(actual.isArticulation(cell) == expected.isArticulation(cell), "articulation differs at " + cell);
+		}
+		SokobanLevels.check(Arrays.deepEquals(actual.deadSquares(), expected.deadSquares()), "dead squares differ");
+	}
+
+	public static void main(String[] args) throws IOException {
+		new LevelAnalysisTest().testCacheRoundTrip();
+	}
+
+}
@@ -0,0 +1,78 @@
+package agents.heuristics;
+
+import agents.SokobanLevels;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+
+public class MatchingHeuristicTest {
+
+	/**
+	 * Two boxes, four goals: every box takes one goal and two goals stay free.
+	 */
+	private static final String[] MORE_GOALS = {
+		"########",
+		"#. $  .#",
+		"#   @  #",
+		"#.  $ .#",
+		"########",
+	};
+
+	public void testMoreGoalsThanBoxes() {
+		BoardCompact board = SokobanLevels.compact(MORE_GOALS);
+		BoardPacked packed = new BoardPacked(board);
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		PushDistances distances = PushDistances.forPushing(packed, goals);
+		MatchingHeuristic matching = new MatchingHeuristic(distances, board.boxCount);
+
+		// every pair of distinct free cells, solved from scratch and incrementally from the base
+		int[] base = null;
+		for (int a = 0; a < packed.cellCount(); ++a) {
+			for (int b = a + 1; b < packed.cellCount(); ++b) {
+				int[] boxes = new int[] { a, b };
+				int expected = bruteForce(distances, boxes);
+				if (base == null) {
+					base = boxes;
+					SokobanLevels.check(matching.rebase(base) == expected, "rebase differs from the brute force");
+				}
+				int estimate = matching.estimate(boxes);
+				SokobanLevels.check(estimate == expected, "boxes " + a + "," + b + ": estimate " + estimate + " != " + expected);
+			}
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	public void testMoreBoxesThanGoals() {
+		BoardCompact board = SokobanLevels.compact(MORE_GOALS);
+		BoardPacked packed = new BoardPacked(board);
+		PushDistances distances = PushDistances.forPushing(packed, new int[] { packed.cell(1, 1) });
+		MatchingHeuristic matching = new MatchingHeuristic(distances, 2);
+		SokobanLevels.check(matching.estimate(new int[] { packed.cell(2, 2), packed.cell(3, 2) }) == PushDistances.INFINITE, "more boxes than goals must be unsolvable");
+		System.out.println("---// TEST OK //---");
+	}
+
+	private static int bruteForce(PushDistances distances, int[] boxes) {
+		int goals = distances.goals().length;
+		long best = PushDistances.INFINITE;
+		for (int g0 = 0; g0 < goals; ++g0) {
+			for (int g1 = 0; g1 < goals; ++g1) {
+				if (g0 == g1) continue;
+				long d0 = distances.distance(g0, boxes[0]);
+				long d1 = distances.distance(g1, boxes[1]);
+				if (d0 >= PushDistances.INFINITE || d1 >= PushDistances.INFINITE) continue;
+				best = Math.min(best, d0 + d1);
+			}
+		}
+		return (int)best;
+	}
+
+	public static void main(String[] args) {
+		MatchingHeuristicTest test = new MatchingHeuristicTest();
+		test.testMoreGoalsThanBoxes();
+		test.testMoreBoxesThanGoals();
+	}
+
+}
@@ -0,0 +1,235 @@
+package agents.heuristics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import agents.SokobanLevels;
+import game.CancellationToken;
+import game.board.ZobristTable;
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+public class PatternDatabaseTest {
+
+	private static final String[][] LEVELS = {
+		{
+			"#######",
+			"#     #",
+			"# $$$ #",
+			"#  @  #",
+			"#. .. #",
+			"#######",
+		},
+		{
+			"#######",
+			"#.  # #",
+			"# $$  #",
+			"#  $ .#",
+			"#. @  #",
+			"#######",
+		},
+		{
+			"########",
+			"#  .   #",
+			"# $$ # #",
+			"#. $$ .#",
+			"#  @.  #",
+			"########",
+		},
+	};
+
+	/**
+	 * Small enough to solve every placement of a pattern of boxes by a plain BFS.
+	 */
+	private static final String[] TINY = {
+		"######",
+		"#.   #",
+		"# #$ #",
+		"#.$$.#",
+		"#  @ #",
+		"######",
+	};
+
+	/**
+	 * The estimate never exceeds the pushes needed, in any state reachable from the start, for every pattern size.
+	 */
+	public void testAdmissible() {
+		for (String[] maze : LEVELS) {
+			BoardCompact board = SokobanLevels.compact(maze);
+			BoardPacked packed = new BoardPacked(board);
+			ZobristTable zobrist = new ZobristTable(packed);
+			PushDistances distances = distances(packed);
+			Map<StatePacked, Integer> pushes = SokobanLevels.pushesToSolve(zobrist, SokobanLevels.state(packed, zobrist, board));
+			for (int size = 2; size <= PatternDatabase.MAX_PATTERN_SIZE; ++size) {
+				PatternDatabase database = PatternDatabase.forLevel(packed, distances, size, null);
+				int solvable = 0;
+				for (Map.Entry<StatePacked, Integer> entry : pushes.entrySet()) {
+					if (entry.getValue() < 0) continue;
+					++solvable;
+					int estimate = database.estimate(entry.getKey());
+					SokobanLevels.check(estimate <= entry.getValue(), "size " + database.size() + ": estimate " + estimate + " > " + entry.getValue() + " pushes of " + entry.getKey());
+				}
+				SokobanLevels.check(solvable > 0, "test level must be solvable");
+			}
+			System.out.println("States: " + pushes.size());
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	/**
+	 * Every entry equals the pushes needed by its boxes alone, the player standing anywhere, which checks ranking and unranking
+	 * of the box combinations within the retrograde BFS.
+	 */
+	public void testEntriesExact() {
+		BoardCompact board = SokobanLevels.compact(TINY);
+		BoardPacked packed = new BoardPacked(board);
+		ZobristTable zobrist = new ZobristTable(packed);
+		PushDistances distances = distances(packed);
+		for (int size = 2; size <= 3; ++size) {
+			PatternDatabase database = PatternDatabase.forLevel(packed, distances, size, null);
+			SokobanLevels.check(database.size() == size, "pattern size " + database.size() + " != " + size);
+			int checked = 0;
+			for (int[] boxes : combinations(liveCells(packed, distances), size)) {
+				int expected = -1;
+				Set<StatePacked> starts = new HashSet<StatePacked>();
+				for (int player = 0; player < packed.cellCount(); ++player) {
+					if (contains(boxes, player)) continue;
+					StatePacked start = SokobanLevels.canonical(zobrist, StatePacked.create(player, boxes, zobrist));
+					if (!starts.add(start)) continue;
+					int pushes = SokobanLevels.optimalPushes(zobrist, start);
+					if (pushes >= 0 && (expected < 0 || pushes < expected)) expected = pushes;
+				}
+				int estimate = database.estimate(boxes);
+				if (expected < 0) SokobanLevels.check(estimate == PushDistances.INFINITE, "unsolvable boxes estimated by " + estimate);
+				else SokobanLevels.check(estimate == expected, "estimate " + estimate + " != " + expected + " pushes");
+				++checked;
+			}
+			SokobanLevels.check(checked == database.entries(), "entries " + database.entries() + " != combinations " + checked);
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	/**
+	 * A table loaded from the cache equals a freshly built one; a damaged cache file is rebuilt.
+	 */
+	public void testCacheRoundTrip() throws IOException {
+		File directory = Files.createTempDirectory("pdb-test").toFile();
+		try {
+			for (String[] maze : LEVELS) {
+				BoardCompact board = SokobanLevels.compact(maze);
+				BoardPacked packed = new BoardPacked(board);
+				PushDistances distances = distances(packed);
+				for (int size = 2; size <= 3; ++size) {
+					PatternDatabase built = PatternDatabase.forLevel(packed, distances, size, directory);
+					SokobanLevels.check(!built.isFromCache(), "first table must be built");
+					PatternDatabase loaded = PatternDatabase.forLevel(packed, distances, size, directory);
+					SokobanLevels.check(loaded.isFromCache(), "second table must be loaded from the cache");
+					PatternDatabase fresh = PatternDatabase.forLevel(packed, distances, size, null);
+					SokobanLevels.check(loaded.size() == fresh.size() && loaded.entries() == fresh.entries(), "loaded table differs in size");
+					for (int[] boxes : combinations(liveCells(packed, distances), fresh.size())) {
+						SokobanLevels.check(loaded.estimate(boxes) == fresh.estimate(boxes), "loaded table differs from the built one");
+					}
+
+					// truncate the file: it must be built again
+					File file = new File(directory, "pdb-" + fresh.key() + ".bin");
+					SokobanLevels.check(file.exists(), "cache file not stored: " + file);
+					try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+						raf.setLength(raf.length() / 2);
+					}
+					PatternDatabase rebuilt = PatternDatabase.forLevel(packed, distances, size, directory);
+					SokobanLevels.check(!rebuilt.isFromCache(), "damaged cache file must not be loaded");
+					SokobanLevels.check(rebuilt.entries() == fresh.entries(), "rebuilt table differs in size");
+				}
+			}
+		} finally {
+			File[] files = directory.listFiles();
+			if (files != null) for (File file : files) file.delete();
+			directory.delete();
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	/**
+	 * A cancelled build yields no table and stores nothing into the cache.
+	 */
+	public void testCancelled() throws IOException {
+		File directory = Files.createTempDirectory("pdb-test").toFile();
+		try {
+			BoardCompact board = SokobanLevels.compact(LEVELS[0]);
+			BoardPacked packed = new BoardPacked(board);
+			CancellationToken cancellation = CancellationToken.noDeadline();
+			cancellation.cancel();
+			SokobanLevels.check(PatternDatabase.forLevel(packed, distances(packed), 3, directory, cancellation) == null, "cancelled build returned a table");
+			File[] files = directory.listFiles();
+			SokobanLevels.check(files != null && files.length == 0, "cancelled build stored a table");
+		} finally {
+			File[] files = directory.listFiles();
+			if (files != null) for (File file : files) file.delete();
+			directory.delete();
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	private static PushDistances distances(BoardPacked packed) {
+		int[] goals = new int[packed.goalCount()];
+		int index = 0;
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (packed.isGoal(cell)) goals[index++] = cell;
+		}
+		return PushDistances.forPushing(packed, goals);
+	}
+
+	private static int[] liveCells(BoardPacked packed, PushDistances distances) {
+		List<Integer> live = new ArrayList<Integer>();
+		for (int cell = 0; cell < packed.cellCount(); ++cell) {
+			if (distances.minDistance(cell) < PushDistances.INFINITE) live.add(cell);
+		}
+		int[] cells = new int[live.size()];
+		for (int i = 0; i < cells.length; ++i) cells[i] = live.get(i);
+		return cells;
+	}
+
+	/**
+	 * All ascending combinations of 'size' of 'cells' (ascending).
+	 */
+	private static List<int[]> combinations(int[] cells, int size) {
+		List<int[]> result = new ArrayList<int[]>();
+		int[] subset = new int[size];
+		for (int i = 0; i < size; ++i) subset[i] = i;
+		if (size > cells.length) return result;
+		while (true) {
+			int[] boxes = new int[size];
+			for (int i = 0; i < size; ++i) boxes[i] = cells[subset[i]];
+			result.add(boxes);
+			int i = size - 1;
+			while (i >= 0 && subset[i] == cells.length - size + i) --i;
+			if (i < 0) return result;
+			++subset[i];
+			for (int j = i + 1; j < size; ++j) subset[j] = subset[j - 1] + 1;
+		}
+	}
+
+	private static boolean contains(int[] array, int value) {
+		for (int item : array) {
+			if (item == value) return true;
+		}
+		return false;
+	}
+
+	public static void main(String[] args) throws IOException {
+		PatternDatabaseTest test = new PatternDatabaseTest();
+		test.testAdmissible();
+		test.testEntriesExact();
+		test.testCacheRoundTrip();
+		test.testCancelled();
+	}
+
+}
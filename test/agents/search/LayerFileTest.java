@@ -0,0 +1,129 @@
+package agents.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import agents.SokobanLevels;
+
+public class LayerFileTest {
+
+	/**
+	 * Enough records to span many {@link LayerFile#BLOCK_BYTES} blocks.
+	 */
+	private static final int RECORDS = 200000;
+
+	public void testRoundTripSingleWord() throws IOException {
+		roundTrip(1, 1);
+		System.out.println("---// TEST OK //---");
+	}
+
+	public void testRoundTripMoreWords() throws IOException {
+		roundTrip(2, 2);
+		roundTrip(3, 3);
+		System.out.println("---// TEST OK //---");
+	}
+
+	public void testUnsortedRecordRejected() throws IOException {
+		File file = File.createTempFile("layer-test", ".bin");
+		LayerFile layer = new LayerFile(file, 2);
+		try (LayerFile.Writer writer = layer.writer()) {
+			writer.write(new long[] { 5, 7 }, 0);
+			SokobanLevels.check(rejects(writer, new long[] { 5, 7 }), "a duplicate record must be rejected");
+			SokobanLevels.check(rejects(writer, new long[] { 5, 6 }), "a lower record must be rejected");
+			SokobanLevels.check(rejects(writer, new long[] { 4, 9 }), "a lower record must be rejected");
+		} finally {
+			layer.delete();
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	/**
+	 * In-place sort of records against sorting record arrays; small ranges of words give many duplicates and equal prefixes.
+	 */
+	public void testSort() {
+		Random random = new Random(4);
+		for (int words = 1; words <= 3; ++words) {
+			for (int count : new int[] { 0, 1, 2, 15, 17, 1000, RECORDS }) {
+				long[][] records = new long[count][];
+				long[] flat = new long[count * words];
+				for (int i = 0; i < count; ++i) {
+					records[i] = new long[words];
+					for (int j = 0; j < words; ++j) records[i][j] = j == words - 1 && random.nextBoolean() ? random.nextLong() >>> 1 : random.nextInt(4);
+					System.arraycopy(records[i], 0, flat, i * words, words);
+				}
+				final int w = words;
+				Arrays.sort(records, (a, b) -> LayerFile.compare(a, 0, b, 0, w));
+				LayerFile.sort(flat, count, words);
+				for (int i = 0; i < count; ++i) {
+					SokobanLevels.check(LayerFile.compare(records[i], 0, flat, i * words, words) == 0, "record " + i + " of " + count + " (" + words + " words) differs");
+				}
+			}
+		}
+		System.out.println("---// TEST OK //---");
+	}
+
+	private static boolean rejects(LayerFile.Writer writer, long[] record) {
+		try {
+			writer.write(record, 0);
+			return false;
+		} catch (RuntimeException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Writes random sorted distinct records and reads them back. Leading words come from a small range, so neighbouring records share
+	 * prefixes and differ in any word, the last word spans all non-negative longs (the longest varints).
+	 */
+	private void roundTrip(int words, long seed) throws IOException {
+		Random random = new Random(seed);
+		long[][] records = new long[RECORDS][];
+		for (int i = 0; i < RECORDS; ++i) {
+			records[i] = new long[words];
+			for (int j = 0; j < words - 1; ++j) records[i][j] = random.nextInt(8);
+			records[i][words - 1] = random.nextInt(4) == 0 ? random.nextInt(1000) : random.nextLong() >>> 1;
+		}
+		Arrays.sort(records, (a, b) -> LayerFile.compare(a, 0, b, 0, words));
+		long[] flat = new long[RECORDS * words];
+		int count = 0;
+		for (int i = 0; i < RECORDS; ++i) {
+			if (i > 0 && LayerFile.compare(records[i], 0, records[i - 1], 0, words) == 0) continue;
+			System.arraycopy(records[i], 0, flat, count * words, words);
+			++count;
+		}
+
+		File file = File.createTempFile("layer-test", ".bin");
+		LayerFile layer = new LayerFile(file, words);
+		try {
+			try (LayerFile.Writer writer = layer.writer()) {
+				for (int i = 0; i < count; ++i) writer.write(flat, i * words);
+			}
+			SokobanLevels.check(layer.records() == count, "records written: " + layer.records() + " != " + count);
+			SokobanLevels.check(layer.bytes() < 8L * words * count, "records are not compressed: " + layer.bytes() + " bytes");
+
+			int read = 0;
+			try (LayerFile.Reader reader = layer.reader()) {
+				while (reader.next()) {
+					SokobanLevels.check(read < count, "more records read than written");
+					SokobanLevels.check(LayerFile.compare(reader.current(), 0, flat, read * words, words) == 0, "record " + read + " differs");
+					++read;
+				}
+			}
+			SokobanLevels.check(read == count, "records read: " + read + " != " + count);
+			System.out.println("Words: " + words + ", records: " + count + ", bytes: " + layer.bytes());
+		} finally {
+			layer.delete();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		LayerFileTest test = new LayerFileTest();
+		test.testRoundTripSingleWord();
+		test.testRoundTripMoreWords();
+		test.testUnsortedRecordRejected();
+		test.testSort();
+	}
+
+}
@@ -0,0 +1,128 @@
+package agents.search;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import agents.SokobanLevels;
+import game.board.ZobristTable;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+public class MappedStateSetTest {
+
+	private static final String[] ROOM = {
+		"##########",
+		"#@       #",
+		"#        #",
+		"#  $$$   #",
+		"#        #",
+		"#        #",
+		"#  ...   #",
+		"#        #",
+		"#        #",
+		"##########",
+	};
+
+	/**
+	 * From 16 slots, grows 12 times.
+	 */
+	private static final int STATES = 20000;
+
+	/**
+	 * Adds random states (many of them twice) starting from a tiny table, so it grows many times; right after every growth
+	 * (while the old file is being migrated) all states added so far must still be found and rejected as duplicates.
+	 * Closing deletes the files and their directory.
+	 */
+	public void testAgainstHashSet() {
+		BoardPacked packed = new BoardPacked(SokobanLevels.compact(ROOM));
+		ZobristTable zobrist = new ZobristTable(packed);
+		Random random = new Random(7);
+		MappedStateSet set = new MappedStateSet(16, 4, null);
+		File directory = set.getDirectory();
+		Set<StatePacked> reference = new HashSet<StatePacked>();
+		List<StatePacked> added = new ArrayList<StatePacked>();
+		int growths = 0;
+		try {
+			while (reference.size() < STATES) {
+				StatePacked state = random.nextInt(4) == 0 && !added.isEmpty() ? added.get(random.nextInt(added.size())) : randomState(packed, zobrist, random);
+				long capacity = set.capacity();
+				boolean expected = reference.add(state);
+				SokobanLevels.check(set.add(state) == expected, "add of " + state + " returned " + !expected);
+				if (expected) added.add(state);
+				SokobanLevels.check(set.size() == reference.size(), "size " + set.size() + " != " + reference.size());
+				if (set.capacity() == capacity) continue;
+
+				// migration in progress: states are split between the old and the new file
+				++growths;
+				for (StatePacked old : added) {
+					SokobanLevels.check(set.contains(old), "state lost during migration: " + old);
+					SokobanLevels.check(!set.add(old), "duplicate accepted during migration: " + old);
+				}
+				SokobanLevels.check(set.size() == reference.size(), "duplicates changed the size during migration");
+				File[] files = directory.listFiles();
+				SokobanLevels.check(files != null && files.length <= 2, "migrated files not deleted: " + (files == null ? 0 : files.length) + " files");
+			}
+			for (int i = 0; i < STATES; ++i) {
+				StatePacked state = randomState(packed, zobrist, random);
+				SokobanLevels.check(set.contains(state) == reference.contains(state), "contains of " + state + " differs");
+			}
+		} finally {
+			set.close();
+		}
+		SokobanLevels.check(growths >= 10, "table grew just " + growths + " times");
+		SokobanLevels.check(!directory.exists(), "directory not deleted on close: " + directory);
+		System.out.println("States: " + reference.size() + ", growths: " + growths);
+		System.out.println("---// TEST OK //---");
+	}
+
+	/**
+	 * Closing in the middle of a migration deletes both files; closing twice is harmless.
+	 */
+	public void testCloseDuringMigration() {
+		BoardPacked packed = new BoardPacked(SokobanLevels.compact(ROOM));
+		ZobristTable zobrist = new ZobristTable(packed);
+		Random random = new Random(8);
+		MappedStateSet set = new MappedStateSet(1 << 10, 4, null);
+		File directory = set.getDirectory();
+		long capacity = set.capacity();
+		while (set.capacity() == capacity) set.add(randomState(packed, zobrist, random));
+		File[] files = directory.listFiles();
+		SokobanLevels.check(files != null && files.length == 2, "migration should keep the old file");
+		set.close();
+		set.close();
+		SokobanLevels.check(!directory.exists(), "directory not deleted on close: " + directory);
+		System.out.println("---// TEST OK //---");
+	}
+
+	private static StatePacked randomState(BoardPacked packed, ZobristTable zobrist, Random random) {
+		int cells = packed.cellCount();
+		int[] boxes = new int[3];
+		for (int i = 0; i < boxes.length; ++i) {
+			boolean taken;
+			do {
+				boxes[i] = random.nextInt(cells);
+				taken = false;
+				for (int j = 0; j < i; ++j) taken |= boxes[j] == boxes[i];
+			} while (taken);
+		}
+		int player;
+		boolean taken;
+		do {
+			player = random.nextInt(cells);
+			taken = false;
+			for (int box : boxes) taken |= box == player;
+		} while (taken);
+		return StatePacked.create(player, boxes, zobrist);
+	}
+
+	public static void main(String[] args) {
+		MappedStateSetTest test = new MappedStateSetTest();
+		test.testAgainstHashSet();
+		test.testCloseDuringMigration();
+	}
+
+}
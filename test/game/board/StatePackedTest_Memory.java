@@ -0,0 +1,64 @@
+package game.board;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import game.board.compact.BoardCompact;
+import game.board.packed.BoardPacked;
+import game.board.packed.StatePacked;
+
+public class StatePackedTest_Memory {
+
+	private static void printMemory() {
+		int mb = 1024*1024;
+		
+		//Getting the runtime reference from system
+		Runtime runtime = Runtime.getRuntime();
+		
+		System.out.println("############################################");
+		System.out.println("##### Heap utilization statistics [MB] #####");
+		System.out.println("############################################");
+		
+		//Print used memory
+		System.out.println("Used Memory:" 
+			+ (runtime.totalMemory() - runtime.freeMemory()) / mb + " MB");
+
+		//Print free memory
+		System.out.println("Free Memory:" 
+			+ runtime.freeMemory() / mb);
+		
+		//Print total available memory
+		System.out.println("Total Memory:" + runtime.totalMemory() / mb + " MB");
+
+		//Print Maximum available memory
+		System.out.println("Max Memory:" + runtime.maxMemory() / mb + " MB");
+		
+		System.out.println("############################################");
+	}
+	
+	public static void main(String[] args) {
+		long count = 0;
+		
+		BoardPacked packed = new BoardPacked(new BoardCompact(16,16));
+		ZobristTable zobrist = new ZobristTable(packed);
+		int[] boxes = new int[]{ 17, 18, 19, 20, 21, 22, 23, 24, 25, 26 };
+		
+		List<StatePacked> states = new ArrayList<StatePacked>();
+		
+		StatePacked state;
+		
+		while (true) {
+			state = StatePacked.create((int)(count % packed.cellCount()), boxes, zobrist);
+			states.add(state);
+			++count;
+			if (count % 100 == 0) {
+				printMemory();
+				System.out.println("COUNT = " + count);
+				System.out.println("###########################################");
+			}
+		}
+		
+		// 10 BOXES PER STATE: ~56 B PER STATE (object + short[11]) compared to ~750 B of the former HashSet<Pair> based state
+	}
+	
+}